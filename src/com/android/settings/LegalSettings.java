@@ -17,9 +17,11 @@
 package com.android.settings;
 
 import android.app.settings.SettingsEnums;
+import android.content.Context;
 
 import com.android.settings.dashboard.DashboardFragment;
 import com.android.settings.search.BaseSearchIndexProvider;
+import com.android.settings.search.NonIndexableKeysInvalidation;
 import com.android.settingslib.search.SearchIndexable;
 
 @SearchIndexable
@@ -43,5 +45,14 @@ public class LegalSettings extends DashboardFragment {
     }
 
     public static final BaseSearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
-            new BaseSearchIndexProvider(R.xml.about_legal);
+            new BaseSearchIndexProvider(R.xml.about_legal) {
+                @Override
+                public NonIndexableKeysInvalidation getNonIndexableKeysInvalidation(
+                        Context context) {
+                    // Legal entries are available when a system activity handles their intent.
+                    return new NonIndexableKeysInvalidation.Builder()
+                            .setOnPackageChange(true)
+                            .build();
+                }
+            };
 }
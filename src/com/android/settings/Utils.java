@@ -112,6 +112,7 @@ import com.android.internal.widget.LockPatternUtils;
 import com.android.settings.dashboard.profileselector.ProfileFragmentBridge;
 import com.android.settings.dashboard.profileselector.ProfileSelectFragment;
 import com.android.settings.password.ChooseLockSettingsHelper;
+import com.android.settings.utils.AppIconCache;
 import com.android.settingslib.widget.ActionBarShadowController;
 import com.android.settingslib.widget.AdaptiveIcon;
 
@@ -1078,6 +1079,13 @@ public final class Utils extends com.android.settingslib.Utils {
         return bitmap;
     }
 
+    /**
+     * Get the {@link Drawable} that represents the app icon, from the shared {@link AppIconCache}
+     */
+    public static Drawable getCachedBadgedIcon(Context context, ApplicationInfo appInfo) {
+        return AppIconCache.getInstance(context).getBadgedIcon(context, appInfo);
+    }
+
     /**
      * Get the {@link Drawable} that represents the app icon
      */
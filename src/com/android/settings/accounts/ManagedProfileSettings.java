@@ -37,6 +37,7 @@ import com.android.settings.R;
 import com.android.settings.Utils;
 import com.android.settings.dashboard.DashboardFragment;
 import com.android.settings.search.BaseSearchIndexProvider;
+import com.android.settings.search.NonIndexableKeysInvalidation;
 import com.android.settingslib.search.Indexable;
 import com.android.settingslib.search.SearchIndexable;
 
@@ -130,6 +131,13 @@ public class ManagedProfileSettings extends DashboardFragment {
                 protected boolean isPageSearchEnabled(Context context) {
                     return false;
                 }
+
+                @Override
+                public NonIndexableKeysInvalidation getNonIndexableKeysInvalidation(
+                        Context context) {
+                    // Never searchable, the keys never change.
+                    return new NonIndexableKeysInvalidation.Builder().build();
+                }
             };
 
     private class ManagedProfileBroadcastReceiver extends BroadcastReceiver {
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.applications;
+
+import android.app.AppGlobals;
+import android.app.AppOpsManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.IPackageManager;
+import android.os.RemoteException;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * App op modes and app op permission requesters, shared by the bridges of the special app access
+ * screens so that opening several of them in a row does not sweep the same state again.
+ *
+ * <p>The modes of all ops missing from the table are loaded with a single query, and dropped
+ * again when any mode of the op changes. Requesters of app op permissions are dropped when a
+ * package is added, changed or removed. Only modes set for a package are kept; modes set for a
+ * whole uid still have to be checked per app.
+ */
+class AppOpsStateTable {
+
+    private static final String TAG = "AppOpsStateTable";
+
+    private static AppOpsStateTable sInstance;
+
+    private final Context mContext;
+    private final AppOpsManager mAppOpsManager;
+    private final IPackageManager mIPackageManager;
+    // Op code -> package name -> user id -> mode, for the loaded ops which did not change since.
+    private final SparseArray<ArrayMap<String, SparseIntArray>> mModes = new SparseArray<>();
+    // Ops whose changes are watched, which is never undone.
+    private final SparseArray<AppOpsManager.OnOpChangedListener> mWatchers = new SparseArray<>();
+    // App op permission -> packages requesting it.
+    private final ArrayMap<String, String[]> mRequesters = new ArrayMap<>();
+
+    /**
+     * Returns the table of the application of {@code context}.
+     */
+    static synchronized AppOpsStateTable getInstance(Context context) {
+        Context appContext = context.getApplicationContext();
+        if (appContext == null) {
+            appContext = context;
+        }
+        if (sInstance == null || sInstance.mContext != appContext) {
+            sInstance = new AppOpsStateTable(appContext,
+                    appContext.getSystemService(AppOpsManager.class),
+                    AppGlobals.getPackageManager());
+            sInstance.registerReceiver();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    AppOpsStateTable(Context context, AppOpsManager appOpsManager,
+            IPackageManager packageManager) {
+        mContext = context;
+        mAppOpsManager = appOpsManager;
+        mIPackageManager = packageManager;
+    }
+
+    /**
+     * Returns the modes of {@code ops} set for packages, loading the ops missing from the table
+     * with a single query.
+     */
+    synchronized Modes getModes(int[] ops) {
+        loadModes(ops);
+        final SparseArray<ArrayMap<String, SparseIntArray>> modes = new SparseArray<>(ops.length);
+        for (int op : ops) {
+            modes.put(op, mModes.get(op));
+            if (mWatchers.get(op) == null) {
+                // Changes of the op would be missed, so its modes are not kept.
+                mModes.remove(op);
+            }
+        }
+        return new Modes(modes);
+    }
+
+    /**
+     * Returns the packages requesting {@code permission} as an app op permission, or null.
+     */
+    synchronized String[] getAppOpPermissionPackages(String permission) throws RemoteException {
+        final int index = mRequesters.indexOfKey(permission);
+        if (index >= 0) {
+            return mRequesters.valueAt(index);
+        }
+        final String[] packages = mIPackageManager.getAppOpPermissionPackages(permission);
+        mRequesters.put(permission, packages);
+        return packages;
+    }
+
+    synchronized void clear() {
+        mModes.clear();
+        mRequesters.clear();
+    }
+
+    private void loadModes(int[] ops) {
+        int missingCount = 0;
+        final int[] missingOps = new int[ops.length];
+        for (int op : ops) {
+            if (mModes.get(op) == null) {
+                missingOps[missingCount++] = op;
+            }
+        }
+        if (missingCount == 0) {
+            return;
+        }
+        final int[] queriedOps = Arrays.copyOf(missingOps, missingCount);
+        for (int op : queriedOps) {
+            mModes.put(op, new ArrayMap<>());
+            watchOp(op);
+        }
+        final List<AppOpsManager.PackageOps> packageOpsList =
+                mAppOpsManager.getPackagesForOps(queriedOps);
+        final int packageOpsCount = packageOpsList != null ? packageOpsList.size() : 0;
+        for (int i = 0; i < packageOpsCount; i++) {
+            final AppOpsManager.PackageOps packageOps = packageOpsList.get(i);
+            final List<AppOpsManager.OpEntry> opEntries = packageOps.getOps();
+            final int opEntryCount = opEntries != null ? opEntries.size() : 0;
+            for (int j = 0; j < opEntryCount; j++) {
+                final AppOpsManager.OpEntry opEntry = opEntries.get(j);
+                final ArrayMap<String, SparseIntArray> opModes = mModes.get(opEntry.getOp());
+                if (opModes == null) {
+                    continue;
+                }
+                SparseIntArray userModes = opModes.get(packageOps.getPackageName());
+                if (userModes == null) {
+                    userModes = new SparseIntArray(1);
+                    opModes.put(packageOps.getPackageName(), userModes);
+                }
+                userModes.put(UserHandle.getUserId(packageOps.getUid()), opEntry.getMode());
+            }
+        }
+    }
+
+    private void watchOp(int op) {
+        if (mWatchers.get(op) != null) {
+            return;
+        }
+        final AppOpsManager.OnOpChangedListener watcher = (changedOp, packageName) -> {
+            synchronized (AppOpsStateTable.this) {
+                mModes.remove(op);
+            }
+        };
+        mWatchers.put(op, watcher);
+        try {
+            mAppOpsManager.startWatchingMode(op, null /* packageName */, watcher);
+        } catch (RuntimeException e) {
+            // Without a watcher the modes of the op cannot be kept.
+            Log.w(TAG, "Failed to watch op " + op, e);
+            mWatchers.remove(op);
+        }
+    }
+
+    private void registerReceiver() {
+        final IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addDataScheme("package");
+        mContext.registerReceiverAsUser(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                clear();
+            }
+        }, UserHandle.ALL, packageFilter, null /* permission */, null /* scheduler */);
+    }
+
+    /**
+     * Modes of some ops at the time they were loaded. Loaded modes are never changed, changes
+     * replace the modes of an op in the table.
+     */
+    static final class Modes {
+        private final SparseArray<ArrayMap<String, SparseIntArray>> mModes;
+
+        private Modes(SparseArray<ArrayMap<String, SparseIntArray>> modes) {
+            mModes = modes;
+        }
+
+        /**
+         * Returns the mode of the lowest op set for the package of the user, as the first op
+         * returned by {@link AppOpsManager#getPackagesForOps}, or {@code defaultMode} if none is
+         * set.
+         */
+        int get(int userId, String packageName, int defaultMode) {
+            for (int i = 0; i < mModes.size(); i++) {
+                final ArrayMap<String, SparseIntArray> opModes = mModes.valueAt(i);
+                final SparseIntArray userModes = opModes == null ? null : opModes.get(packageName);
+                final int index = userModes == null ? -1 : userModes.indexOfKey(userId);
+                if (index >= 0) {
+                    return userModes.valueAt(index);
+                }
+            }
+            return defaultMode;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import android.app.AppGlobals;
 import android.app.AppOpsManager;
 import android.app.AppOpsManager.PackageOps;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.IPackageManager;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
@@ -55,6 +56,7 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
     private final Context mContext;
     private final int[] mAppOpsOpCodes;
     private final String[] mPermissions;
+    private AppOpsStateTable mStateTable;
 
     public AppStateAppOpsBridge(Context context, ApplicationsState appState, Callback callback,
             int appOpsOpCode, String[] permissions) {
@@ -145,14 +147,25 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
 
     @Override
     protected void loadAllExtraInfo() {
-        SparseArray<ArrayMap<String, PermissionState>> entries = getEntries();
+        loadExtraInfo(mAppSession.getAllApps());
+    }
+
+    /**
+     * Loads the changed apps together, with the same few queries as {@link #loadAllExtraInfo}.
+     */
+    @Override
+    protected void loadChangedExtraInfo(List<AppEntry> changedApps) {
+        loadExtraInfo(changedApps);
+    }
+
+    private void loadExtraInfo(List<AppEntry> apps) {
+        SparseArray<ArrayMap<String, PermissionState>> entries = getEntries(apps);
 
         // Load state info.
         loadPermissionsStates(entries);
         loadAppOpsStates(entries);
 
         // Map states to application info.
-        List<AppEntry> apps = mAppSession.getAllApps();
         final int N = apps.size();
         for (int i = 0; i < N; i++) {
             AppEntry app = apps.get(i);
@@ -172,14 +185,7 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
      */
     private SparseArray<ArrayMap<String, PermissionState>> getEntries() {
         try {
-            Set<String> packagesSet = new HashSet<>();
-            for (String permission : mPermissions) {
-                String[] pkgs = mIPackageManager.getAppOpPermissionPackages(permission);
-                if (pkgs != null) {
-                    packagesSet.addAll(Arrays.asList(pkgs));
-                }
-            }
-
+            Set<String> packagesSet = getRequestingPackages();
             if (packagesSet.isEmpty()) {
                 // No packages are requesting permission as specified by mPermissions.
                 return null;
@@ -210,6 +216,66 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
         }
     }
 
+    /*
+     * Same as getEntries(), but tells the packages available for each profile from the given
+     * apps, instead of asking the package manager about every package.
+     */
+    private SparseArray<ArrayMap<String, PermissionState>> getEntries(List<AppEntry> apps) {
+        try {
+            Set<String> packagesSet = getRequestingPackages();
+            if (packagesSet.isEmpty()) {
+                // No packages are requesting permission as specified by mPermissions.
+                return null;
+            }
+
+            SparseArray<ArrayMap<String, PermissionState>> entries = new SparseArray<>();
+            for (final UserHandle profile : mProfiles) {
+                entries.put(profile.getIdentifier(), new ArrayMap<>());
+            }
+            final int appCount = apps.size();
+            for (int i = 0; i < appCount; i++) {
+                final ApplicationInfo info = apps.get(i).info;
+                final ArrayMap<String, PermissionState> entriesForProfile =
+                        entries.get(UserHandle.getUserId(info.uid));
+                if (entriesForProfile == null || !packagesSet.contains(info.packageName)
+                        || shouldIgnorePackage(info.packageName) || !isAvailable(info)) {
+                    continue;
+                }
+                entriesForProfile.put(info.packageName, new PermissionState(info.packageName,
+                        UserHandle.getUserHandleForUid(info.uid)));
+            }
+            return entries;
+        } catch (RemoteException e) {
+            Log.w(TAG, "PackageManager is dead. Can't get list of packages requesting "
+                    + mPermissions[0], e);
+            return null;
+        }
+    }
+
+    private Set<String> getRequestingPackages() throws RemoteException {
+        Set<String> packagesSet = new HashSet<>();
+        for (String permission : mPermissions) {
+            String[] pkgs = getStateTable().getAppOpPermissionPackages(permission);
+            if (pkgs != null) {
+                packagesSet.addAll(Arrays.asList(pkgs));
+            }
+        }
+        return packagesSet;
+    }
+
+    // Same as IPackageManager.isPackageAvailable() for the user of the application info.
+    private static boolean isAvailable(ApplicationInfo info) {
+        return (info.flags & ApplicationInfo.FLAG_INSTALLED) != 0
+                && (info.privateFlags & ApplicationInfo.PRIVATE_FLAG_HIDDEN) == 0;
+    }
+
+    private AppOpsStateTable getStateTable() {
+        if (mStateTable == null) {
+            mStateTable = AppOpsStateTable.getInstance(mContext);
+        }
+        return mStateTable;
+    }
+
     /*
      * This method will set the packageInfo and staticPermissionGranted field of the associated
      * PermissionState, which describes a particular package.
@@ -258,34 +324,20 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
         }
 
         // Find out which packages have been granted permission from AppOps.
-        final List<AppOpsManager.PackageOps> packageOps = mAppOpsManager.getPackagesForOps(
-                mAppOpsOpCodes);
-        final int packageOpsCount = packageOps != null ? packageOps.size() : 0;
-        for (int i = 0; i < packageOpsCount; i++) {
-            final AppOpsManager.PackageOps packageOp = packageOps.get(i);
-            final int userId = UserHandle.getUserId(packageOp.getUid());
+        final AppOpsStateTable.Modes modes = getStateTable().getModes(mAppOpsOpCodes);
+        final int profileCount = entries.size();
+        for (int i = 0; i < profileCount; i++) {
+            final int userId = entries.keyAt(i);
             if (!isThisUserAProfileOfCurrentUser(userId)) {
-                // This AppOp does not belong to any of this user's profiles.
-                continue;
-            }
-
-            final ArrayMap<String, PermissionState> entriesForProfile = entries.get(userId);
-            if (entriesForProfile == null) {
-                continue;
-            }
-            final PermissionState pe = entriesForProfile.get(packageOp.getPackageName());
-            if (pe == null) {
-                Log.w(TAG, "AppOp permission exists for package " + packageOp.getPackageName()
-                        + " of user " + userId + " but package doesn't exist or did not request "
-                        + Arrays.toString(mPermissions) + " access");
+                // These entries do not belong to any of this user's profiles.
                 continue;
             }
-
-            if (packageOp.getOps().size() < 1) {
-                Log.w(TAG, "No AppOps permission exists for package " + packageOp.getPackageName());
-                continue;
+            final ArrayMap<String, PermissionState> entriesForProfile = entries.valueAt(i);
+            final int entryCount = entriesForProfile.size();
+            for (int j = 0; j < entryCount; j++) {
+                final PermissionState pe = entriesForProfile.valueAt(j);
+                pe.appOpMode = modes.get(userId, pe.packageName, pe.appOpMode);
             }
-            pe.appOpMode = packageOp.getOps().get(0).getMode();
         }
     }
 
@@ -19,11 +19,17 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import com.android.settingslib.applications.ApplicationsState.Session;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Common base class for bridging information to ApplicationsState.
@@ -36,6 +42,11 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
     protected final BackgroundHandler mHandler;
     protected final MainHandler mMainHandler;
 
+    // The app entries whose extra info is loaded, only accessed on the background thread.
+    // ApplicationsState creates new entries for added and replaced packages, so the entries
+    // missing from this set are the ones whose extra info changed.
+    private Set<AppEntry> mLoadedApps;
+
     public AppStateBaseBridge(ApplicationsState appState, Callback callback) {
         mAppState = appState;
         mAppSession = mAppState != null ? mAppState.newSession(this) : null;
@@ -67,12 +78,14 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
 
     @Override
     public void onPackageListChanged() {
-        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_ALL);
+        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_CHANGED);
     }
 
     @Override
     public void onLoadEntriesCompleted() {
-        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_ALL);
+        // Entries of added and replaced packages are created asynchronously and reported here,
+        // so only the new ones are loaded once everything was loaded before.
+        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_CHANGED);
     }
 
     @Override
@@ -109,6 +122,60 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
 
     protected abstract void updateExtraInfo(AppEntry app, String pkg, int uid);
 
+    /**
+     * Loads the extra info of the {@code changedApps} only, which were added or replaced since
+     * the last load. The default updates each of them through {@link #updateExtraInfo}. Bridges
+     * may override it to load them together.
+     */
+    protected void loadChangedExtraInfo(List<AppEntry> changedApps) {
+        for (AppEntry app : changedApps) {
+            updateExtraInfo(app, app.info.packageName, app.info.uid);
+        }
+    }
+
+    /**
+     * Loads the extra info of the entries added or replaced since the last load, or of all
+     * entries if nothing was loaded before or most entries changed.
+     *
+     * @return whether any extra info was loaded
+     */
+    @VisibleForTesting
+    boolean loadChangedOrAllExtraInfo() {
+        if (mLoadedApps == null) {
+            loadAllAndRemember();
+            return true;
+        }
+        final ArrayList<AppEntry> apps = mAppSession.getAllApps();
+        final List<AppEntry> changedApps = new ArrayList<>();
+        for (AppEntry app : apps) {
+            if (!mLoadedApps.contains(app)) {
+                changedApps.add(app);
+            }
+        }
+        if (changedApps.size() > apps.size() / 2) {
+            // Most entries changed, so loading all of them at once is cheaper.
+            loadAllAndRemember();
+            return true;
+        }
+        mLoadedApps = newAppSet(apps);
+        if (changedApps.isEmpty()) {
+            return false;
+        }
+        loadChangedExtraInfo(changedApps);
+        return true;
+    }
+
+    private void loadAllAndRemember() {
+        loadAllExtraInfo();
+        mLoadedApps = mAppSession != null ? newAppSet(mAppSession.getAllApps()) : null;
+    }
+
+    private static Set<AppEntry> newAppSet(List<AppEntry> apps) {
+        final Set<AppEntry> set = Collections.newSetFromMap(new IdentityHashMap<>(apps.size()));
+        set.addAll(apps);
+        return set;
+    }
+
     private class MainHandler extends Handler {
         private static final int MSG_INFO_UPDATED = 1;
 
@@ -129,6 +196,7 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
     private class BackgroundHandler extends Handler {
         private static final int MSG_LOAD_ALL = 1;
         private static final int MSG_FORCE_LOAD_PKG = 2;
+        private static final int MSG_LOAD_CHANGED = 3;
 
         public BackgroundHandler(Looper looper) {
             super(looper);
@@ -138,9 +206,14 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 case MSG_LOAD_ALL:
-                    loadAllExtraInfo();
+                    loadAllAndRemember();
                     mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
                     break;
+                case MSG_LOAD_CHANGED:
+                    if (loadChangedOrAllExtraInfo()) {
+                        mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
+                    }
+                    break;
                 case MSG_FORCE_LOAD_PKG:
                     ArrayList<AppEntry> apps = mAppSession.getAllApps();
                     final int N = apps.size();
@@ -22,6 +22,7 @@ import android.content.Context;
 import android.content.pm.IPackageManager;
 import android.content.pm.PackageManager;
 import android.os.RemoteException;
+import android.os.UserHandle;
 import android.util.Log;
 
 import com.android.internal.util.ArrayUtils;
@@ -40,12 +41,16 @@ public class AppStateInstallAppsBridge extends AppStateBaseBridge {
 
     private static final String TAG = AppStateInstallAppsBridge.class.getSimpleName();
 
+    private static final int[] APP_OPS_OP_CODES = {AppOpsManager.OP_REQUEST_INSTALL_PACKAGES};
+
+    private final Context mContext;
     private final IPackageManager mIpm;
     private final AppOpsManager mAppOpsManager;
 
     public AppStateInstallAppsBridge(Context context, ApplicationsState appState,
             Callback callback) {
         super(appState, callback);
+        mContext = context;
         mIpm = AppGlobals.getPackageManager();
         mAppOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
     }
@@ -57,11 +62,30 @@ public class AppStateInstallAppsBridge extends AppStateBaseBridge {
 
     @Override
     protected void loadAllExtraInfo() {
-        // TODO: consider making this a batch operation with a single binder call
+        final AppOpsStateTable stateTable = AppOpsStateTable.getInstance(mContext);
+        String[] requestingPackages = null;
+        try {
+            requestingPackages = stateTable.getAppOpPermissionPackages(
+                    Manifest.permission.REQUEST_INSTALL_PACKAGES);
+        } catch (RemoteException exc) {
+            Log.e(TAG, "PackageManager dead. Cannot get permission info");
+        }
+        final AppOpsStateTable.Modes modes = stateTable.getModes(APP_OPS_OP_CODES);
         final List<AppEntry> allApps = mAppSession.getAllApps();
         for (int i = 0; i < allApps.size(); i++) {
-            AppEntry currentEntry = allApps.get(i);
-            updateExtraInfo(currentEntry, currentEntry.info.packageName, currentEntry.info.uid);
+            final AppEntry currentEntry = allApps.get(i);
+            final InstallAppsState appState = new InstallAppsState();
+            appState.permissionRequested =
+                    ArrayUtils.contains(requestingPackages, currentEntry.info.packageName);
+            appState.appOpMode = modes.get(UserHandle.getUserId(currentEntry.info.uid),
+                    currentEntry.info.packageName, AppOpsManager.MODE_DEFAULT);
+            if (appState.permissionRequested || appState.appOpMode != AppOpsManager.MODE_DEFAULT) {
+                // The op may also be set for the whole uid or restricted for the user, which is
+                // not loaded in bulk, so potential sources are checked like the details page.
+                appState.appOpMode = getAppOpMode(AppOpsManager.OP_REQUEST_INSTALL_PACKAGES,
+                        currentEntry.info.uid, currentEntry.info.packageName);
+            }
+            currentEntry.extraInfo = appState;
         }
     }
 
@@ -51,7 +51,16 @@ public class AppStateManageExternalStorageBridge extends AppStateAppOpsBridge {
     @Override
     protected void loadAllExtraInfo() {
         super.loadAllExtraInfo();
-        List<ApplicationsState.AppEntry> apps = mAppSession.getAllApps();
+        loadUidModes(mAppSession.getAllApps());
+    }
+
+    @Override
+    protected void loadChangedExtraInfo(List<ApplicationsState.AppEntry> changedApps) {
+        super.loadChangedExtraInfo(changedApps);
+        loadUidModes(changedApps);
+    }
+
+    private void loadUidModes(List<ApplicationsState.AppEntry> apps) {
         for (ApplicationsState.AppEntry app : apps) {
             if (app.extraInfo instanceof PermissionState) {
                 ((PermissionState) app.extraInfo).appOpMode =  mAppOpsManager.unsafeCheckOpNoThrow(
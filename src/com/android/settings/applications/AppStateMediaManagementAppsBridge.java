@@ -52,12 +52,24 @@ public class AppStateMediaManagementAppsBridge extends AppStateAppOpsBridge {
     @Override
     protected void loadAllExtraInfo() {
         super.loadAllExtraInfo();
-        final List<AppEntry> allApps = mAppSession.getAllApps();
-        final int appCount = allApps.size();
+        loadUidModes(mAppSession.getAllApps());
+    }
+
+    @Override
+    protected void loadChangedExtraInfo(List<AppEntry> changedApps) {
+        super.loadChangedExtraInfo(changedApps);
+        loadUidModes(changedApps);
+    }
+
+    private void loadUidModes(List<AppEntry> apps) {
+        final int appCount = apps.size();
         for (int i = 0; i < appCount; i++) {
-            final AppEntry appEntry = allApps.get(i);
+            final AppEntry appEntry = apps.get(i);
             if (appEntry.extraInfo instanceof PermissionState) {
-                updateExtraInfo(appEntry, appEntry.info.packageName, appEntry.info.uid);
+                // The op may also be set for the whole uid, which is not loaded in bulk.
+                ((PermissionState) appEntry.extraInfo).appOpMode =
+                        mAppOpsManager.unsafeCheckOpNoThrow(AppOpsManager.OPSTR_MANAGE_MEDIA,
+                                appEntry.info.uid, appEntry.info.packageName);
             }
         }
     }
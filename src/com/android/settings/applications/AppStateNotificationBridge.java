@@ -55,7 +55,7 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
     private IUsageStatsManager mUsageStatsManager;
     protected List<Integer> mUserIds;
     private NotificationBackend mBackend;
-    private static final int DAYS_TO_CHECK = 7;
+    static final int DAYS_TO_CHECK = 7;
 
     public AppStateNotificationBridge(Context context, ApplicationsState appState,
             Callback callback, IUsageStatsManager usageStatsManager,
@@ -82,6 +82,19 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
             return;
         }
 
+        loadExtraInfo(apps);
+    }
+
+    /**
+     * Loads the changed apps together from a single aggregation of the usage events, instead of
+     * querying the events of every package.
+     */
+    @Override
+    protected void loadChangedExtraInfo(List<AppEntry> changedApps) {
+        loadExtraInfo(changedApps);
+    }
+
+    private void loadExtraInfo(List<AppEntry> apps) {
         final Map<String, NotificationsSentState> map = getAggregatedUsageEvents();
         for (AppEntry entry : apps) {
             NotificationsSentState stats =
@@ -145,35 +158,9 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
         ArrayMap<String, NotificationsSentState> aggregatedStats = new ArrayMap<>();
 
         long now = System.currentTimeMillis();
-        long startTime = now - (DateUtils.DAY_IN_MILLIS * DAYS_TO_CHECK);
         for (int userId : mUserIds) {
-            UsageEvents events = null;
-            try {
-                events = mUsageStatsManager.queryEventsForUser(
-                        startTime, now, userId, mContext.getPackageName());
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-            if (events != null) {
-                UsageEvents.Event event = new UsageEvents.Event();
-                while (events.hasNextEvent()) {
-                    events.getNextEvent(event);
-                    NotificationsSentState stats =
-                            aggregatedStats.get(getKey(userId, event.getPackageName()));
-                    if (stats == null) {
-                        stats = new NotificationsSentState();
-                        aggregatedStats.put(getKey(userId, event.getPackageName()), stats);
-                    }
-
-                    if (event.getEventType() == UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
-                        if (event.getTimeStamp() > stats.lastSent) {
-                            stats.lastSent = event.getTimeStamp();
-                        }
-                        stats.sentCount++;
-                    }
-
-                }
-            }
+            NotificationUsageAggregate.getInstance(userId).collect(
+                    mUsageStatsManager, mContext.getPackageName(), now, aggregatedStats);
         }
         return aggregatedStats;
     }
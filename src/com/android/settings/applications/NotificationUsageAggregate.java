@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.applications;
+
+import static com.android.settings.applications.AppStateNotificationBridge.DAYS_TO_CHECK;
+
+import android.app.usage.IUsageStatsManager;
+import android.app.usage.UsageEvents;
+import android.os.RemoteException;
+import android.text.format.DateUtils;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.applications.AppStateNotificationBridge.NotificationsSentState;
+
+import java.util.Map;
+
+/**
+ * Notifications sent by the packages of a user over the last {@link
+ * AppStateNotificationBridge#DAYS_TO_CHECK} days, kept for the lifetime of the process.
+ *
+ * <p>Events are only scanned since the end of the previous scan, so opening the notification
+ * screens again only reads the events sent in between. The time of every counted notification is
+ * kept, so that notifications roll off exactly when they leave the checked window, as if the
+ * whole window was scanned again.
+ */
+final class NotificationUsageAggregate {
+
+    private static final String TAG = "NotificationUsageAggr";
+
+    private static final SparseArray<NotificationUsageAggregate> sAggregates = new SparseArray<>();
+
+    private final int mUserId;
+    private final ArrayMap<String, PackageUsage> mPackages = new ArrayMap<>();
+    // Events are scanned up to this time, exclusive.
+    private long mWatermark;
+
+    static NotificationUsageAggregate getInstance(int userId) {
+        synchronized (sAggregates) {
+            NotificationUsageAggregate aggregate = sAggregates.get(userId);
+            if (aggregate == null) {
+                aggregate = new NotificationUsageAggregate(userId);
+                sAggregates.put(userId, aggregate);
+            }
+            return aggregate;
+        }
+    }
+
+    @VisibleForTesting
+    static void clearAll() {
+        synchronized (sAggregates) {
+            sAggregates.clear();
+        }
+    }
+
+    private NotificationUsageAggregate(int userId) {
+        mUserId = userId;
+    }
+
+    /**
+     * Scans the events sent since the previous call and puts the state of every package which
+     * sent notifications during the checked window into {@code states}, keyed by
+     * {@link AppStateNotificationBridge#getKey}.
+     */
+    synchronized void collect(IUsageStatsManager usageStatsManager, String callingPackage,
+            long now, Map<String, NotificationsSentState> states) {
+        final long startTime = now - (DateUtils.DAY_IN_MILLIS * DAYS_TO_CHECK);
+        if (mWatermark < startTime || mWatermark > now) {
+            // Everything scanned before has expired, or the clock was set back.
+            mPackages.clear();
+            mWatermark = startTime;
+        }
+        UsageEvents events = null;
+        try {
+            events = usageStatsManager.queryEventsForUser(
+                    mWatermark, now, mUserId, callingPackage);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Failed to query usage events of user " + mUserId, e);
+        }
+        if (events != null) {
+            final UsageEvents.Event event = new UsageEvents.Event();
+            while (events.hasNextEvent()) {
+                events.getNextEvent(event);
+                if (event.getEventType() != UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
+                    continue;
+                }
+                PackageUsage usage = mPackages.get(event.getPackageName());
+                if (usage == null) {
+                    usage = new PackageUsage();
+                    mPackages.put(event.getPackageName(), usage);
+                }
+                // Events returned for the window are counted even if they are slightly older,
+                // until the start of the window moves on.
+                usage.add(Math.max(startTime, event.getTimeStamp()), event.getTimeStamp());
+            }
+            mWatermark = now;
+        }
+
+        for (int i = mPackages.size() - 1; i >= 0; i--) {
+            final PackageUsage usage = mPackages.valueAt(i);
+            final int sentCount = usage.removeBefore(startTime);
+            if (sentCount == 0) {
+                mPackages.removeAt(i);
+                continue;
+            }
+            final NotificationsSentState state = new NotificationsSentState();
+            state.sentCount = sentCount;
+            state.lastSent = usage.mLastSent;
+            states.put(AppStateNotificationBridge.getKey(mUserId, mPackages.keyAt(i)), state);
+        }
+    }
+
+    /** Times of the notifications sent by a package, in the order they were sent. */
+    private static final class PackageUsage {
+        long[] mTimes = new long[8];
+        int mStart;
+        int mEnd;
+        long mLastSent;
+
+        void add(long countedTime, long timestamp) {
+            if (mEnd == mTimes.length) {
+                // Drops the times which rolled off before growing the array.
+                final int size = mEnd - mStart;
+                final long[] times = size * 2 > mTimes.length
+                        ? new long[mTimes.length * 2] : mTimes;
+                System.arraycopy(mTimes, mStart, times, 0, size);
+                mTimes = times;
+                mStart = 0;
+                mEnd = size;
+            }
+            mTimes[mEnd++] = countedTime;
+            mLastSent = Math.max(mLastSent, timestamp);
+        }
+
+        /** Drops the notifications sent before {@code startTime}, and returns the count left. */
+        int removeBefore(long startTime) {
+            while (mStart < mEnd && mTimes[mStart] < startTime) {
+                mStart++;
+            }
+            return mEnd - mStart;
+        }
+    }
+}
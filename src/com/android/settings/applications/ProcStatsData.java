@@ -29,6 +29,8 @@ import android.util.Log;
 import android.util.LongSparseArray;
 import android.util.SparseArray;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.internal.app.ProcessMap;
 import com.android.internal.app.procstats.DumpUtils;
 import com.android.internal.app.procstats.IProcessStats;
@@ -53,6 +55,10 @@ public class ProcStatsData {
 
     private static final boolean DEBUG = ProcessStatsUi.DEBUG;
 
+    // How long the aggregated tables of a duration are shown again instead of loading the stats.
+    @VisibleForTesting
+    static final long MAX_TABLES_AGE = 60 * 1000;
+
     private static ProcessStats sStatsXfer;
 
     private PackageManager mPm;
@@ -73,6 +79,9 @@ public class ProcStatsData {
 
     private ArrayList<ProcStatsPackageEntry> pkgEntries;
 
+    // Duration -> aggregated tables, of the durations shown since the stats were last reloaded.
+    private final LongSparseArray<Tables> mTables = new LongSparseArray<>();
+
     public ProcStatsData(Context context, boolean useXfer) {
         mContext = context;
         mPm = context.getPackageManager();
@@ -95,11 +104,13 @@ public class ProcStatsData {
 
     public void setMemStates(int[] memStates) {
         mMemStates = memStates;
+        mTables.clear();
         refreshStats(false);
     }
 
     public void setStats(int[] stats) {
         this.mStates = stats;
+        mTables.clear();
         refreshStats(false);
     }
 
@@ -122,10 +133,17 @@ public class ProcStatsData {
         return mStats.mTimePeriodEndRealtime - mStats.mTimePeriodStartRealtime;
     }
 
+    /**
+     * Selects the stats of the last {@code duration} milliseconds. The tables of a duration
+     * shown shortly before are restored instead of loading and aggregating the stats again.
+     */
     public void setDuration(long duration) {
         if (duration != mDuration) {
             mDuration = duration;
-            refreshStats(true);
+            if (!restoreTables()) {
+                load();
+                aggregate();
+            }
         }
     }
 
@@ -137,11 +155,32 @@ public class ProcStatsData {
         return pkgEntries;
     }
 
+    /**
+     * Aggregates the stats of the current duration.
+     *
+     * @param forceLoad whether to load the stats again, which also drops the tables of all other
+     *                  durations.
+     */
     public void refreshStats(boolean forceLoad) {
+        if (forceLoad) {
+            mTables.clear();
+        } else if (restoreTables()) {
+            return;
+        }
         if (mStats == null || forceLoad) {
             load();
         }
+        aggregate();
+    }
+
+    private void aggregate() {
+        aggregateEntries();
+        mTables.put(mDuration, new Tables(mStats, pkgEntries, mMemInfo, memTotalTime,
+                SystemClock.uptimeMillis()));
+    }
 
+    @VisibleForTesting
+    void aggregateEntries() {
         pkgEntries = new ArrayList<>();
 
         long now = SystemClock.uptimeMillis();
@@ -170,6 +209,22 @@ public class ProcStatsData {
         pkgEntries.add(osPkg);
     }
 
+    private boolean restoreTables() {
+        final Tables tables = mTables.get(mDuration);
+        if (tables == null) {
+            return false;
+        }
+        if (SystemClock.uptimeMillis() - tables.mLoadTime > MAX_TABLES_AGE) {
+            mTables.remove(mDuration);
+            return false;
+        }
+        mStats = tables.mStats;
+        pkgEntries = tables.mEntries;
+        mMemInfo = tables.mMemInfo;
+        memTotalTime = tables.mMemTotalTime;
+        return true;
+    }
+
     private void createPkgMap(ArrayList<ProcStatsEntry> procEntries, ProcessDataCollection bgTotals,
             ProcessDataCollection runTotals) {
         // Combine processes into packages.
@@ -341,7 +396,8 @@ public class ProcStatsData {
         return procEntries;
     }
 
-    private void load() {
+    @VisibleForTesting
+    void load() {
         try {
             ParcelFileDescriptor pfd = mProcessStats.getStatsOverTime(mDuration);
             mStats = new ProcessStats(false);
@@ -359,6 +415,27 @@ public class ProcStatsData {
         }
     }
 
+    /**
+     * The stats of one duration, together with the tables aggregated from them.
+     */
+    private static class Tables {
+        final ProcessStats mStats;
+        final ArrayList<ProcStatsPackageEntry> mEntries;
+        final MemInfo mMemInfo;
+        final long mMemTotalTime;
+        // Uptime at which the tables were aggregated, for telling whether they are still current.
+        final long mLoadTime;
+
+        Tables(ProcessStats stats, ArrayList<ProcStatsPackageEntry> entries, MemInfo memInfo,
+                long memTotalTime, long loadTime) {
+            mStats = stats;
+            mEntries = entries;
+            mMemInfo = memInfo;
+            mMemTotalTime = memTotalTime;
+            mLoadTime = loadTime;
+        }
+    }
+
     public static class MemInfo {
         public double realUsedRam;
         public double realFreeRam;
@@ -39,10 +39,14 @@ import android.os.Message;
 import android.os.RemoteException;
 import android.os.UserHandle;
 import android.os.UserManager;
+import android.text.TextUtils;
 import android.text.format.Formatter;
 import android.util.Log;
 import android.util.SparseArray;
 
+import androidx.annotation.VisibleForTesting;
+
+import com.android.internal.util.MemInfoReader;
 import com.android.settings.R;
 import com.android.settingslib.Utils;
 import com.android.settingslib.applications.InterestingConfigChanges;
@@ -72,6 +76,8 @@ public class RunningState {
 
     static final long TIME_UPDATE_DELAY = 1000;
     static final long CONTENTS_UPDATE_DELAY = 2000;
+    // Upper bound of the update delay, which doubles while the contents do not change.
+    static final long MAX_CONTENTS_UPDATE_DELAY = 16000;
 
     static final int MAX_SERVICES = 100;
 
@@ -222,12 +228,18 @@ public class RunningState {
     long mForegroundProcessMemory;
     int mNumServiceProcesses;
     long mServiceProcessMemory;
+    // The memory shown in the header of the running processes, as formatted there.
+    private String mShownMemory;
+
+    private final MemInfoReader mMemInfoReader = new MemInfoReader();
 
     // ----- BACKGROUND MONITORING THREAD -----
 
     final HandlerThread mBackgroundThread;
 
     final class BackgroundHandler extends Handler {
+        private long mUpdateDelay = CONTENTS_UPDATE_DELAY;
+
         public BackgroundHandler(Looper looper) {
             super(looper);
         }
@@ -244,12 +256,17 @@ public class RunningState {
                             return;
                         }
                     }
-                    Message cmd = mHandler.obtainMessage(MSG_REFRESH_UI);
-                    cmd.arg1 = update(mApplicationContext, mAm) ? 1 : 0;
-                    mHandler.sendMessage(cmd);
+                    final int refresh = update(mApplicationContext, mAm);
+                    mUpdateDelay = getNextUpdateDelay(mUpdateDelay, refresh,
+                            msg.arg1 != 0 /* poll */);
+                    if (refresh != OnRefreshUiListener.REFRESH_TIME) {
+                        Message cmd = mHandler.obtainMessage(MSG_REFRESH_UI);
+                        cmd.arg1 = refresh == OnRefreshUiListener.REFRESH_STRUCTURE ? 1 : 0;
+                        mHandler.sendMessage(cmd);
+                    }
                     removeMessages(MSG_UPDATE_CONTENTS);
-                    msg = obtainMessage(MSG_UPDATE_CONTENTS);
-                    sendMessageDelayed(msg, CONTENTS_UPDATE_DELAY);
+                    msg = obtainMessage(MSG_UPDATE_CONTENTS, 1 /* poll */, 0);
+                    sendMessageDelayed(msg, mUpdateDelay);
                     break;
             }
         }
@@ -257,6 +274,20 @@ public class RunningState {
 
     final BackgroundHandler mBackgroundHandler;
 
+    /**
+     * @return the delay of the next poll, which doubles while polls do not change anything.
+     * Any change, or any update which is not a poll, resets it.
+     */
+    @VisibleForTesting
+    static long getNextUpdateDelay(long updateDelay, int refresh, boolean poll) {
+        // Only polls scheduled by the background handler keep backing off, any other request
+        // for an update means that something may have changed.
+        if (refresh != OnRefreshUiListener.REFRESH_TIME || !poll) {
+            return CONTENTS_UPDATE_DELAY;
+        }
+        return Math.min(updateDelay * 2, MAX_CONTENTS_UPDATE_DELAY);
+    }
+
     final Handler mHandler = new Handler() {
         int mNextUpdate = OnRefreshUiListener.REFRESH_TIME;
 
@@ -522,6 +553,10 @@ public class RunningState {
                 si.mPackageInfo = si.mServiceInfo.applicationInfo;
                 mServices.put(service.service, si);
             }
+            // The client label only has to be loaded again when the client changed.
+            final boolean sameClient = si.mDescription != null
+                    && si.mRunningService.clientLabel == service.clientLabel
+                    && TextUtils.equals(si.mRunningService.clientPackage, service.clientPackage);
             si.mCurSeq = mCurSeq;
             si.mRunningService = service;
             long activeSince = service.restarting == 0 ? service.activeSince : -1;
@@ -533,6 +568,8 @@ public class RunningState {
                 if (si.mShownAsStarted) {
                     si.mShownAsStarted = false;
                     changed = true;
+                } else if (sameClient) {
+                    return changed;
                 }
                 try {
                     Resources clientr = pm.getResourcesForApplication(service.clientPackage);
@@ -546,6 +583,8 @@ public class RunningState {
                 if (!si.mShownAsStarted) {
                     si.mShownAsStarted = true;
                     changed = true;
+                } else if (sameClient) {
+                    return changed;
                 }
                 si.mDescription = context.getResources().getString(
                         R.string.service_started_by_app);
@@ -554,6 +593,9 @@ public class RunningState {
             return changed;
         }
 
+        /**
+         * @return whether the shown size changed.
+         */
         boolean updateSize(Context context, long pss, int curSeq) {
             mSize = pss * 1024;
             if (mCurSeq == curSeq) {
@@ -561,10 +603,9 @@ public class RunningState {
                         context, mSize);
                 if (!sizeStr.equals(mSizeStr)) {
                     mSizeStr = sizeStr;
-                    // We update this on the second tick where we update just
-                    // the text in the current items, so no need to say we
-                    // changed here.
-                    return false;
+                    // The text of the current items is updated on the next
+                    // time tick, this only tells that the shown data changed.
+                    return true;
                 }
             }
             return false;
@@ -685,12 +726,16 @@ public class RunningState {
             return false;
         }
 
+        /**
+         * @return whether the shown size of this item or of one of its children changed.
+         */
         boolean updateSize(Context context) {
+            boolean changed = false;
             if (mUser != null) {
                 mSize = 0;
                 for (int i = 0; i < mChildren.size(); i++) {
                     MergedItem child = mChildren.get(i);
-                    child.updateSize(context);
+                    changed |= child.updateSize(context);
                     mSize += child.mSize;
                 }
             } else {
@@ -704,12 +749,11 @@ public class RunningState {
                     context, mSize);
             if (!sizeStr.equals(mSizeStr)) {
                 mSizeStr = sizeStr;
-                // We update this on the second tick where we update just
-                // the text in the current items, so no need to say we
-                // changed here.
-                return false;
+                // The text of the current items is updated on the next
+                // time tick, this only tells that the shown data changed.
+                return true;
             }
-            return false;
+            return changed;
         }
 
         public Drawable loadIcon(Context context, RunningState state) {
@@ -808,9 +852,9 @@ public class RunningState {
                 mBackgroundHandler.removeMessages(MSG_UPDATE_CONTENTS);
                 mBackgroundHandler.sendEmptyMessage(MSG_RESET_CONTENTS);
             }
-            if (!mBackgroundHandler.hasMessages(MSG_UPDATE_CONTENTS)) {
-                mBackgroundHandler.sendEmptyMessage(MSG_UPDATE_CONTENTS);
-            }
+            // A poll left from before may be far away after backing off, update right away.
+            mBackgroundHandler.removeMessages(MSG_UPDATE_CONTENTS);
+            mBackgroundHandler.sendEmptyMessage(MSG_UPDATE_CONTENTS);
             mHandler.sendEmptyMessage(MSG_UPDATE_TIME);
         }
     }
@@ -899,12 +943,21 @@ public class RunningState {
         userItem.mChildren.add(newItem);
     }
 
-    private boolean update(Context context, ActivityManager am) {
+    /**
+     * Updates the state, reusing the items whose process or service did not change.
+     *
+     * @return {@link OnRefreshUiListener#REFRESH_STRUCTURE} if items were added, removed or
+     * changed, {@link OnRefreshUiListener#REFRESH_DATA} if only sizes, process counts or the
+     * memory shown in the header changed, and {@link OnRefreshUiListener#REFRESH_TIME} if
+     * nothing shown changed.
+     */
+    private int update(Context context, ActivityManager am) {
         final PackageManager pm = context.getPackageManager();
 
         mSequence++;
 
         boolean changed = false;
+        boolean sizeChanged = false;
 
         // Retrieve list of services, filtering out anything that definitely
         // won't be shown in the UI.
@@ -1329,7 +1382,7 @@ public class RunningState {
             int bgIndex = 0;
             for (int i = 0; i < pids.length; i++) {
                 ProcessItem proc = mAllProcessItems.get(i);
-                changed |= proc.updateSize(context, pss[i], mSequence);
+                sizeChanged |= proc.updateSize(context, pss[i], mSequence);
                 if (proc.mCurSeq == mSequence) {
                     serviceProcessMemory += proc.mSize;
                 } else if (proc.mRunningProcessInfo.importance >=
@@ -1359,7 +1412,7 @@ public class RunningState {
                         }
                     }
                     mergedItem.update(context, true);
-                    mergedItem.updateSize(context);
+                    sizeChanged |= mergedItem.updateSize(context);
                     bgIndex++;
                 } else if (proc.mRunningProcessInfo.importance <=
                         ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE) {
@@ -1408,23 +1461,32 @@ public class RunningState {
                     MergedItem user = mOtherUserBackgroundItems.valueAt(i);
                     if (user.mCurSeq == mSequence) {
                         user.update(context, true);
-                        user.updateSize(context);
+                        sizeChanged |= user.updateSize(context);
                     }
                 }
             }
         }
 
         for (int i = 0; i < mMergedItems.size(); i++) {
-            mMergedItems.get(i).updateSize(context);
+            sizeChanged |= mMergedItems.get(i).updateSize(context);
         }
 
+        // The header also shows the free and cached memory of the system.
+        mMemInfoReader.readMemInfo();
+        final long freeMemory = mMemInfoReader.getFreeSize() + mMemInfoReader.getCachedSize();
+
         synchronized (mLock) {
+            final boolean countChanged = mNumBackgroundProcesses != numBackgroundProcesses
+                    || mNumForegroundProcesses != numForegroundProcesses
+                    || mNumServiceProcesses != numServiceProcesses;
+            sizeChanged |= countChanged || !mHaveData;
             mNumBackgroundProcesses = numBackgroundProcesses;
             mNumForegroundProcesses = numForegroundProcesses;
             mNumServiceProcesses = numServiceProcesses;
             mBackgroundProcessMemory = backgroundProcessMemory;
             mForegroundProcessMemory = foregroundProcessMemory;
             mServiceProcessMemory = serviceProcessMemory;
+            sizeChanged |= updateShownMemory(context, freeMemory);
             if (newBackgroundItems != null) {
                 mBackgroundItems = newBackgroundItems;
                 mUserBackgroundItems = newUserBackgroundItems;
@@ -1438,7 +1500,36 @@ public class RunningState {
             }
         }
 
-        return changed;
+        return getRefresh(changed, sizeChanged);
+    }
+
+    /**
+     * Records the memory shown in the header of the running processes, which is read again
+     * there on every refresh of the data.
+     *
+     * @return whether the memory changed as shown.
+     */
+    @VisibleForTesting
+    boolean updateShownMemory(Context context, long freeMemory) {
+        final String shownMemory = Formatter.formatShortFileSize(context, freeMemory)
+                + "/" + Formatter.formatShortFileSize(context, mBackgroundProcessMemory)
+                + "/" + Formatter.formatShortFileSize(context, mServiceProcessMemory);
+        if (shownMemory.equals(mShownMemory)) {
+            return false;
+        }
+        mShownMemory = shownMemory;
+        return true;
+    }
+
+    /**
+     * @return the refresh of the UI needed after an update.
+     */
+    @VisibleForTesting
+    static int getRefresh(boolean structureChanged, boolean dataChanged) {
+        if (structureChanged) {
+            return OnRefreshUiListener.REFRESH_STRUCTURE;
+        }
+        return dataChanged ? OnRefreshUiListener.REFRESH_DATA : OnRefreshUiListener.REFRESH_TIME;
     }
 
     void setWatchingBackgroundItems(boolean watching) {
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.applications.manageapplications;
+
+import android.text.TextUtils;
+import android.util.LongSparseArray;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Search index of the app labels shown by {@link ManageApplications}.
+ *
+ * <p>Labels are folded once, to lower case in the given locale and without accents, and every
+ * three characters long substring of a folded label points to the entries containing it. A query
+ * is matched against the entries of its rarest substring only. When a query contains the
+ * previous one, as while typing, only the previous matches are checked again.
+ *
+ * <p>The index is built on the first query, not on the thread creating it.
+ */
+class AppLabelIndex {
+
+    private static final int GRAM_LENGTH = 3;
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final ArrayList<AppEntry> mEntries;
+    private final Locale mLocale;
+
+    private String[] mFoldedLabels;
+    // Packed trigram -> positions of the entries containing it. The first element is the count.
+    private LongSparseArray<int[]> mGrams;
+
+    private String mLastQuery;
+    private int[] mLastMatches;
+    private int mLastMatchCount;
+
+    AppLabelIndex(ArrayList<AppEntry> entries, Locale locale) {
+        mEntries = entries;
+        mLocale = locale;
+    }
+
+    ArrayList<AppEntry> getEntries() {
+        return mEntries;
+    }
+
+    /**
+     * @return the entries whose label contains {@code query}, ignoring case and accents, or all
+     * entries if {@code query} is empty.
+     */
+    synchronized ArrayList<AppEntry> filter(CharSequence query) {
+        if (TextUtils.isEmpty(query)) {
+            return mEntries;
+        }
+        if (mFoldedLabels == null) {
+            build();
+        }
+        final String foldedQuery = fold(query.toString(), mLocale);
+
+        // Candidates are all entries, the previous matches, or the entries of a trigram.
+        int[] candidates = null;
+        int candidateOffset = 0;
+        int candidateCount = mEntries.size();
+        if (mLastQuery != null && foldedQuery.contains(mLastQuery)) {
+            candidates = mLastMatches;
+            candidateCount = mLastMatchCount;
+        }
+        for (int i = 0; i + GRAM_LENGTH <= foldedQuery.length(); i++) {
+            final int[] positions = mGrams.get(pack(foldedQuery, i));
+            if (positions == null) {
+                candidateCount = 0;
+                break;
+            }
+            if (positions[0] < candidateCount) {
+                candidates = positions;
+                candidateOffset = 1;
+                candidateCount = positions[0];
+            }
+        }
+
+        final ArrayList<AppEntry> matchedEntries = new ArrayList<>();
+        final int[] matches = new int[candidateCount];
+        int matchCount = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            final int position = candidates == null ? i : candidates[candidateOffset + i];
+            if (mFoldedLabels[position].contains(foldedQuery)) {
+                matches[matchCount++] = position;
+                matchedEntries.add(mEntries.get(position));
+            }
+        }
+        mLastQuery = foldedQuery;
+        mLastMatches = matches;
+        mLastMatchCount = matchCount;
+        return matchedEntries;
+    }
+
+    private void build() {
+        final int size = mEntries.size();
+        mFoldedLabels = new String[size];
+        mGrams = new LongSparseArray<>();
+        for (int position = 0; position < size; position++) {
+            final String label = mEntries.get(position).label;
+            final String foldedLabel = label == null ? "" : fold(label, mLocale);
+            mFoldedLabels[position] = foldedLabel;
+            for (int i = 0; i + GRAM_LENGTH <= foldedLabel.length(); i++) {
+                final long gram = pack(foldedLabel, i);
+                int[] positions = mGrams.get(gram);
+                if (positions == null) {
+                    positions = new int[4];
+                    mGrams.put(gram, positions);
+                } else if (positions[positions[0]] == position) {
+                    // The label contains this trigram more than once. Positions are added in
+                    // increasing order, so the current label can only be the last one.
+                    continue;
+                } else if (positions[0] + 1 == positions.length) {
+                    positions = Arrays.copyOf(positions, positions.length * 2);
+                    mGrams.put(gram, positions);
+                }
+                positions[++positions[0]] = position;
+            }
+        }
+    }
+
+    private static long pack(String text, int start) {
+        return ((long) text.charAt(start) << 32)
+                | ((long) text.charAt(start + 1) << 16)
+                | text.charAt(start + 2);
+    }
+
+    private static String fold(String text, Locale locale) {
+        final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(locale);
+    }
+}
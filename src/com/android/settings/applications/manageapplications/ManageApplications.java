@@ -138,6 +138,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Locale;
 import java.util.Set;
 
 /**
@@ -1013,6 +1014,7 @@ public class ManageApplications extends InstrumentedFragment
         private boolean mHasReceivedLoadEntries;
         private boolean mHasReceivedBridgeCallback;
         private SearchFilter mSearchFilter;
+        private volatile AppLabelIndex mLabelIndex;
         private PowerAllowlistBackend mBackend;
 
         // This is to remember and restore the last scroll position when this
@@ -1556,17 +1558,14 @@ public class ManageApplications extends InstrumentedFragment
             @WorkerThread
             @Override
             protected FilterResults performFiltering(CharSequence query) {
-                final ArrayList<ApplicationsState.AppEntry> matchedEntries;
-                if (TextUtils.isEmpty(query)) {
-                    matchedEntries = mOriginalEntries;
-                } else {
-                    matchedEntries = new ArrayList<>();
-                    for (ApplicationsState.AppEntry entry : mOriginalEntries) {
-                        if (entry.label.toLowerCase().contains(query.toString().toLowerCase())) {
-                            matchedEntries.add(entry);
-                        }
-                    }
+                // The index is rebuilt on this thread whenever the entries were rebuilt.
+                AppLabelIndex labelIndex = mLabelIndex;
+                if (labelIndex == null || labelIndex.getEntries() != mOriginalEntries) {
+                    labelIndex = new AppLabelIndex(mOriginalEntries, Locale.getDefault());
+                    mLabelIndex = labelIndex;
                 }
+                final ArrayList<ApplicationsState.AppEntry> matchedEntries =
+                        labelIndex.filter(query);
                 final FilterResults results = new FilterResults();
                 results.values = matchedEntries;
                 results.count = matchedEntries.size();
@@ -28,7 +28,6 @@ import android.content.pm.UserInfo;
 import android.os.Bundle;
 import android.os.UserHandle;
 import android.os.UserManager;
-import android.util.IconDrawableFactory;
 import android.util.Pair;
 import android.view.View;
 
@@ -39,6 +38,7 @@ import androidx.preference.PreferenceScreen;
 import com.android.settings.R;
 import com.android.settings.applications.AppInfoBase;
 import com.android.settings.search.BaseSearchIndexProvider;
+import com.android.settings.utils.AppIconCache;
 import com.android.settings.widget.EmptyTextSettings;
 import com.android.settingslib.search.SearchIndexable;
 import com.android.settingslib.widget.AppPreference;
@@ -52,7 +52,6 @@ public class InteractAcrossProfilesSettings extends EmptyTextSettings {
     private PackageManager mPackageManager;
     private UserManager mUserManager;
     private CrossProfileApps mCrossProfileApps;
-    private IconDrawableFactory mIconDrawableFactory;
 
     @Override
     public void onCreate(Bundle icicle) {
@@ -61,7 +60,6 @@ public class InteractAcrossProfilesSettings extends EmptyTextSettings {
         mContext = getContext();
         mPackageManager = mContext.getPackageManager();
         mUserManager = mContext.getSystemService(UserManager.class);
-        mIconDrawableFactory = IconDrawableFactory.newInstance(mContext);
         mCrossProfileApps = mContext.getSystemService(CrossProfileApps.class);
     }
 
@@ -76,14 +74,15 @@ public class InteractAcrossProfilesSettings extends EmptyTextSettings {
                 collectConfigurableApps(mPackageManager, mUserManager, mCrossProfileApps);
 
         final Context prefContext = getPrefContext();
+        final AppIconCache appIconCache = AppIconCache.getInstance(mContext);
         for (final Pair<ApplicationInfo, UserHandle> appData : crossProfileApps) {
             final ApplicationInfo appInfo = appData.first;
             final UserHandle user = appData.second;
             final String packageName = appInfo.packageName;
-            final CharSequence label = appInfo.loadLabel(mPackageManager);
+            final CharSequence label = appIconCache.getLabel(mContext, appInfo);
 
             final Preference pref = new AppPreference(prefContext);
-            pref.setIcon(mIconDrawableFactory.getBadgedIcon(appInfo, user.getIdentifier()));
+            appIconCache.loadBadgedIcon(mContext, appInfo, user.getIdentifier(), pref::setIcon);
             pref.setTitle(mPackageManager.getUserBadgedLabel(label, user));
             pref.setSummary(InteractAcrossProfilesDetails.getPreferenceSummary(
                     prefContext, packageName));
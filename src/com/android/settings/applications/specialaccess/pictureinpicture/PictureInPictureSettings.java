@@ -28,7 +28,6 @@ import android.content.pm.UserInfo;
 import android.os.Bundle;
 import android.os.UserHandle;
 import android.os.UserManager;
-import android.util.IconDrawableFactory;
 import android.util.Pair;
 import android.view.View;
 
@@ -40,6 +39,7 @@ import androidx.preference.PreferenceScreen;
 import com.android.settings.R;
 import com.android.settings.applications.AppInfoBase;
 import com.android.settings.search.BaseSearchIndexProvider;
+import com.android.settings.utils.AppIconCache;
 import com.android.settings.widget.EmptyTextSettings;
 import com.android.settingslib.search.SearchIndexable;
 import com.android.settingslib.widget.AppPreference;
@@ -91,7 +91,6 @@ public class PictureInPictureSettings extends EmptyTextSettings {
     private Context mContext;
     private PackageManager mPackageManager;
     private UserManager mUserManager;
-    private IconDrawableFactory mIconDrawableFactory;
 
     /**
      * @return true if the package has any activities that declare that they support
@@ -133,7 +132,6 @@ public class PictureInPictureSettings extends EmptyTextSettings {
         mContext = getActivity();
         mPackageManager = mContext.getPackageManager();
         mUserManager = (UserManager) mContext.getSystemService(Context.USER_SERVICE);
-        mIconDrawableFactory = IconDrawableFactory.newInstance(mContext);
     }
 
     @Override
@@ -152,15 +150,16 @@ public class PictureInPictureSettings extends EmptyTextSettings {
 
         // Rebuild the list of prefs
         final Context prefContext = getPrefContext();
+        final AppIconCache appIconCache = AppIconCache.getInstance(mContext);
         for (final Pair<ApplicationInfo, Integer> appData : pipApps) {
             final ApplicationInfo appInfo = appData.first;
             final int userId = appData.second;
             final UserHandle user = UserHandle.of(userId);
             final String packageName = appInfo.packageName;
-            final CharSequence label = appInfo.loadLabel(mPackageManager);
+            final CharSequence label = appIconCache.getLabel(mContext, appInfo);
 
             final Preference pref = new AppPreference(prefContext);
-            pref.setIcon(mIconDrawableFactory.getBadgedIcon(appInfo, userId));
+            appIconCache.loadBadgedIcon(mContext, appInfo, userId, pref::setIcon);
             pref.setTitle(mPackageManager.getUserBadgedLabel(label, user));
             pref.setSummary(PictureInPictureDetails.getPreferenceSummary(prefContext,
                     appInfo.uid, packageName));
@@ -34,6 +34,7 @@ import androidx.preference.Preference;
 import androidx.preference.PreferenceScreen;
 
 import com.android.settings.Utils;
+import com.android.settings.core.instrumentation.ControllerLatencyRecorder;
 import com.android.settings.slices.SettingsSliceProvider;
 import com.android.settings.slices.SliceData;
 import com.android.settings.slices.Sliceable;
@@ -254,7 +255,10 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
             return false;
         }
 
+        final long startTime = ControllerLatencyRecorder.start();
         final int availabilityStatus = getAvailabilityStatus();
+        ControllerLatencyRecorder.getInstance().record(getClass(),
+                ControllerLatencyRecorder.OP_IS_AVAILABLE, startTime);
         return (availabilityStatus == AVAILABLE
                 || availabilityStatus == AVAILABLE_UNSEARCHABLE
                 || availabilityStatus == DISABLED_DEPENDENT_SETTING);
@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_APPEND;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_FOR_WORK;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_ICON;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEYWORDS;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_PREF_TYPE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SEARCHABLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SUMMARY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_UNAVAILABLE_SLICE_SUBTITLE;
+
+import android.annotation.XmlRes;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the metadata of preference xml resources.
+ *
+ * <p>Each resource is parsed once with every {@link MetadataFlag}, and the resulting table is
+ * kept in memory and in a binary file under the cache directory. The files are keyed by the
+ * package version and the parts of the configuration which select the resources, so they are
+ * dropped on app update and never served for another locale or device configuration, while
+ * rotating or resizing the window keeps them. Only the index of the last such configuration is
+ * kept on disk. Requests are answered by filtering the table down to the requested flags, which
+ * gives the same result as parsing with those flags.
+ */
+public class PreferenceMetadataIndex {
+
+    private static final String TAG = "PreferenceMetadataIndex";
+    @VisibleForTesting
+    static final String INDEX_DIR = "preference_metadata";
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int ALL_FLAGS = MetadataFlag.FLAG_INCLUDE_PREF_SCREEN
+            | MetadataFlag.FLAG_NEED_KEY
+            | MetadataFlag.FLAG_NEED_PREF_TYPE
+            | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
+            | MetadataFlag.FLAG_NEED_PREF_TITLE
+            | MetadataFlag.FLAG_NEED_PREF_SUMMARY
+            | MetadataFlag.FLAG_NEED_PREF_ICON
+            | MetadataFlag.FLAG_NEED_KEYWORDS
+            | MetadataFlag.FLAG_NEED_SEARCHABLE
+            | MetadataFlag.FLAG_NEED_PREF_APPEND
+            | MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE
+            | MetadataFlag.FLAG_FOR_WORK;
+
+    private static PreferenceMetadataIndex sInstance;
+
+    private final SparseArray<List<Bundle>> mEntries = new SparseArray<>();
+    private String mResourceKey;
+    private String mPackageStamp;
+    private File mIndexDir;
+
+    public static synchronized PreferenceMetadataIndex getInstance() {
+        if (sInstance == null) {
+            sInstance = new PreferenceMetadataIndex();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    PreferenceMetadataIndex() {
+    }
+
+    /**
+     * Returns the metadata of {@code xmlResId} as {@link PreferenceXmlParserUtils#extractMetadata}
+     * would, parsing the resource only if it is not indexed yet.
+     */
+    public List<Bundle> getMetadata(Context context, @XmlRes int xmlResId, int flags)
+            throws IOException, XmlPullParserException {
+        final Resources resources = context.getResources();
+        final Configuration configuration = resources == null ? null
+                : resources.getConfiguration();
+        if (configuration == null) {
+            return PreferenceXmlParserUtils.parseMetadata(context, xmlResId, flags);
+        }
+        return filter(getEntries(context, getResourceKey(configuration), xmlResId), flags);
+    }
+
+    /**
+     * Returns the parts of {@code configuration} which select the values of the metadata, e.g.
+     * ignoring the orientation and size of the window.
+     */
+    @VisibleForTesting
+    static String getResourceKey(Configuration configuration) {
+        return configuration.getLocales().toLanguageTags()
+                + '_' + configuration.mcc
+                + '_' + configuration.mnc
+                + '_' + configuration.densityDpi
+                + '_' + (configuration.uiMode
+                        & (Configuration.UI_MODE_NIGHT_MASK | Configuration.UI_MODE_TYPE_MASK))
+                + '_' + configuration.fontScale
+                + '_' + configuration.getLayoutDirection();
+    }
+
+    private List<Bundle> getEntries(Context context, String resourceKey, @XmlRes int xmlResId)
+            throws IOException, XmlPullParserException {
+        final File indexDir;
+        synchronized (this) {
+            if (!TextUtils.equals(resourceKey, mResourceKey)) {
+                mEntries.clear();
+                mResourceKey = resourceKey;
+                mIndexDir = getIndexDir(context, resourceKey);
+            }
+            final List<Bundle> entries = mEntries.get(xmlResId);
+            if (entries != null) {
+                return entries;
+            }
+            indexDir = mIndexDir;
+        }
+
+        // Load outside of the lock so that resources can be indexed in parallel.
+        List<Bundle> entries = null;
+        final File file = indexDir == null ? null
+                : new File(indexDir, Integer.toHexString(xmlResId));
+        if (file != null && file.exists()) {
+            try {
+                entries = readEntries(file);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read index of " + xmlResId, e);
+                file.delete();
+            }
+        }
+        if (entries == null) {
+            entries = PreferenceXmlParserUtils.parseMetadata(context, xmlResId, ALL_FLAGS);
+            if (file != null) {
+                final File tempFile = new File(indexDir,
+                        file.getName() + '.' + Thread.currentThread().getId() + ".tmp");
+                try {
+                    writeEntries(tempFile, entries);
+                    tempFile.renameTo(file);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to write index of " + xmlResId, e);
+                    tempFile.delete();
+                }
+            }
+        }
+        synchronized (this) {
+            if (TextUtils.equals(resourceKey, mResourceKey)) {
+                mEntries.put(xmlResId, entries);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return the directory holding the index for the current package version and
+     * configuration, or {@code null} if the index should only be kept in memory.
+     */
+    private File getIndexDir(Context context, String resourceKey) {
+        final File cacheDir = context.getCacheDir();
+        if (cacheDir == null) {
+            return null;
+        }
+        final File root = new File(cacheDir, INDEX_DIR);
+        if (mPackageStamp == null) {
+            try {
+                final PackageInfo info = context.getPackageManager()
+                        .getPackageInfo(context.getPackageName(), 0 /* flags */);
+                mPackageStamp = FORMAT_VERSION + "_" + info.getLongVersionCode() + "_"
+                        + info.lastUpdateTime;
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.w(TAG, "Package not found, metadata is not persisted", e);
+                return null;
+            }
+            // Drop indexes of previous package versions.
+            final File[] versions = root.listFiles();
+            if (versions != null) {
+                for (File version : versions) {
+                    if (!TextUtils.equals(version.getName(), mPackageStamp)) {
+                        deleteRecursively(version);
+                    }
+                }
+            }
+        }
+        final File versionDir = new File(root, mPackageStamp);
+        // Drop indexes of previous configurations, e.g. another locale.
+        final File[] configurations = versionDir.listFiles();
+        if (configurations != null) {
+            for (File configuration : configurations) {
+                if (!TextUtils.equals(configuration.getName(), resourceKey)) {
+                    deleteRecursively(configuration);
+                }
+            }
+        }
+        final File dir = new File(versionDir, resourceKey);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return null;
+        }
+        return dir;
+    }
+
+    private static List<Bundle> filter(List<Bundle> entries, int flags) {
+        final boolean hasPrefScreenFlag = hasFlag(flags, MetadataFlag.FLAG_INCLUDE_PREF_SCREEN);
+        final List<Bundle> metadata = new ArrayList<>(entries.size());
+        for (Bundle entry : entries) {
+            if (!hasPrefScreenFlag && TextUtils.equals(PreferenceXmlParserUtils.PREF_SCREEN_TAG,
+                    entry.getString(METADATA_PREF_TYPE))) {
+                continue;
+            }
+            final Bundle bundle = new Bundle();
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_TYPE)) {
+                bundle.putString(METADATA_PREF_TYPE, entry.getString(METADATA_PREF_TYPE));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_KEY)) {
+                bundle.putString(METADATA_KEY, entry.getString(METADATA_KEY));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_CONTROLLER)) {
+                bundle.putString(METADATA_CONTROLLER, entry.getString(METADATA_CONTROLLER));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_TITLE)) {
+                bundle.putString(METADATA_TITLE, entry.getString(METADATA_TITLE));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_SUMMARY)) {
+                bundle.putString(METADATA_SUMMARY, entry.getString(METADATA_SUMMARY));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_ICON)) {
+                bundle.putInt(METADATA_ICON, entry.getInt(METADATA_ICON));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_KEYWORDS)) {
+                bundle.putString(METADATA_KEYWORDS, entry.getString(METADATA_KEYWORDS));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_SEARCHABLE)) {
+                bundle.putBoolean(METADATA_SEARCHABLE, entry.getBoolean(METADATA_SEARCHABLE));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_APPEND) && hasPrefScreenFlag) {
+                bundle.putBoolean(METADATA_APPEND, entry.getBoolean(METADATA_APPEND));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE)) {
+                bundle.putString(METADATA_UNAVAILABLE_SLICE_SUBTITLE,
+                        entry.getString(METADATA_UNAVAILABLE_SLICE_SUBTITLE));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_FOR_WORK)) {
+                bundle.putBoolean(METADATA_FOR_WORK, entry.getBoolean(METADATA_FOR_WORK));
+            }
+            metadata.add(bundle);
+        }
+        return metadata;
+    }
+
+    private static boolean hasFlag(int flags, @MetadataFlag int flag) {
+        return (flags & flag) != 0;
+    }
+
+    @VisibleForTesting
+    static void writeEntries(File file, List<Bundle> entries) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(entries.size());
+            for (Bundle entry : entries) {
+                writeString(out, entry.getString(METADATA_PREF_TYPE));
+                writeString(out, entry.getString(METADATA_KEY));
+                writeString(out, entry.getString(METADATA_CONTROLLER));
+                writeString(out, entry.getString(METADATA_TITLE));
+                writeString(out, entry.getString(METADATA_SUMMARY));
+                out.writeInt(entry.getInt(METADATA_ICON));
+                writeString(out, entry.getString(METADATA_KEYWORDS));
+                out.writeBoolean(entry.getBoolean(METADATA_SEARCHABLE));
+                out.writeBoolean(entry.getBoolean(METADATA_APPEND));
+                writeString(out, entry.getString(METADATA_UNAVAILABLE_SLICE_SUBTITLE));
+                out.writeBoolean(entry.getBoolean(METADATA_FOR_WORK));
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static List<Bundle> readEntries(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            final int size = in.readInt();
+            final List<Bundle> entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                final Bundle entry = new Bundle();
+                entry.putString(METADATA_PREF_TYPE, readString(in));
+                entry.putString(METADATA_KEY, readString(in));
+                entry.putString(METADATA_CONTROLLER, readString(in));
+                entry.putString(METADATA_TITLE, readString(in));
+                entry.putString(METADATA_SUMMARY, readString(in));
+                entry.putInt(METADATA_ICON, in.readInt());
+                entry.putString(METADATA_KEYWORDS, readString(in));
+                entry.putBoolean(METADATA_SEARCHABLE, in.readBoolean());
+                entry.putBoolean(METADATA_APPEND, in.readBoolean());
+                entry.putString(METADATA_UNAVAILABLE_SLICE_SUBTITLE, readString(in));
+                entry.putBoolean(METADATA_FOR_WORK, in.readBoolean());
+                entries.add(entry);
+            }
+            return entries;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void deleteRecursively(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
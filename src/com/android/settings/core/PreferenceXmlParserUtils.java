@@ -168,7 +168,8 @@ public class PreferenceXmlParserUtils {
     }
 
     /**
-     * Extracts metadata from preference xml and put them into a {@link Bundle}.
+     * Extracts metadata from preference xml and put them into a {@link Bundle}. The xml is only
+     * parsed the first time, see {@link PreferenceMetadataIndex}.
      *
      * @param xmlResId xml res id of a preference screen
      * @param flags    Should be one or more of {@link MetadataFlag}.
@@ -176,11 +177,20 @@ public class PreferenceXmlParserUtils {
     @NonNull
     public static List<Bundle> extractMetadata(Context context, @XmlRes int xmlResId, int flags)
             throws IOException, XmlPullParserException {
-        final List<Bundle> metadata = new ArrayList<>();
         if (xmlResId <= 0) {
             Log.d(TAG, xmlResId + " is invalid.");
-            return metadata;
+            return new ArrayList<>();
         }
+        return PreferenceMetadataIndex.getInstance().getMetadata(context, xmlResId, flags);
+    }
+
+    /**
+     * Parses metadata from preference xml, bypassing {@link PreferenceMetadataIndex}.
+     */
+    @NonNull
+    static List<Bundle> parseMetadata(Context context, @XmlRes int xmlResId, int flags)
+            throws IOException, XmlPullParserException {
+        final List<Bundle> metadata = new ArrayList<>();
         final XmlResourceParser parser = context.getResources().getXml(xmlResId);
 
         int type;
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.instrumentation;
+
+import android.os.SystemClock;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how long preference controller and search index provider calls take, as one latency
+ * histogram per class and operation. Search index provider calls are keyed by the class hosting
+ * the provider.
+ *
+ * <p>Recording does not allocate once a class has been seen, so it is cheap enough to stay
+ * enabled on every page. The histograms are exported through
+ * {@link com.android.settings.SettingsDumpService}.
+ */
+public class ControllerLatencyRecorder {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({OP_IS_AVAILABLE, OP_UPDATE_STATE, OP_DISPLAY_PREFERENCE,
+            OP_SEARCH_XML_RESOURCES, OP_SEARCH_RAW_DATA, OP_SEARCH_DYNAMIC_RAW_DATA,
+            OP_SEARCH_NON_INDEXABLE_KEYS})
+    public @interface Operation {
+    }
+
+    public static final int OP_IS_AVAILABLE = 0;
+    public static final int OP_UPDATE_STATE = 1;
+    public static final int OP_DISPLAY_PREFERENCE = 2;
+    public static final int OP_SEARCH_XML_RESOURCES = 3;
+    public static final int OP_SEARCH_RAW_DATA = 4;
+    public static final int OP_SEARCH_DYNAMIC_RAW_DATA = 5;
+    public static final int OP_SEARCH_NON_INDEXABLE_KEYS = 6;
+
+    private static final String[] OPERATION_NAMES = {"isAvailable", "updateState",
+            "displayPreference", "getXmlResourcesToIndex", "getRawDataToIndex",
+            "getDynamicRawDataToIndex", "getNonIndexableKeys"};
+
+    /**
+     * Bucket {@code i} holds samples in [2^(i-1), 2^i) microseconds, the last bucket holds
+     * everything above.
+     */
+    @VisibleForTesting
+    static final int BUCKET_COUNT = 24;
+
+    private static final ControllerLatencyRecorder sInstance = new ControllerLatencyRecorder();
+
+    private final Map<Class<?>, Histogram[]> mHistograms = new ConcurrentHashMap<>();
+
+    public static ControllerLatencyRecorder getInstance() {
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    ControllerLatencyRecorder() {
+    }
+
+    /**
+     * @return the start time to pass to {@link #record(Class, int, long)}.
+     */
+    public static long start() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Records one call of {@code operation} on {@code clazz} which started at
+     * {@code startNanos}, as returned by {@link #start()}.
+     */
+    public void record(Class<?> clazz, @Operation int operation, long startNanos) {
+        recordElapsed(clazz, operation,
+                SystemClock.elapsedRealtimeNanos() - startNanos);
+    }
+
+    @VisibleForTesting
+    void recordElapsed(Class<?> clazz, @Operation int operation, long elapsedNanos) {
+        Histogram[] histograms = mHistograms.get(clazz);
+        if (histograms == null) {
+            histograms = mHistograms.computeIfAbsent(clazz, key -> {
+                final Histogram[] newHistograms = new Histogram[OPERATION_NAMES.length];
+                for (int i = 0; i < newHistograms.length; i++) {
+                    newHistograms[i] = new Histogram();
+                }
+                return newHistograms;
+            });
+        }
+        histograms[operation].add(elapsedNanos / 1000);
+    }
+
+    /**
+     * Dumps all histograms, keyed by class name and then by operation.
+     */
+    public JSONObject toJson() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        for (Map.Entry<Class<?>, Histogram[]> entry : mHistograms.entrySet()) {
+            final JSONObject classObj = new JSONObject();
+            final Histogram[] histograms = entry.getValue();
+            for (int i = 0; i < histograms.length; i++) {
+                if (histograms[i].mCount.get() > 0) {
+                    classObj.put(OPERATION_NAMES[i], histograms[i].toJson());
+                }
+            }
+            obj.put(entry.getKey().getName(), classObj);
+        }
+        return obj;
+    }
+
+    @VisibleForTesting
+    void reset() {
+        mHistograms.clear();
+    }
+
+    private static class Histogram {
+        final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        final AtomicLong mCount = new AtomicLong();
+        final AtomicLong mTotalUs = new AtomicLong();
+        final AtomicLong mMaxUs = new AtomicLong();
+
+        void add(long elapsedUs) {
+            final int bucket = Math.min(BUCKET_COUNT - 1,
+                    64 - Long.numberOfLeadingZeros(Math.max(0, elapsedUs)));
+            mBuckets.incrementAndGet(bucket);
+            mCount.incrementAndGet();
+            mTotalUs.addAndGet(elapsedUs);
+            long max = mMaxUs.get();
+            while (elapsedUs > max && !mMaxUs.compareAndSet(max, elapsedUs)) {
+                max = mMaxUs.get();
+            }
+        }
+
+        /**
+         * @return the upper bound in microseconds of the bucket holding the given percentile.
+         */
+        long percentileUs(long count, int percentile) {
+            final long target = (count * percentile + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= target) {
+                    return i == BUCKET_COUNT - 1 ? mMaxUs.get() : 1L << i;
+                }
+            }
+            return mMaxUs.get();
+        }
+
+        JSONObject toJson() throws JSONException {
+            final long count = mCount.get();
+            final JSONObject obj = new JSONObject();
+            obj.put("count", count);
+            obj.put("total_us", mTotalUs.get());
+            obj.put("max_us", mMaxUs.get());
+            obj.put("p50_us", percentileUs(count, 50));
+            obj.put("p90_us", percentileUs(count, 90));
+            obj.put("p99_us", percentileUs(count, 99));
+            final JSONArray buckets = new JSONArray();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.put(mBuckets.get(i));
+            }
+            obj.put("buckets", buckets);
+            return obj;
+        }
+    }
+}
@@ -32,12 +32,19 @@ import com.android.settingslib.drawer.Tile;
 import com.android.settingslib.drawer.TileUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+/**
+ * Holds the categories of tiles injected into Settings.
+ *
+ * <p>The categories are published as an immutable {@link Categories}, which is replaced as a
+ * whole whenever they change, so reads never block. Writers are serialized on this object.
+ */
 public class CategoryManager {
 
     private static final String TAG = "CategoryManager";
@@ -49,10 +56,10 @@ public class CategoryManager {
     // Tile cache (key: <packageName, activityName>, value: tile)
     private final Map<Pair<String, String>, Tile> mTileByComponentCache;
 
-    // Tile cache (key: category key, value: category)
-    private final Map<String, DashboardCategory> mCategoryByKeyMap;
+    private volatile Categories mCategories;
 
-    private List<DashboardCategory> mCategories;
+    // Package manager state mCategories were scanned in, null until the first load.
+    private TileSnapshot mSnapshot;
 
     public static CategoryManager get(Context context) {
         if (sInstance == null) {
@@ -63,27 +70,27 @@ public class CategoryManager {
 
     CategoryManager(Context context) {
         mTileByComponentCache = new ArrayMap<>();
-        mCategoryByKeyMap = new ArrayMap<>();
         mInterestingConfigChanges = new InterestingConfigChanges();
         mInterestingConfigChanges.applyNewConfig(context.getResources());
     }
 
-    public synchronized DashboardCategory getTilesByCategory(Context context, String categoryKey) {
-        tryInitCategories(context);
-
-        return mCategoryByKeyMap.get(categoryKey);
+    public DashboardCategory getTilesByCategory(Context context, String categoryKey) {
+        return tryInitCategories(context).mCategoryByKeyMap.get(categoryKey);
     }
 
-    public synchronized List<DashboardCategory> getCategories(Context context) {
-        tryInitCategories(context);
-        return mCategories;
+    public List<DashboardCategory> getCategories(Context context) {
+        return tryInitCategories(context).mCategories;
     }
 
     public synchronized void reloadAllCategories(Context context) {
         final boolean forceClearCache = mInterestingConfigChanges.applyNewConfig(
                 context.getResources());
-        mCategories = null;
-        tryInitCategories(context, forceClearCache);
+        if (!forceClearCache && mCategories != null && mSnapshot != null
+                && mSnapshot.isUpToDate(context)) {
+            // No package which provides tiles changed since the last scan.
+            return;
+        }
+        loadCategories(context, forceClearCache);
     }
 
     /**
@@ -91,35 +98,62 @@ public class CategoryManager {
      * @param tileDenylist
      */
     public synchronized void updateCategoryFromDenylist(Set<ComponentName> tileDenylist) {
-        if (mCategories == null) {
+        final Categories current = mCategories;
+        if (current == null) {
             Log.w(TAG, "Category is null, skipping denylist update");
             return;
         }
-        for (int i = 0; i < mCategories.size(); i++) {
-            DashboardCategory category = mCategories.get(i);
-            for (int j = 0; j < category.getTilesCount(); j++) {
-                Tile tile = category.getTile(j);
-                if (tileDenylist.contains(tile.getIntent().getComponent())) {
-                    category.removeTile(j--);
+        boolean changed = false;
+        for (ComponentName component : tileDenylist) {
+            if (current.mTileByComponentMap.containsKey(component)) {
+                changed = true;
+                break;
+            }
+        }
+        if (!changed) {
+            return;
+        }
+
+        final List<DashboardCategory> categories = new ArrayList<>(current.mCategories.size());
+        final Map<String, DashboardCategory> categoryByKeyMap =
+                new ArrayMap<>(current.mCategoryByKeyMap);
+        for (DashboardCategory category : current.mCategories) {
+            final DashboardCategory filtered = new DashboardCategory(category.key);
+            for (int i = 0; i < category.getTilesCount(); i++) {
+                final Tile tile = category.getTile(i);
+                if (!tileDenylist.contains(tile.getIntent().getComponent())) {
+                    filtered.addTile(tile);
                 }
             }
+            categories.add(filtered);
+            if (categoryByKeyMap.get(category.key) == category) {
+                categoryByKeyMap.put(category.key, filtered);
+            }
         }
+        mCategories = new Categories(categories, categoryByKeyMap);
+    }
+
+    /**
+     * Publishes {@code categories} as if they were scanned, without a snapshot.
+     */
+    @VisibleForTesting
+    synchronized void setCategories(List<DashboardCategory> categories) {
+        final Map<String, DashboardCategory> categoryByKeyMap = new ArrayMap<>();
+        for (DashboardCategory category : categories) {
+            categoryByKeyMap.put(category.key, category);
+        }
+        mSnapshot = null;
+        mCategories = new Categories(categories, categoryByKeyMap);
     }
 
     /** Return the current tile map */
-    public synchronized Map<ComponentName, Tile> getTileByComponentMap() {
-        final Map<ComponentName, Tile> result = new ArrayMap<>();
-        if (mCategories == null) {
+    public Map<ComponentName, Tile> getTileByComponentMap() {
+        final Categories current = mCategories;
+        if (current == null) {
             Log.w(TAG, "Category is null, no tiles");
-            return result;
+            return Collections.emptyMap();
         }
-        mCategories.forEach(category -> {
-            for (int i = 0; i < category.getTilesCount(); i++) {
-                final Tile tile = category.getTile(i);
-                result.put(tile.getIntent().getComponent(), tile);
-            }
-        });
-        return result;
+        return current.mTileByComponentMap;
     }
 
     private void logTiles(Context context) {
@@ -131,30 +165,85 @@ public class CategoryManager {
         }
     }
 
-    private synchronized void tryInitCategories(Context context) {
-        // Keep cached tiles by default. The cache is only invalidated when InterestingConfigChange
-        // happens.
-        tryInitCategories(context, false /* forceClearCache */);
+    private Categories tryInitCategories(Context context) {
+        final Categories current = mCategories;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (mCategories == null) {
+                // Keep cached tiles by default. The cache is only invalidated when
+                // InterestingConfigChange happens.
+                loadCategories(context, false /* forceClearCache */);
+            }
+            return mCategories;
+        }
     }
 
-    private synchronized void tryInitCategories(Context context, boolean forceClearCache) {
-        if (mCategories == null) {
-            final boolean firstLoading = mCategoryByKeyMap.isEmpty();
-            if (forceClearCache) {
-                mTileByComponentCache.clear();
-            }
-            mCategoryByKeyMap.clear();
-            mCategories = TileUtils.getCategories(context, mTileByComponentCache);
-            for (DashboardCategory category : mCategories) {
-                mCategoryByKeyMap.put(category.key, category);
-            }
-            backwardCompatCleanupForCategory(mTileByComponentCache, mCategoryByKeyMap);
-            sortCategories(context, mCategoryByKeyMap);
-            filterDuplicateTiles(mCategoryByKeyMap);
-            if (firstLoading) {
-                logTiles(context);
+    private synchronized void loadCategories(Context context, boolean forceClearCache) {
+        final boolean firstLoading = mSnapshot == null;
+        if (forceClearCache) {
+            mTileByComponentCache.clear();
+        }
+        if (firstLoading && !forceClearCache && tryLoadSnapshot(context)) {
+            logTiles(context);
+            return;
+        }
+        // Capture the package state first, so that changes made during the scan are seen by the
+        // next reload.
+        final TileSnapshot snapshot = TileSnapshot.capture(context, mSnapshot);
+        final List<DashboardCategory> categories =
+                TileUtils.getCategories(context, mTileByComponentCache);
+        final Map<String, DashboardCategory> categoryByKeyMap = new ArrayMap<>();
+        for (DashboardCategory category : categories) {
+            categoryByKeyMap.put(category.key, category);
+        }
+        backwardCompatCleanupForCategory(mTileByComponentCache, categoryByKeyMap);
+        sortCategories(context, categoryByKeyMap);
+        filterDuplicateTiles(categoryByKeyMap);
+        snapshot.setCategories(categories, getCompatCategories(categories, categoryByKeyMap));
+        snapshot.writeAsync(context);
+        mSnapshot = snapshot;
+        mCategories = new Categories(categories, categoryByKeyMap);
+        if (firstLoading) {
+            logTiles(context);
+        }
+    }
+
+    /**
+     * Restores the categories processed by a previous process, if no package which provides
+     * tiles changed since.
+     */
+    private boolean tryLoadSnapshot(Context context) {
+        final TileSnapshot snapshot = TileSnapshot.read(context);
+        if (snapshot == null || !snapshot.isUpToDate(context)) {
+            return false;
+        }
+        final Map<String, DashboardCategory> categoryByKeyMap = new ArrayMap<>();
+        for (DashboardCategory category : snapshot.getCategories()) {
+            categoryByKeyMap.put(category.key, category);
+        }
+        for (DashboardCategory category : snapshot.getCompatCategories()) {
+            categoryByKeyMap.put(category.key, category);
+        }
+        mSnapshot = snapshot;
+        mCategories = new Categories(snapshot.getCategories(), categoryByKeyMap);
+        return true;
+    }
+
+    /**
+     * @return the categories only created by {@link #backwardCompatCleanupForCategory}, which
+     * are not part of {@code categories}.
+     */
+    private static List<DashboardCategory> getCompatCategories(List<DashboardCategory> categories,
+            Map<String, DashboardCategory> categoryByKeyMap) {
+        final List<DashboardCategory> compatCategories = new ArrayList<>();
+        for (DashboardCategory category : categoryByKeyMap.values()) {
+            if (!categories.contains(category)) {
+                compatCategories.add(category);
             }
         }
+        return compatCategories;
     }
 
     @VisibleForTesting
@@ -254,4 +343,28 @@ public class CategoryManager {
             }
         }
     }
+
+    /**
+     * Immutable set of categories, along with the lookups built from them.
+     */
+    private static class Categories {
+        final List<DashboardCategory> mCategories;
+        // key: category key, value: category
+        final Map<String, DashboardCategory> mCategoryByKeyMap;
+        final Map<ComponentName, Tile> mTileByComponentMap;
+
+        Categories(List<DashboardCategory> categories,
+                Map<String, DashboardCategory> categoryByKeyMap) {
+            mCategories = Collections.unmodifiableList(categories);
+            mCategoryByKeyMap = Collections.unmodifiableMap(categoryByKeyMap);
+            final Map<ComponentName, Tile> tileByComponentMap = new ArrayMap<>();
+            for (DashboardCategory category : categories) {
+                for (int i = 0; i < category.getTilesCount(); i++) {
+                    final Tile tile = category.getTile(i);
+                    tileByComponentMap.put(tile.getIntent().getComponent(), tile);
+                }
+            }
+            mTileByComponentMap = Collections.unmodifiableMap(tileByComponentMap);
+        }
+    }
 }
@@ -24,6 +24,7 @@ import android.util.Log;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceScreen;
 
+import com.android.settings.core.instrumentation.ControllerLatencyRecorder;
 import com.android.settingslib.core.AbstractPreferenceController;
 import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
 import com.android.settingslib.utils.ThreadUtils;
@@ -51,37 +52,59 @@ public class ControllerTask implements Runnable {
 
     @Override
     public void run() {
-        if (!mController.isAvailable()) {
+        final Preference preference = prepare();
+        if (preference == null) {
             return;
         }
+        ThreadUtils.postOnMainThread(() -> commit(preference));
+    }
+
+    /**
+     * Runs the background half of the task: checks the availability of the controller and
+     * resolves its {@link Preference}.
+     *
+     * @return the preference to update, or {@code null} if there is nothing to update.
+     */
+    Preference prepare() {
+        if (!mController.isAvailable()) {
+            return null;
+        }
 
         final String key = mController.getPreferenceKey();
         if (TextUtils.isEmpty(key)) {
             Log.d(TAG, String.format("Preference key is %s in Controller %s",
                     key, mController.getClass().getSimpleName()));
-            return;
+            return null;
         }
 
         final Preference preference = mScreen.findPreference(key);
         if (preference == null) {
             Log.d(TAG, String.format("Cannot find preference with key %s in Controller %s",
                     key, mController.getClass().getSimpleName()));
-            return;
+            return null;
         }
-        ThreadUtils.postOnMainThread(() -> {
-            final long t = SystemClock.elapsedRealtime();
-            mController.updateState(preference);
-            final int elapsedTime = (int) (SystemClock.elapsedRealtime() - t);
-            if (elapsedTime > CONTROLLER_UPDATESTATE_TIME_THRESHOLD) {
-                Log.w(TAG, "The updateState took " + elapsedTime + " ms in Controller "
-                        + mController.getClass().getSimpleName());
-                if (mMetricsFeature != null) {
-                    mMetricsFeature.action(SettingsEnums.PAGE_UNKNOWN,
-                            SettingsEnums.ACTION_CONTROLLER_UPDATE_STATE, mMetricsCategory,
-                            mController.getClass().getSimpleName(), elapsedTime);
-                }
+        return preference;
+    }
+
+    /**
+     * Runs the main thread half of the task: updates the state of the given preference.
+     */
+    void commit(Preference preference) {
+        final long t = SystemClock.elapsedRealtime();
+        final long startTime = ControllerLatencyRecorder.start();
+        mController.updateState(preference);
+        ControllerLatencyRecorder.getInstance().record(mController.getClass(),
+                ControllerLatencyRecorder.OP_UPDATE_STATE, startTime);
+        final int elapsedTime = (int) (SystemClock.elapsedRealtime() - t);
+        if (elapsedTime > CONTROLLER_UPDATESTATE_TIME_THRESHOLD) {
+            Log.w(TAG, "The updateState took " + elapsedTime + " ms in Controller "
+                    + mController.getClass().getSimpleName());
+            if (mMetricsFeature != null) {
+                mMetricsFeature.action(SettingsEnums.PAGE_UNKNOWN,
+                        SettingsEnums.ACTION_CONTROLLER_UPDATE_STATE, mMetricsCategory,
+                        mController.getClass().getSimpleName(), elapsedTime);
             }
-        });
+        }
     }
 
     AbstractPreferenceController getController() {
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.dashboard;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.preference.Preference;
+
+import com.android.settingslib.core.AbstractPreferenceController;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the background half of {@link ControllerTask}s on a bounded pool shared by all pages,
+ * then commits their results to the screen in one ordered batch on the main thread.
+ *
+ * <p>Each task gets {@link #CONTROLLER_TIMEOUT_MS} to finish. A task that misses its budget
+ * falls back to the last result known for its controller, and is committed on its own once it
+ * eventually finishes, unless {@link #cancelLateCommits()} was called in the meantime.
+ */
+public class ControllerTaskRunner {
+    private static final String TAG = "ControllerTaskRunner";
+
+    @VisibleForTesting
+    static final long CONTROLLER_TIMEOUT_MS = 100;
+    private static final int MAX_POOL_SIZE = 4;
+    private static final long KEEP_ALIVE_SECONDS = 3;
+
+    private static ExecutorService sExecutor;
+
+    /** Last preference resolved per controller, {@code null} if the controller was hidden. */
+    private final Map<AbstractPreferenceController, Preference> mLastKnownResults =
+            new ArrayMap<>();
+    /** Tasks which missed their budget and still have to commit their own result. */
+    private final Set<RefreshTask> mLateTasks =
+            Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final ExecutorService mExecutor;
+    private final long mTimeoutMs;
+
+    public ControllerTaskRunner() {
+        this(getSharedExecutor(), CONTROLLER_TIMEOUT_MS);
+    }
+
+    @VisibleForTesting
+    ControllerTaskRunner(ExecutorService executor, long timeoutMs) {
+        mExecutor = executor;
+        mTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * Runs the given tasks and commits them in order. Must be called on the main thread, which
+     * is blocked for at most the latency budget of the tasks.
+     */
+    public void run(List<ControllerTask> tasks) {
+        final List<RefreshTask> refreshTasks = new ArrayList<>(tasks.size());
+        for (ControllerTask task : tasks) {
+            final RefreshTask refreshTask = new RefreshTask(task);
+            refreshTasks.add(refreshTask);
+            mExecutor.execute(refreshTask);
+        }
+
+        final long deadline = SystemClock.elapsedRealtime() + mTimeoutMs;
+        for (RefreshTask refreshTask : refreshTasks) {
+            final AbstractPreferenceController controller = refreshTask.mTask.getController();
+            final long remaining = Math.max(0, deadline - SystemClock.elapsedRealtime());
+            try {
+                try {
+                    commit(refreshTask.mTask, refreshTask.get(remaining, TimeUnit.MILLISECONDS));
+                } catch (TimeoutException e) {
+                    if (refreshTask.markLate()) {
+                        mLateTasks.add(refreshTask);
+                        Log.w(TAG, "Controller " + controller.getClass().getSimpleName()
+                                + " exceeded " + mTimeoutMs + " ms, using last known state");
+                        final Preference lastKnown = mLastKnownResults.get(controller);
+                        if (lastKnown != null) {
+                            refreshTask.mTask.commit(lastKnown);
+                        }
+                    } else {
+                        // Finished right after the timeout, the result is ready now.
+                        commit(refreshTask.mTask, refreshTask.get());
+                    }
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                Log.w(TAG, controller.getPreferenceKey() + " " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Drops the results of the tasks which missed their budget and have not committed yet, e.g.
+     * because the page is not shown anymore.
+     */
+    public void cancelLateCommits() {
+        for (RefreshTask refreshTask : mLateTasks) {
+            refreshTask.cancel(false /* mayInterruptIfRunning */);
+        }
+        mLateTasks.clear();
+    }
+
+    private void commit(ControllerTask task, Preference preference) {
+        mLastKnownResults.put(task.getController(), preference);
+        if (preference != null) {
+            task.commit(preference);
+        }
+    }
+
+    /**
+     * Background half of a {@link ControllerTask}. A task which missed its budget commits its
+     * own result on the main thread once it finishes.
+     */
+    private class RefreshTask extends FutureTask<Preference> {
+        private static final int STATE_PENDING = 0;
+        private static final int STATE_DONE = 1;
+        private static final int STATE_LATE = 2;
+
+        private final ControllerTask mTask;
+        private final AtomicInteger mState = new AtomicInteger(STATE_PENDING);
+
+        RefreshTask(ControllerTask task) {
+            super(task::prepare);
+            mTask = task;
+        }
+
+        /**
+         * @return {@code false} if the task finished in the meantime and can be committed
+         * directly.
+         */
+        boolean markLate() {
+            return mState.compareAndSet(STATE_PENDING, STATE_LATE);
+        }
+
+        @Override
+        protected void done() {
+            if (mState.compareAndSet(STATE_PENDING, STATE_DONE) || isCancelled()) {
+                return;
+            }
+            final Preference preference;
+            try {
+                preference = get();
+            } catch (InterruptedException | ExecutionException e) {
+                Log.w(TAG, mTask.getController().getPreferenceKey() + " " + e.getMessage());
+                return;
+            }
+            ThreadUtils.postOnMainThread(() -> {
+                if (mLateTasks.remove(this)) {
+                    commit(mTask, preference);
+                }
+            });
+        }
+    }
+
+    private static synchronized ExecutorService getSharedExecutor() {
+        if (sExecutor == null) {
+            final int poolSize = Math.max(2,
+                    Math.min(MAX_POOL_SIZE, Runtime.getRuntime().availableProcessors() - 1));
+            final AtomicInteger count = new AtomicInteger();
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }, TAG + "-" + count.incrementAndGet()));
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+}
@@ -38,6 +38,7 @@ import com.android.settings.core.BasePreferenceController;
 import com.android.settings.core.CategoryMixin.CategoryHandler;
 import com.android.settings.core.CategoryMixin.CategoryListener;
 import com.android.settings.core.PreferenceControllerListHelper;
+import com.android.settings.core.instrumentation.ControllerLatencyRecorder;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.widget.PrimarySwitchPreference;
 import com.android.settingslib.core.AbstractPreferenceController;
@@ -47,7 +48,6 @@ import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.ProviderTile;
 import com.android.settingslib.drawer.Tile;
 import com.android.settingslib.search.Indexable;
-import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -56,7 +56,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
 
 /**
  * Base fragment for dashboard style UI containing a list of static and dynamic setting items.
@@ -75,6 +74,8 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     private final List<AbstractPreferenceController> mControllers = new ArrayList<>();
     @VisibleForTesting
     UiBlockerController mBlockerController;
+    @VisibleForTesting
+    ControllerTaskRunner mControllerTaskRunner;
     private DashboardFeatureProvider mDashboardFeatureProvider;
     private DashboardTilePlaceholderPreferenceController mPlaceholderPreferenceController;
     private boolean mListeningToCategoryChange;
@@ -216,7 +217,11 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     @Override
     public void onResume() {
         super.onResume();
-        updatePreferenceStates();
+        if (isParalleledControllers()) {
+            updatePreferenceStatesInParallel();
+        } else {
+            updatePreferenceStates();
+        }
         writeElapsedTimeMetric(SettingsEnums.ACTION_DASHBOARD_VISIBLE_TIME,
                 "isParalleledControllers:" + isParalleledControllers());
     }
@@ -241,6 +246,9 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     public void onStop() {
         super.onStop();
         unregisterDynamicDataObservers(new ArrayList<>(mRegisteredObservers));
+        if (mControllerTaskRunner != null) {
+            mControllerTaskRunner.cancelLateCommits();
+        }
         if (mListeningToCategoryChange) {
             final Activity activity = getActivity();
             if (activity instanceof CategoryHandler) {
@@ -335,8 +343,14 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
      * on all {@link AbstractPreferenceController}s.
      */
     protected void displayResourceTilesToScreen(PreferenceScreen screen) {
+        final ControllerLatencyRecorder recorder = ControllerLatencyRecorder.getInstance();
         mPreferenceControllers.values().stream().flatMap(Collection::stream).forEach(
-                controller -> controller.displayPreference(screen));
+                controller -> {
+                    final long startTime = ControllerLatencyRecorder.start();
+                    controller.displayPreference(screen);
+                    recorder.record(controller.getClass(),
+                            ControllerLatencyRecorder.OP_DISPLAY_PREFERENCE, startTime);
+                });
     }
 
     /**
@@ -359,6 +373,7 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
      */
     protected void updatePreferenceStates() {
         final PreferenceScreen screen = getPreferenceScreen();
+        final ControllerLatencyRecorder recorder = ControllerLatencyRecorder.getInstance();
         Collection<List<AbstractPreferenceController>> controllerLists =
                 mPreferenceControllers.values();
         for (List<AbstractPreferenceController> controllerList : controllerLists) {
@@ -380,39 +395,34 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
                             key, controller.getClass().getSimpleName()));
                     continue;
                 }
+                final long startTime = ControllerLatencyRecorder.start();
                 controller.updateState(preference);
+                recorder.record(controller.getClass(), ControllerLatencyRecorder.OP_UPDATE_STATE,
+                        startTime);
             }
         }
     }
 
     /**
      * Use parallel method to update state of each preference managed by PreferenceController.
+     * Availability is computed on a shared background pool, and all states are then updated in
+     * one ordered batch on the main thread to avoid UI flicker.
      */
-    @VisibleForTesting
-    // To use this parallel approach will cause the side effect of the UI flicker. Such as
-    // the thumb sliding of the toggle button.
-    void updatePreferenceStatesInParallel() {
+    protected void updatePreferenceStatesInParallel() {
         final PreferenceScreen screen = getPreferenceScreen();
         final Collection<List<AbstractPreferenceController>> controllerLists =
                 mPreferenceControllers.values();
-        final List<ControllerFutureTask> taskList = new ArrayList<>();
+        final List<ControllerTask> taskList = new ArrayList<>();
         for (List<AbstractPreferenceController> controllerList : controllerLists) {
             for (AbstractPreferenceController controller : controllerList) {
-                final ControllerFutureTask task = new ControllerFutureTask(
-                        new ControllerTask(controller, screen, mMetricsFeatureProvider,
-                                getMetricsCategory()), null /* result */);
-                taskList.add(task);
-                ThreadUtils.postOnBackgroundThread(task);
+                taskList.add(new ControllerTask(controller, screen, mMetricsFeatureProvider,
+                        getMetricsCategory()));
             }
         }
-
-        for (ControllerFutureTask task : taskList) {
-            try {
-                task.get();
-            } catch (InterruptedException | ExecutionException e) {
-                Log.w(TAG, task.getController().getPreferenceKey() + " " + e.getMessage());
-            }
+        if (mControllerTaskRunner == null) {
+            mControllerTaskRunner = new ControllerTaskRunner();
         }
+        mControllerTaskRunner.run(taskList);
     }
 
     /**
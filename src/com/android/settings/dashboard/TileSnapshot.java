@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.provider.Settings;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settingslib.drawer.DashboardCategory;
+import com.android.settingslib.drawer.Tile;
+import com.android.settingslib.drawer.TileUtils;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Processed categories of {@link CategoryManager}, along with the package manager state they were
+ * scanned in.
+ *
+ * <p>The snapshot is persisted so that a cold start can skip the tile scan. It is valid as long
+ * as the device did not reboot, the profiles of the user and their quiet mode are the same, the
+ * device was not provisioned since, and no package that injects, or may now inject, tiles changed
+ * since the scan. Package changes are
+ * tracked with {@link PackageManager#getChangedPackages}.
+ *
+ * <p>The categories are persisted as a {@link Parcel}, whose layout is only stable within a
+ * build, so the file is only read back by the build fingerprint and package version which wrote
+ * it.
+ */
+class TileSnapshot {
+
+    private static final String TAG = "TileSnapshot";
+    @VisibleForTesting
+    static final String FILE_NAME = "tile_snapshot";
+    private static final int FORMAT_VERSION = 3;
+
+    // Every action scanned by TileUtils#getCategories, the last three are private to it.
+    private static final String[] INJECTION_ACTIONS = {
+            TileUtils.EXTRA_SETTINGS_ACTION,
+            TileUtils.IA_SETTINGS_ACTION,
+            "com.android.settings.action.SETTINGS",
+            "com.android.settings.OPERATOR_APPLICATION_SETTING",
+            "com.android.settings.MANUFACTURER_APPLICATION_SETTING"};
+
+    private final int mBootCount;
+    private final String mProfiles;
+    private final boolean mProvisioned;
+    private int mSequenceNumber;
+    private List<DashboardCategory> mCategories;
+    private List<DashboardCategory> mCompatCategories;
+
+    private TileSnapshot(int bootCount, String profiles, boolean provisioned,
+            int sequenceNumber) {
+        mBootCount = bootCount;
+        mProfiles = profiles;
+        mProvisioned = provisioned;
+        mSequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * Captures the current package manager state. Call this before scanning, then attach the
+     * result of the scan with {@link #setCategories(List, List)}.
+     *
+     * @param previous the snapshot of the previous scan, if any, so that only the packages
+     *                 changed since then are queried to find the current sequence number
+     */
+    static TileSnapshot capture(Context context, TileSnapshot previous) {
+        final int since = previous == null || previous.mBootCount != getBootCount(context)
+                ? 0 : previous.mSequenceNumber;
+        final ChangedPackages changedPackages =
+                context.getPackageManager().getChangedPackages(since);
+        return new TileSnapshot(getBootCount(context), getProfiles(context),
+                isProvisioned(context), changedPackages == null ? since : changedPackages.getSequenceNumber());
+    }
+
+    List<DashboardCategory> getCategories() {
+        return mCategories;
+    }
+
+    List<DashboardCategory> getCompatCategories() {
+        return mCompatCategories;
+    }
+
+    /**
+     * @param categories the categories returned by {@link CategoryManager#getCategories}
+     * @param compatCategories the categories only reachable by key, created for tiles which use
+     *                         old category keys
+     */
+    void setCategories(List<DashboardCategory> categories,
+            List<DashboardCategory> compatCategories) {
+        mCategories = categories;
+        mCompatCategories = compatCategories;
+    }
+
+    /**
+     * @return {@code true} if none of the packages changed since the scan can affect the tiles.
+     */
+    boolean isUpToDate(Context context) {
+        if (mCategories == null || mBootCount != getBootCount(context)) {
+            return false;
+        }
+        if (!TextUtils.equals(mProfiles, getProfiles(context))) {
+            // Tiles are also scanned in the profiles, which were added, removed or paused.
+            Log.d(TAG, "Profiles changed");
+            return false;
+        }
+        if (mProvisioned != isProvisioned(context)) {
+            // Extra and IA tiles are only scanned once the device is provisioned.
+            Log.d(TAG, "Provisioning changed");
+            return false;
+        }
+        final PackageManager pm = context.getPackageManager();
+        final ChangedPackages changedPackages = pm.getChangedPackages(mSequenceNumber);
+        if (changedPackages == null) {
+            return true;
+        }
+        for (String packageName : changedPackages.getPackageNames()) {
+            if (hasTiles(packageName) || mayInjectTiles(pm, packageName)) {
+                Log.d(TAG, "Tiles may have changed in " + packageName);
+                return false;
+            }
+        }
+        // Only unrelated packages changed, skip them next time.
+        mSequenceNumber = changedPackages.getSequenceNumber();
+        return true;
+    }
+
+    private boolean hasTiles(String packageName) {
+        return hasTiles(mCategories, packageName) || hasTiles(mCompatCategories, packageName);
+    }
+
+    private static boolean hasTiles(List<DashboardCategory> categories, String packageName) {
+        for (DashboardCategory category : categories) {
+            for (Tile tile : category.getTiles()) {
+                if (TextUtils.equals(packageName, tile.getPackageName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean mayInjectTiles(PackageManager pm, String packageName) {
+        for (String action : INJECTION_ACTIONS) {
+            final Intent intent = new Intent(action).setPackage(packageName);
+            if (!pm.queryIntentActivities(intent, 0 /* flags */).isEmpty()
+                    || !pm.queryIntentContentProviders(intent, 0 /* flags */).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the snapshot on a background thread. The categories are serialized right away, so
+     * they can be modified once this returns.
+     */
+    void writeAsync(Context context) {
+        ThreadUtils.postOnBackgroundThread(prepareWrite(context));
+    }
+
+    @VisibleForTesting
+    void write(Context context) {
+        prepareWrite(context).run();
+    }
+
+    private Runnable prepareWrite(Context context) {
+        final Parcel parcel = Parcel.obtain();
+        final byte[] categories;
+        try {
+            parcel.writeTypedList(mCategories);
+            parcel.writeTypedList(mCompatCategories);
+            categories = parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+        final File file = getFile(context);
+        final long packageVersion = getPackageVersion(context);
+        final String configuration = getConfiguration(context);
+        final int bootCount = mBootCount;
+        final String profiles = mProfiles;
+        final boolean provisioned = mProvisioned;
+        final int sequenceNumber = mSequenceNumber;
+        return () -> {
+            final File tempFile = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(Build.FINGERPRINT);
+                out.writeLong(packageVersion);
+                out.writeUTF(configuration);
+                out.writeInt(bootCount);
+                out.writeUTF(profiles);
+                out.writeBoolean(provisioned);
+                out.writeInt(sequenceNumber);
+                out.writeInt(categories.length);
+                out.write(categories);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write snapshot", e);
+                tempFile.delete();
+                return;
+            }
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+        };
+    }
+
+    /**
+     * @return the persisted snapshot, or {@code null} if there is none or it was written by
+     * another build, package version, locale, density or boot.
+     */
+    static TileSnapshot read(Context context) {
+        final File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        final int bootCount;
+        final String profiles;
+        final boolean provisioned;
+        final int sequenceNumber;
+        final byte[] categories;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != FORMAT_VERSION
+                    || !TextUtils.equals(in.readUTF(), Build.FINGERPRINT)
+                    || in.readLong() != getPackageVersion(context)
+                    || !TextUtils.equals(in.readUTF(), getConfiguration(context))) {
+                return null;
+            }
+            bootCount = in.readInt();
+            profiles = in.readUTF();
+            provisioned = in.readBoolean();
+            sequenceNumber = in.readInt();
+            categories = new byte[in.readInt()];
+            in.readFully(categories);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read snapshot", e);
+            return null;
+        }
+        if (bootCount != getBootCount(context)) {
+            return null;
+        }
+
+        final TileSnapshot snapshot = new TileSnapshot(bootCount, profiles, provisioned,
+                sequenceNumber);
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(categories, 0, categories.length);
+            parcel.setDataPosition(0);
+            snapshot.mCategories = parcel.createTypedArrayList(DashboardCategory.CREATOR);
+            snapshot.mCompatCategories = parcel.createTypedArrayList(DashboardCategory.CREATOR);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to parse snapshot", e);
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+        return snapshot;
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getCacheDir(), FILE_NAME);
+    }
+
+    private static int getBootCount(Context context) {
+        return Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT,
+                -1 /* def */);
+    }
+
+    private static boolean isProvisioned(Context context) {
+        return Settings.Global.getInt(context.getContentResolver(),
+                Settings.Global.DEVICE_PROVISIONED, 0 /* def */) != 0;
+    }
+
+    /**
+     * @return the profiles of the user, along with whether each of them is in quiet mode.
+     */
+    private static String getProfiles(Context context) {
+        final UserManager userManager = context.getSystemService(UserManager.class);
+        final StringBuilder profiles = new StringBuilder();
+        for (UserHandle user : userManager.getUserProfiles()) {
+            profiles.append(user.getIdentifier())
+                    .append(userManager.isQuietModeEnabled(user) ? "q," : ",");
+        }
+        return profiles.toString();
+    }
+
+    /**
+     * @return the parts of the configuration which force a rescan in {@link CategoryManager}.
+     */
+    private static String getConfiguration(Context context) {
+        final Configuration config = context.getResources().getConfiguration();
+        return config.getLocales().toLanguageTags() + "/" + config.densityDpi;
+    }
+
+    private static long getPackageVersion(Context context) {
+        try {
+            return context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0 /* flags */).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return -1;
+        }
+    }
+}
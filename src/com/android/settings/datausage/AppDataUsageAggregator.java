@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static android.net.TrafficStats.UID_REMOVED;
+import static android.net.TrafficStats.UID_TETHERING;
+
+import android.os.Process;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.util.SparseLongArray;
+
+import com.android.settingslib.AppItem;
+import com.android.settingslib.net.UidDetailProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sums up the data usage of uids into the items listed by {@link DataUsageList}.
+ *
+ * <p>Usage is added up per uid while the stats are read, and only collapsed into items once per
+ * uid when the list is built. How the apps of a user are collapsed is looked up once per user.
+ */
+class AppDataUsageAggregator {
+
+    // Apps of the current user are listed by themselves.
+    private static final int USER_CURRENT = 0;
+    // Apps of a profile are listed by themselves, and also added to an item of the profile.
+    private static final int USER_PROFILE = 1;
+    // Apps of any other user are only added to an item of the user.
+    private static final int USER_OTHER = 2;
+    // Apps of removed users are added to the item of removed apps.
+    private static final int USER_REMOVED = 3;
+
+    private final UserManager mUserManager;
+    // User id -> one of the USER_ types above, for the users seen so far.
+    private final SparseIntArray mUserTypes = new SparseIntArray();
+    // Uid -> bytes received and sent.
+    private final SparseLongArray mUidBytes = new SparseLongArray();
+
+    AppDataUsageAggregator(int currentUserId, List<UserHandle> profiles,
+            UserManager userManager) {
+        mUserManager = userManager;
+        for (UserHandle profile : profiles) {
+            final int userId = profile.getIdentifier();
+            mUserTypes.put(userId, userId == currentUserId ? USER_CURRENT : USER_PROFILE);
+        }
+    }
+
+    /**
+     * Adds {@code bytes} to the usage of {@code uid}.
+     */
+    void add(int uid, long bytes) {
+        final int index = mUidBytes.indexOfKey(uid);
+        mUidBytes.put(uid, index >= 0 ? mUidBytes.valueAt(index) + bytes : bytes);
+    }
+
+    /**
+     * Adds the bytes of every uid in {@code uidBytes}.
+     */
+    void addAll(SparseLongArray uidBytes) {
+        for (int i = 0; i < uidBytes.size(); i++) {
+            add(uidBytes.keyAt(i), uidBytes.valueAt(i));
+        }
+    }
+
+    /**
+     * Returns the bytes added per uid so far.
+     */
+    SparseLongArray getUidBytes() {
+        return mUidBytes;
+    }
+
+    /**
+     * Returns the sorted items of the added usage, with the apps of {@code restrictedUids} marked
+     * as restricted.
+     */
+    ArrayList<AppItem> build(int[] restrictedUids) {
+        final ArrayList<AppItem> items = new ArrayList<>();
+        final SparseArray<AppItem> knownItems = new SparseArray<>();
+        for (int i = 0; i < mUidBytes.size(); i++) {
+            final int uid = mUidBytes.keyAt(i);
+            final long bytes = mUidBytes.valueAt(i);
+            if (!UserHandle.isApp(uid)) {
+                final int collapseKey = uid == UID_REMOVED || uid == UID_TETHERING
+                        || uid == Process.OTA_UPDATE_UID ? uid : Process.SYSTEM_UID;
+                accumulate(collapseKey, AppItem.CATEGORY_APP, uid, bytes, items, knownItems);
+                continue;
+            }
+            final int userId = UserHandle.getUserId(uid);
+            switch (getUserType(userId)) {
+                case USER_PROFILE:
+                    accumulate(UidDetailProvider.buildKeyForUser(userId), AppItem.CATEGORY_USER,
+                            uid, bytes, items, knownItems);
+                    // Fall through to also list the app itself.
+                case USER_CURRENT:
+                    accumulate(uid, AppItem.CATEGORY_APP, uid, bytes, items, knownItems);
+                    break;
+                case USER_OTHER:
+                    accumulate(UidDetailProvider.buildKeyForUser(userId), AppItem.CATEGORY_USER,
+                            uid, bytes, items, knownItems);
+                    break;
+                default:
+                    accumulate(UID_REMOVED, AppItem.CATEGORY_APP, uid, bytes, items, knownItems);
+                    break;
+            }
+        }
+
+        for (int uid : restrictedUids) {
+            // Only splice in restricted state for current user or managed users
+            final int userType = getUserType(UserHandle.getUserId(uid));
+            if (userType != USER_CURRENT && userType != USER_PROFILE) {
+                continue;
+            }
+            AppItem item = knownItems.get(uid);
+            if (item == null) {
+                item = new AppItem(uid);
+                item.total = -1;
+                items.add(item);
+                knownItems.put(item.key, item);
+            }
+            item.restricted = true;
+        }
+
+        Collections.sort(items);
+        return items;
+    }
+
+    private int getUserType(int userId) {
+        final int index = mUserTypes.indexOfKey(userId);
+        if (index >= 0) {
+            return mUserTypes.valueAt(index);
+        }
+        final int userType = mUserManager.getUserInfo(userId) != null ? USER_OTHER : USER_REMOVED;
+        mUserTypes.put(userId, userType);
+        return userType;
+    }
+
+    private static void accumulate(int collapseKey, int category, int uid, long bytes,
+            ArrayList<AppItem> items, SparseArray<AppItem> knownItems) {
+        AppItem item = knownItems.get(collapseKey);
+        if (item == null) {
+            item = new AppItem(collapseKey);
+            item.category = category;
+            items.add(item);
+            knownItems.put(item.key, item);
+        }
+        item.addUid(uid);
+        item.total += bytes;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static android.net.NetworkPolicyManager.POLICY_REJECT_METERED_BACKGROUND;
+
+import android.app.ActivityManager;
+import android.app.usage.NetworkStats;
+import android.app.usage.NetworkStats.Bucket;
+import android.app.usage.NetworkStatsManager;
+import android.content.Context;
+import android.net.NetworkPolicyManager;
+import android.net.NetworkTemplate;
+import android.os.UserManager;
+import android.util.Log;
+import android.util.SparseLongArray;
+
+import com.android.settingslib.AppItem;
+import com.android.settingslib.utils.AsyncLoaderCompat;
+
+import java.util.List;
+
+/**
+ * Loader of the sorted data usage items of all apps on a network in a time range, as listed by
+ * {@link DataUsageList}. Returns null if the usage could not be queried.
+ *
+ * <p>The usage per uid is shared through {@link DataUsageCycleCache}.
+ */
+public class AppDataUsageListLoader extends AsyncLoaderCompat<List<AppItem>> {
+
+    private static final String TAG = "AppDataUsageListLoader";
+
+    private final NetworkTemplate mTemplate;
+    private final long mStart;
+    private final long mEnd;
+
+    public AppDataUsageListLoader(Context context, NetworkTemplate template, long start,
+            long end) {
+        super(context);
+        mTemplate = template;
+        mStart = start;
+        mEnd = end;
+    }
+
+    @Override
+    public List<AppItem> loadInBackground() {
+        final Context context = getContext();
+        final UserManager userManager = context.getSystemService(UserManager.class);
+        final AppDataUsageAggregator aggregator = new AppDataUsageAggregator(
+                ActivityManager.getCurrentUser(), userManager.getUserProfiles(), userManager);
+        final DataUsageCycleCache cache = DataUsageCycleCache.getInstance(context);
+        final SparseLongArray cachedUidBytes = cache.getUidBytes(mTemplate, mStart, mEnd);
+        if (cachedUidBytes != null) {
+            aggregator.addAll(cachedUidBytes);
+        } else {
+            final NetworkStats stats;
+            try {
+                stats = context.getSystemService(NetworkStatsManager.class)
+                        .querySummary(mTemplate, mStart, mEnd);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Exception querying network detail.", e);
+                return null;
+            }
+            if (stats == null) {
+                return null;
+            }
+            final Bucket bucket = new Bucket();
+            try {
+                while (stats.hasNextBucket() && stats.getNextBucket(bucket)) {
+                    aggregator.add(bucket.getUid(), bucket.getRxBytes() + bucket.getTxBytes());
+                }
+            } finally {
+                stats.close();
+            }
+            cache.putUidBytes(mTemplate, mStart, mEnd, aggregator.getUidBytes());
+        }
+        // Restrictions and users may change any time, so only the usage is cached.
+        final int[] restrictedUids = NetworkPolicyManager.from(context)
+                .getUidsWithPolicy(POLICY_REJECT_METERED_BACKGROUND);
+        return aggregator.build(restrictedUids);
+    }
+
+    @Override
+    protected void onDiscardResult(List<AppItem> result) {
+    }
+}
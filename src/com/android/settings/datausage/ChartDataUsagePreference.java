@@ -58,6 +58,11 @@ public class ChartDataUsagePreference extends Preference {
     private NetworkCycleChartData mNetworkCycleChartData;
     private int mSecondaryColor;
     private int mSeriesColor;
+    // Content description of the current data, which goes through all of its buckets.
+    private CharSequence mContentDescription;
+    // Replaced whenever something shown changes. A chart tagged with it already shows the
+    // current state, so binding it again keeps its paths.
+    private Object mBindToken = new Object();
 
     public ChartDataUsagePreference(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -72,9 +77,10 @@ public class ChartDataUsagePreference extends Preference {
     public void onBindViewHolder(PreferenceViewHolder holder) {
         super.onBindViewHolder(holder);
         final UsageView chart = (UsageView) holder.findViewById(R.id.data_usage);
-        if (mNetworkCycleChartData == null) {
+        if (mNetworkCycleChartData == null || chart.getTag() == mBindToken) {
             return;
         }
+        chart.setTag(mBindToken);
 
         final int top = getTop();
         chart.clearPaths();
@@ -128,6 +134,13 @@ public class ChartDataUsagePreference extends Preference {
     }
 
     private void setupContentDescription(UsageView chart, List<NetworkCycleData> usageSummary) {
+        if (mContentDescription == null) {
+            mContentDescription = buildContentDescription(usageSummary);
+        }
+        chart.setContentDescription(mContentDescription);
+    }
+
+    private CharSequence buildContentDescription(List<NetworkCycleData> usageSummary) {
         final Context context = getContext();
         final StringBuilder contentDescription = new StringBuilder();
         final int flags = DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_ABBREV_MONTH;
@@ -143,8 +156,7 @@ public class ChartDataUsagePreference extends Preference {
             final String noDataContentDescription = mResources
                     .getString(R.string.data_usage_chart_no_data_content_description);
             contentDescription.append(noDataContentDescription);
-            chart.setContentDescription(contentDescription);
-            return;
+            return contentDescription;
         }
 
         // Append more detailed stats.
@@ -164,7 +176,7 @@ public class ChartDataUsagePreference extends Preference {
             contentDescription.append(nodeContentDescription);
         }
 
-        chart.setContentDescription(contentDescription);
+        return contentDescription;
     }
 
     /**
@@ -293,6 +305,7 @@ public class ChartDataUsagePreference extends Preference {
 
     public void setNetworkPolicy(NetworkPolicy policy) {
         mPolicy = policy;
+        mBindToken = new Object();
         notifyChanged();
     }
 
@@ -308,12 +321,15 @@ public class ChartDataUsagePreference extends Preference {
         mNetworkCycleChartData = data;
         mStart = data.getStartTime();
         mEnd = data.getEndTime();
+        mContentDescription = null;
+        mBindToken = new Object();
         notifyChanged();
     }
 
     public void setColors(int seriesColor, int secondaryColor) {
         mSeriesColor = seriesColor;
         mSecondaryColor = secondaryColor;
+        mBindToken = new Object();
         notifyChanged();
     }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.NetworkTemplate;
+import android.os.UserHandle;
+import android.text.format.DateUtils;
+import android.util.LruCache;
+import android.util.SparseLongArray;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Objects;
+
+/**
+ * Process wide cache of the data usage per uid of billing cycles, so that switching between
+ * cycles or coming back to the list of apps does not query the network stats again.
+ *
+ * <p>The usage of a cycle which ended a while ago does not change anymore and is kept until
+ * evicted. The usage of the current cycle, or of a cycle which just ended and may still get the
+ * traffic recorded since the last stats poll, is only kept for a short while. Everything is
+ * dropped when a package is removed, as the usage of its uid is then moved to the removed uid.
+ */
+class DataUsageCycleCache {
+
+    private static final int MAX_CYCLE_COUNT = 32;
+    @VisibleForTesting
+    static final long OPEN_CYCLE_MAX_AGE = 30 * 1000;
+    // How long after its end a cycle is still treated as open. Network stats are polled every
+    // 30 minutes by default, and traffic is recorded into the buckets it happened in.
+    @VisibleForTesting
+    static final long CLOSED_CYCLE_DELAY = 2 * DateUtils.HOUR_IN_MILLIS;
+
+    private static DataUsageCycleCache sInstance;
+
+    private final LruCache<Key, Entry> mUidBytes = new LruCache<>(MAX_CYCLE_COUNT);
+
+    /**
+     * Returns the cache of the process, dropped whenever a package is removed.
+     */
+    static synchronized DataUsageCycleCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DataUsageCycleCache();
+            sInstance.registerReceiver(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    DataUsageCycleCache() {
+    }
+
+    /**
+     * Returns a copy of the bytes used per uid on {@code template} from {@code start} to
+     * {@code end}, or null if not cached.
+     */
+    SparseLongArray getUidBytes(NetworkTemplate template, long start, long end) {
+        return getUidBytes(template, start, end, System.currentTimeMillis());
+    }
+
+    @VisibleForTesting
+    SparseLongArray getUidBytes(NetworkTemplate template, long start, long end, long now) {
+        final Key key = new Key(template, start, end);
+        final Entry entry = mUidBytes.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.mExpiryTime <= now) {
+            mUidBytes.remove(key);
+            return null;
+        }
+        return entry.mUidBytes.clone();
+    }
+
+    /**
+     * Caches a copy of {@code uidBytes}, the bytes used per uid on {@code template} from
+     * {@code start} to {@code end}.
+     */
+    void putUidBytes(NetworkTemplate template, long start, long end, SparseLongArray uidBytes) {
+        putUidBytes(template, start, end, uidBytes, System.currentTimeMillis());
+    }
+
+    @VisibleForTesting
+    void putUidBytes(NetworkTemplate template, long start, long end, SparseLongArray uidBytes,
+            long now) {
+        final long expiryTime = end + CLOSED_CYCLE_DELAY <= now
+                ? Long.MAX_VALUE : now + OPEN_CYCLE_MAX_AGE;
+        mUidBytes.put(new Key(template, start, end), new Entry(uidBytes.clone(), expiryTime));
+    }
+
+    void clear() {
+        mUidBytes.evictAll();
+    }
+
+    @VisibleForTesting
+    void registerReceiver(Context context) {
+        final IntentFilter filter = new IntentFilter(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.registerReceiverAsUser(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (!intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+                    clear();
+                }
+            }
+        }, UserHandle.ALL, filter, null /* permission */, null /* scheduler */);
+    }
+
+    private static final class Key {
+        final NetworkTemplate mTemplate;
+        final long mStart;
+        final long mEnd;
+
+        Key(NetworkTemplate template, long start, long end) {
+            mTemplate = template;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mStart == other.mStart && mEnd == other.mEnd
+                    && Objects.equals(mTemplate, other.mTemplate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mTemplate, mStart, mEnd);
+        }
+    }
+
+    private static final class Entry {
+        final SparseLongArray mUidBytes;
+        final long mExpiryTime;
+
+        Entry(SparseLongArray uidBytes, long expiryTime) {
+            mUidBytes = uidBytes;
+            mExpiryTime = expiryTime;
+        }
+    }
+}
@@ -19,10 +19,12 @@ package com.android.settings.development.featureflags;
 import android.app.settings.SettingsEnums;
 import android.content.Context;
 import android.provider.SearchIndexableResource;
+import android.provider.Settings;
 
 import com.android.settings.R;
 import com.android.settings.dashboard.DashboardFragment;
 import com.android.settings.search.BaseSearchIndexProvider;
+import com.android.settings.search.NonIndexableKeysInvalidation;
 import com.android.settingslib.search.Indexable;
 import com.android.settingslib.development.DevelopmentSettingsEnabler;
 import com.android.settingslib.search.SearchIndexable;
@@ -77,5 +79,17 @@ public class FeatureFlagsDashboard extends DashboardFragment {
                 protected boolean isPageSearchEnabled(Context context) {
                     return DevelopmentSettingsEnabler.isDevelopmentSettingsEnabled(context);
                 }
+
+                @Override
+                public NonIndexableKeysInvalidation getNonIndexableKeysInvalidation(
+                        Context context) {
+                    // Only developer options being enabled for the user decides whether the
+                    // page is searchable.
+                    return new NonIndexableKeysInvalidation.Builder()
+                            .addUri(Settings.Global.getUriFor(
+                                    Settings.Global.DEVELOPMENT_SETTINGS_ENABLED))
+                            .setOnUserChange(true)
+                            .build();
+                }
             };
 }
@@ -22,6 +22,7 @@ import android.content.Context;
 import com.android.settings.R;
 import com.android.settings.dashboard.DashboardFragment;
 import com.android.settings.search.BaseSearchIndexProvider;
+import com.android.settings.search.NonIndexableKeysInvalidation;
 import com.android.settingslib.search.SearchIndexable;
 
 @SearchIndexable
@@ -51,5 +52,12 @@ public class HardwareInfoFragment extends DashboardFragment {
                 protected boolean isPageSearchEnabled(Context context) {
                     return context.getResources().getBoolean(R.bool.config_show_device_model);
                 }
+
+                @Override
+                public NonIndexableKeysInvalidation getNonIndexableKeysInvalidation(
+                        Context context) {
+                    // Availability only depends on resources and build properties.
+                    return new NonIndexableKeysInvalidation.Builder().build();
+                }
             };
 }
@@ -39,26 +39,43 @@ import android.util.ArraySet;
 import android.util.Log;
 import android.util.SparseArray;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.settingslib.applications.StorageStatsSource;
 import com.android.settingslib.utils.AsyncLoaderCompat;
 
+import com.google.common.util.concurrent.MoreExecutors;
+
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * StorageAsyncLoader is a Loader which loads categorized app information and external stats for all
- * users
+ * users. The stats of the apps and files of all users are queried in parallel on a bounded pool.
  */
 public class StorageAsyncLoader
         extends AsyncLoaderCompat<SparseArray<StorageAsyncLoader.StorageResult>> {
     private UserManager mUserManager;
     private static final String TAG = "StorageAsyncLoader";
 
+    // Upper bound of the threads querying stats in parallel.
+    private static final int MAX_THREAD_COUNT = 4;
+    // Applications whose stats are queried by a single task.
+    private static final int APPS_PER_TASK = 32;
+
     private String mUuid;
     private StorageStatsSource mStatsManager;
     private PackageManager mPackageManager;
-    private ArraySet<String> mSeenPackages;
+
+    // Stats are queried on the loader thread only if this is 1.
+    @VisibleForTesting
+    int mThreadCount = Math.min(MAX_THREAD_COUNT, Runtime.getRuntime().availableProcessors());
 
     public StorageAsyncLoader(Context context, UserManager userManager,
             String uuid, StorageStatsSource source, PackageManager pm) {
@@ -75,7 +92,6 @@ public class StorageAsyncLoader
     }
 
     private SparseArray<StorageResult> getStorageResultsForUsers() {
-        mSeenPackages = new ArraySet<>();
         final SparseArray<StorageResult> results = new SparseArray<>();
         final List<UserInfo> infos = mUserManager.getUsers();
 
@@ -83,36 +99,68 @@ public class StorageAsyncLoader
         Collections.sort(infos,
                 (userInfo, otherUser) -> Integer.compare(userInfo.id, otherUser.id));
 
-        for (UserInfo info : infos) {
-            final StorageResult result = getAppsAndGamesSize(info.id);
-
-            result.imagesSize = getFilesSize(info.id, MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                    null /* queryArgs */);
-            result.videosSize = getFilesSize(info.id, MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
-                    null /* queryArgs */);
-            result.audioSize = getFilesSize(info.id, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                    null /* queryArgs */);
-
-            final Bundle documentsAndOtherQueryArgs = new Bundle();
-            documentsAndOtherQueryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION,
-                    FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_IMAGE
-                    + " AND " + FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_VIDEO
-                    + " AND " + FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_AUDIO
-                    + " AND " + FileColumns.MIME_TYPE + " IS NOT NULL");
-            result.documentsAndOtherSize = getFilesSize(info.id,
-                    MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL),
-                    documentsAndOtherQueryArgs);
-
-            final Bundle trashQueryArgs = new Bundle();
-            trashQueryArgs.putInt(MediaStore.QUERY_ARG_MATCH_TRASHED, MediaStore.MATCH_ONLY);
-            result.trashSize = getFilesSize(info.id,
-                    MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL), trashQueryArgs);
-
-            results.put(info.id, result);
+        final ExecutorService executor = mThreadCount > 1
+                ? Executors.newFixedThreadPool(mThreadCount)
+                : MoreExecutors.newDirectExecutorService();
+        try {
+            // Every query of every user is queued first, so that all users are loaded together.
+            final List<List<Future<AppSizes>>> appSizesOfUsers = new ArrayList<>();
+            final List<Future<StorageResult>> fileSizesOfUsers = new ArrayList<>();
+            for (UserInfo info : infos) {
+                appSizesOfUsers.add(submitAppSizeTasks(executor, info.id));
+                fileSizesOfUsers.add(executor.submit(() -> getFileSizes(info.id)));
+            }
+
+            // Code bytes may share between different profiles. To know all the duplicate code size
+            // and we can get a reasonable system size in StorageItemPreferenceController.
+            final ArraySet<String> seenPackages = new ArraySet<>();
+            for (int i = 0; i < infos.size(); i++) {
+                final StorageResult result = getResult(fileSizesOfUsers.get(i));
+                for (Future<AppSizes> task : appSizesOfUsers.get(i)) {
+                    getResult(task).addTo(result, seenPackages);
+                }
+                results.put(infos.get(i).id, result);
+            }
+        } finally {
+            executor.shutdownNow();
         }
         return results;
     }
 
+    private StorageResult getFileSizes(int userId) {
+        final StorageResult result = new StorageResult();
+        result.imagesSize = getFilesSize(userId, MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                null /* queryArgs */);
+        result.videosSize = getFilesSize(userId, MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
+                null /* queryArgs */);
+        result.audioSize = getFilesSize(userId, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                null /* queryArgs */);
+
+        final Bundle documentsAndOtherQueryArgs = new Bundle();
+        documentsAndOtherQueryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION,
+                FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_IMAGE
+                + " AND " + FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_VIDEO
+                + " AND " + FileColumns.MEDIA_TYPE + "!=" + FileColumns.MEDIA_TYPE_AUDIO
+                + " AND " + FileColumns.MIME_TYPE + " IS NOT NULL");
+        result.documentsAndOtherSize = getFilesSize(userId,
+                MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL),
+                documentsAndOtherQueryArgs);
+
+        final Bundle trashQueryArgs = new Bundle();
+        trashQueryArgs.putInt(MediaStore.QUERY_ARG_MATCH_TRASHED, MediaStore.MATCH_ONLY);
+        result.trashSize = getFilesSize(userId,
+                MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL), trashQueryArgs);
+
+        Log.d(TAG, "Loading external stats");
+        try {
+            result.externalStats = mStatsManager.getExternalStorageStats(mUuid,
+                    UserHandle.of(userId));
+        } catch (IOException e) {
+            Log.w(TAG, e);
+        }
+        return result;
+    }
+
     private long getFilesSize(int userId, Uri uri, Bundle queryArgs) {
         final Context perUserContext;
         try {
@@ -137,11 +185,21 @@ public class StorageAsyncLoader
         }
     }
 
-    private StorageResult getAppsAndGamesSize(int userId) {
+    private List<Future<AppSizes>> submitAppSizeTasks(ExecutorService executor, int userId) {
         Log.d(TAG, "Loading apps");
         final List<ApplicationInfo> applicationInfos =
                 mPackageManager.getInstalledApplicationsAsUser(0, userId);
-        final StorageResult result = new StorageResult();
+        final List<Future<AppSizes>> tasks = new ArrayList<>();
+        for (int start = 0; start < applicationInfos.size(); start += APPS_PER_TASK) {
+            final List<ApplicationInfo> apps = applicationInfos.subList(
+                    start, Math.min(start + APPS_PER_TASK, applicationInfos.size()));
+            tasks.add(executor.submit(() -> getAppsAndGamesSize(userId, apps)));
+        }
+        return tasks;
+    }
+
+    private AppSizes getAppsAndGamesSize(int userId, List<ApplicationInfo> applicationInfos) {
+        final AppSizes result = new AppSizes(applicationInfos.size());
         final UserHandle myUser = UserHandle.of(userId);
         for (int i = 0, size = applicationInfos.size(); i < size; i++) {
             final ApplicationInfo app = applicationInfos.get(i);
@@ -167,43 +225,43 @@ public class StorageAsyncLoader
                 blamedSize = blamedSize - cacheBytes + cacheQuota;
             }
 
-            // Code bytes may share between different profiles. To know all the duplicate code size
-            // and we can get a reasonable system size in StorageItemPreferenceController.
-            if (mSeenPackages.contains(app.packageName)) {
-                result.duplicateCodeSize += stats.getCodeBytes();
-            } else {
-                mSeenPackages.add(app.packageName);
-            }
+            result.mPackageNames.add(app.packageName);
+            result.mCodeSizes[result.mPackageNames.size() - 1] = stats.getCodeBytes();
 
             switch (app.category) {
                 case CATEGORY_GAME:
-                    result.gamesSize += blamedSize;
+                    result.mGamesSize += blamedSize;
                     break;
                 case CATEGORY_AUDIO:
                 case CATEGORY_VIDEO:
                 case CATEGORY_IMAGE:
-                    result.allAppsExceptGamesSize += blamedSize;
+                    result.mAllAppsExceptGamesSize += blamedSize;
                     break;
                 default:
                     // The deprecated game flag does not set the category.
                     if ((app.flags & ApplicationInfo.FLAG_IS_GAME) != 0) {
-                        result.gamesSize += blamedSize;
+                        result.mGamesSize += blamedSize;
                         break;
                     }
-                    result.allAppsExceptGamesSize += blamedSize;
+                    result.mAllAppsExceptGamesSize += blamedSize;
                     break;
             }
         }
+        return result;
+    }
 
-        Log.d(TAG, "Loading external stats");
+    private static <T> T getResult(Future<T> task) {
         try {
-            result.externalStats = mStatsManager.getExternalStorageStats(mUuid,
-                    UserHandle.of(userId));
-        } catch (IOException e) {
-            Log.w(TAG, e);
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading storage stats", e);
         }
-        Log.d(TAG, "Obtaining result completed");
-        return result;
     }
 
     @Override
@@ -228,6 +286,29 @@ public class StorageAsyncLoader
         public StorageStatsSource.ExternalStorageStats externalStats;
     }
 
+    /** Sizes of some apps of a user, which are added to the result of the user in order. */
+    private static class AppSizes {
+        final List<String> mPackageNames;
+        final long[] mCodeSizes;
+        long mGamesSize;
+        long mAllAppsExceptGamesSize;
+
+        AppSizes(int appCount) {
+            mPackageNames = new ArrayList<>(appCount);
+            mCodeSizes = new long[appCount];
+        }
+
+        void addTo(StorageResult result, ArraySet<String> seenPackages) {
+            result.gamesSize += mGamesSize;
+            result.allAppsExceptGamesSize += mAllAppsExceptGamesSize;
+            for (int i = 0; i < mPackageNames.size(); i++) {
+                if (!seenPackages.add(mPackageNames.get(i))) {
+                    result.duplicateCodeSize += mCodeSizes[i];
+                }
+            }
+        }
+    }
+
     /**
      * ResultHandler defines a destination of data which can handle a result from
      * {@link StorageAsyncLoader}.
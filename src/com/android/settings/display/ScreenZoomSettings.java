@@ -25,6 +25,7 @@ import android.view.Display;
 
 import com.android.settings.R;
 import com.android.settings.search.BaseSearchIndexProvider;
+import com.android.settings.search.NonIndexableKeysInvalidation;
 import com.android.settingslib.display.DisplayDensityConfiguration;
 import com.android.settingslib.display.DisplayDensityUtils;
 import com.android.settingslib.search.SearchIndexable;
@@ -118,5 +119,12 @@ public class ScreenZoomSettings extends PreviewSeekBarPreferenceFragment {
                 protected boolean isPageSearchEnabled(Context context) {
                     return false;
                 }
+
+                @Override
+                public NonIndexableKeysInvalidation getNonIndexableKeysInvalidation(
+                        Context context) {
+                    // Never searchable, the keys never change.
+                    return new NonIndexableKeysInvalidation.Builder().build();
+                }
             };
 }
@@ -27,6 +27,7 @@ import android.provider.Settings;
 
 import com.android.settings.R;
 import com.android.settings.search.BaseSearchIndexProvider;
+import com.android.settings.search.NonIndexableKeysInvalidation;
 import com.android.settingslib.search.SearchIndexable;
 
 /**
@@ -116,6 +117,13 @@ public class ToggleFontSizePreferenceFragment extends PreviewSeekBarPreferenceFr
                 protected boolean isPageSearchEnabled(Context context) {
                     return false;
                 }
+
+                @Override
+                public NonIndexableKeysInvalidation getNonIndexableKeysInvalidation(
+                        Context context) {
+                    // Never searchable, the keys never change.
+                    return new NonIndexableKeysInvalidation.Builder().build();
+                }
             };
 
 }
@@ -665,8 +665,9 @@ public class BatteryChartPreferenceController extends AbstractPreferenceControll
                 return null;
             }
             final long startTime = System.currentTimeMillis();
+            // Only the slots changed since the last load are computed again.
             final Map<Integer, List<BatteryDiffEntry>> indexedUsageMap =
-                ConvertUtils.getIndexedUsageMap(
+                BatteryUsageSlotCache.getInstance().getIndexedUsageMap(
                     mPrefContext, /*timeSlotSize=*/ CHART_LEVEL_ARRAY_SIZE - 1,
                     mBatteryHistoryKeysCache, mBatteryHistoryMap,
                     /*purgeLowPercentageAndFakeData=*/ true);
@@ -39,12 +39,15 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.android.settings.R;
+import com.android.settings.utils.AppIconCache;
 import com.android.settingslib.Utils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Wraps the power usage data of a BatterySipper with information about package name
@@ -77,7 +80,20 @@ public class BatteryEntry {
     private static final String TAG = "BatteryEntry";
     private static final String PACKAGE_SYSTEM = "android";
 
-    static final HashMap<String, UidToDetail> sUidCache = new HashMap<>();
+    // Upper bound of the cached names and icons. Icons are launcher sized, so the entry count
+    // bounds the memory used by the cache.
+    private static final int MAX_UID_CACHE_SIZE = 256;
+    // Upper bound of the loaders resolving the queued entries concurrently.
+    private static final int MAX_LOADER_COUNT = 4;
+
+    static final Map<String, UidToDetail> sUidCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, UidToDetail>(
+                    /*initialCapacity=*/ 16, /*loadFactor=*/ 0.75f, /*accessOrder=*/ true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, UidToDetail> eldest) {
+                    return size() > MAX_UID_CACHE_SIZE;
+                }
+            });
 
     static final ArrayList<BatteryEntry> sRequestQueue = new ArrayList<BatteryEntry>();
     static Handler sHandler;
@@ -101,7 +117,9 @@ public class BatteryEntry {
                 BatteryEntry be;
                 synchronized (sRequestQueue) {
                     if (sRequestQueue.isEmpty() || mAbort) {
-                        if (sHandler != null) {
+                        // Only the last running loader reports that the list is fully drawn.
+                        if (sRequestLoaders.remove(this) && sRequestLoaders.isEmpty()
+                                && sHandler != null) {
                             sHandler.sendEmptyMessage(MSG_REPORT_FULLY_DRAWN);
                         }
                         return;
@@ -121,19 +139,21 @@ public class BatteryEntry {
         }
     }
 
-    private static NameAndIconLoader mRequestThread;
+    // Guarded by sRequestQueue.
+    private static final ArrayList<NameAndIconLoader> sRequestLoaders = new ArrayList<>();
 
     public static void startRequestQueue() {
         if (sHandler != null) {
             synchronized (sRequestQueue) {
                 if (!sRequestQueue.isEmpty()) {
-                    if (mRequestThread != null) {
-                        mRequestThread.abort();
+                    abortRequestLoaders();
+                    final int loaderCount = Math.min(MAX_LOADER_COUNT, sRequestQueue.size());
+                    for (int i = 0; i < loaderCount; i++) {
+                        final NameAndIconLoader loader = new NameAndIconLoader();
+                        loader.setPriority(Thread.MIN_PRIORITY);
+                        sRequestLoaders.add(loader);
+                        loader.start();
                     }
-                    mRequestThread = new NameAndIconLoader();
-                    mRequestThread.setPriority(Thread.MIN_PRIORITY);
-                    mRequestThread.start();
-                    sRequestQueue.notify();
                 }
             }
         }
@@ -141,15 +161,39 @@ public class BatteryEntry {
 
     public static void stopRequestQueue() {
         synchronized (sRequestQueue) {
-            if (mRequestThread != null) {
-                mRequestThread.abort();
-                mRequestThread = null;
+            if (!sRequestLoaders.isEmpty()) {
+                abortRequestLoaders();
                 sRequestQueue.clear();
                 sHandler = null;
             }
         }
     }
 
+    /**
+     * Moves the queued requests of the {@code uid} to the front of the queue, e.g. once its
+     * preference is shown, so that visible entries are resolved before the ones off-screen.
+     */
+    public static void prioritizeRequest(int uid) {
+        synchronized (sRequestQueue) {
+            int insertIndex = 0;
+            for (int i = 0; i < sRequestQueue.size(); i++) {
+                final BatteryEntry entry = sRequestQueue.get(i);
+                if (entry.getUid() == uid) {
+                    sRequestQueue.remove(i);
+                    sRequestQueue.add(insertIndex++, entry);
+                }
+            }
+        }
+    }
+
+    // Guarded by sRequestQueue.
+    private static void abortRequestLoaders() {
+        for (NameAndIconLoader loader : sRequestLoaders) {
+            loader.abort();
+        }
+        sRequestLoaders.clear();
+    }
+
     public static void clearUidCache() {
         sUidCache.clear();
     }
@@ -315,8 +359,8 @@ public class BatteryEntry {
         }
 
         final String uidString = Integer.toString(uid);
-        if (sUidCache.containsKey(uidString)) {
-            UidToDetail utd = sUidCache.get(uidString);
+        final UidToDetail utd = sUidCache.get(uidString);
+        if (utd != null) {
             mDefaultPackageName = utd.packageName;
             name = utd.name;
             icon = utd.icon;
@@ -369,6 +413,7 @@ public class BatteryEntry {
 
             // Convert package names to user-facing labels where possible
             final IPackageManager ipm = AppGlobals.getPackageManager();
+            final AppIconCache appIconCache = AppIconCache.getInstance(context);
             final int userId = UserHandle.getUserId(uid);
             for (int i = 0; i < packageLabels.length; i++) {
                 try {
@@ -379,13 +424,14 @@ public class BatteryEntry {
                                 + packageLabels[i] + ", user " + userId);
                         continue;
                     }
-                    final CharSequence label = ai.loadLabel(pm);
+                    final CharSequence label = appIconCache.getLabel(context, ai);
                     if (label != null) {
                         packageLabels[i] = label.toString();
                     }
                     if (ai.icon != 0) {
                         defaultPackageName = packages[i];
-                        icon = ai.loadIcon(pm);
+                        // Badged for the user of the uid by the callers.
+                        icon = appIconCache.getIcon(context, ai);
                         break;
                     }
                 } catch (RemoteException e) {
@@ -413,7 +459,8 @@ public class BatteryEntry {
                                 name = nm.toString();
                                 if (pi.applicationInfo.icon != 0) {
                                     defaultPackageName = pkgName;
-                                    icon = pi.applicationInfo.loadIcon(pm);
+                                    icon = appIconCache.getIcon(
+                                            context, pi.applicationInfo);
                                 }
                                 break;
                             }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.android.settings.fuelgauge;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columnar view of the battery history, used to compute the usage of each time slot without
+ * walking the per timestamp hash maps again for every slot.
+ *
+ * <p>Every {@link BatteryHistEntry} key is interned once into a key index, in the order it first
+ * appears over the timestamps. The usage values are stored in flat arrays indexed by
+ * {@code timestampIndex * getKeyCount() + keyIndex}, holding zero where a key has no entry.
+ */
+final class BatteryHistoryTable {
+
+    private final long[] mTimestamps;
+    private final String[] mKeys;
+    private final Map<String, Integer> mKeyIndexes;
+    private final int[] mEntryCounts;
+    private final long[] mForegroundUsageTimeInMs;
+    private final long[] mBackgroundUsageTimeInMs;
+    private final double[] mConsumePower;
+    private final BatteryHistEntry[] mEntries;
+
+    private BatteryHistoryTable(
+            long[] timestamps, String[] keys, Map<String, Integer> keyIndexes) {
+        final int size = timestamps.length * keys.length;
+        mTimestamps = timestamps;
+        mKeys = keys;
+        mKeyIndexes = keyIndexes;
+        mEntryCounts = new int[timestamps.length];
+        mForegroundUsageTimeInMs = new long[size];
+        mBackgroundUsageTimeInMs = new long[size];
+        mConsumePower = new double[size];
+        mEntries = new BatteryHistEntry[size];
+    }
+
+    /**
+     * Builds the table of {@code timestamps}, in that order, from {@code batteryHistoryMap}.
+     * Timestamps missing from the map are recorded without data.
+     */
+    static BatteryHistoryTable create(
+            long[] timestamps, Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
+        final Map<String, Integer> keyIndexes = new HashMap<>();
+        for (long timestamp : timestamps) {
+            final Map<String, BatteryHistEntry> entries = batteryHistoryMap.get(timestamp);
+            if (entries == null) {
+                continue;
+            }
+            for (String key : entries.keySet()) {
+                keyIndexes.putIfAbsent(key, keyIndexes.size());
+            }
+        }
+        final String[] keys = new String[keyIndexes.size()];
+        for (Map.Entry<String, Integer> keyIndex : keyIndexes.entrySet()) {
+            keys[keyIndex.getValue()] = keyIndex.getKey();
+        }
+
+        final BatteryHistoryTable table =
+            new BatteryHistoryTable(timestamps.clone(), keys, keyIndexes);
+        for (int timestampIndex = 0; timestampIndex < timestamps.length; timestampIndex++) {
+            final Map<String, BatteryHistEntry> entries =
+                batteryHistoryMap.get(timestamps[timestampIndex]);
+            if (entries == null || entries.isEmpty()) {
+                continue;
+            }
+            table.mEntryCounts[timestampIndex] = entries.size();
+            final int offset = timestampIndex * keys.length;
+            for (Map.Entry<String, BatteryHistEntry> entry : entries.entrySet()) {
+                final BatteryHistEntry histEntry = entry.getValue();
+                final int index = offset + keyIndexes.get(entry.getKey());
+                table.mForegroundUsageTimeInMs[index] = histEntry.mForegroundUsageTimeInMs;
+                table.mBackgroundUsageTimeInMs[index] = histEntry.mBackgroundUsageTimeInMs;
+                table.mConsumePower[index] = histEntry.mConsumePower;
+                table.mEntries[index] = histEntry;
+            }
+        }
+        return table;
+    }
+
+    int getTimestampCount() {
+        return mTimestamps.length;
+    }
+
+    long getTimestamp(int timestampIndex) {
+        return mTimestamps[timestampIndex];
+    }
+
+    int getKeyCount() {
+        return mKeys.length;
+    }
+
+    String getKey(int keyIndex) {
+        return mKeys[keyIndex];
+    }
+
+    /** Returns the index of {@code key}, or -1 if it has no entry at any timestamp. */
+    int getKeyIndex(String key) {
+        final Integer keyIndex = mKeyIndexes.get(key);
+        return keyIndex == null ? -1 : keyIndex;
+    }
+
+    /** Whether the timestamp has at least one entry, including the fake one. */
+    boolean hasData(int timestampIndex) {
+        return mEntryCounts[timestampIndex] > 0;
+    }
+
+    /** Returns the number of keys which have an entry at the timestamp. */
+    int getEntryCount(int timestampIndex) {
+        return mEntryCounts[timestampIndex];
+    }
+
+    long getForegroundUsageTimeInMs(int timestampIndex, int keyIndex) {
+        return mForegroundUsageTimeInMs[timestampIndex * mKeys.length + keyIndex];
+    }
+
+    long getBackgroundUsageTimeInMs(int timestampIndex, int keyIndex) {
+        return mBackgroundUsageTimeInMs[timestampIndex * mKeys.length + keyIndex];
+    }
+
+    double getConsumePower(int timestampIndex, int keyIndex) {
+        return mConsumePower[timestampIndex * mKeys.length + keyIndex];
+    }
+
+    /** Returns the original entry, or {@code null} if the key has none at that timestamp. */
+    BatteryHistEntry getEntry(int timestampIndex, int keyIndex) {
+        return mEntries[timestampIndex * mKeys.length + keyIndex];
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.android.settings.fuelgauge;
+
+import android.content.Context;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the usage diff of every pair of adjacent timestamps in the battery history, so that
+ * loading the history again only computes the pairs whose timestamps or data changed. When a new
+ * snapshot is appended and the history shifts by one timestamp, only the newest pair is computed,
+ * and every time slot is assembled from its two cached pairs.
+ *
+ * <p>The history is read into a {@link BatteryHistoryTable} once per load. A pair is identified
+ * by its first timestamp, and reused while both of its timestamps hold exactly the same keys and
+ * usage values as in the table of the previous load. Entries returned to callers are bound to the
+ * given context and created for every call, so the cache never holds on to an activity.
+ */
+final class BatteryUsageSlotCache {
+
+    private static final BatteryUsageSlotCache sInstance = new BatteryUsageSlotCache();
+
+    // Each time slot covers three timestamps, sharing the first and the last one with its
+    // neighbors, see ConvertUtils.getSlotUsageList().
+    private static final int TIMESTAMP_STRIDE = 2;
+
+    // The table of the previous load, and the usage of each pair of its adjacent timestamps.
+    private BatteryHistoryTable mTable;
+    private TimestampPair[] mPairs;
+
+    @VisibleForTesting
+    int mComputedPairCount;
+
+    static BatteryUsageSlotCache getInstance() {
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    BatteryUsageSlotCache() {
+    }
+
+    /**
+     * Same as {@link ConvertUtils#getIndexedUsageMap(Context, int, long[], Map, boolean)}, but
+     * only computes the timestamp pairs which are not cached yet.
+     */
+    synchronized Map<Integer, List<BatteryDiffEntry>> getIndexedUsageMap(
+            final Context context,
+            final int timeSlotSize,
+            final long[] batteryHistoryKeys,
+            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
+            final boolean purgeLowPercentageAndFakeData) {
+        if (batteryHistoryMap == null || batteryHistoryMap.isEmpty()) {
+            return new HashMap<>();
+        }
+        final BatteryHistoryTable table =
+            BatteryHistoryTable.create(batteryHistoryKeys, batteryHistoryMap);
+        final TimestampPair[] pairs = getPairs(table, timeSlotSize * TIMESTAMP_STRIDE);
+        mTable = table;
+        mPairs = pairs;
+
+        final Map<Integer, List<BatteryDiffEntry>> resultMap = new HashMap<>();
+        // Aggregates the last 24 hours data by key index while each slot is assembled.
+        final BatteryDiffEntry[] aggregatedEntries = new BatteryDiffEntry[table.getKeyCount()];
+        final SlotUsage slotUsage = new SlotUsage(table.getKeyCount());
+        for (int index = 0; index < timeSlotSize; index++) {
+            resultMap.put(Integer.valueOf(index), slotUsage.getSlotUsageList(context,
+                pairs[index * TIMESTAMP_STRIDE], pairs[index * TIMESTAMP_STRIDE + 1],
+                aggregatedEntries));
+        }
+        ConvertUtils.putAggregatedUsageList(
+            resultMap, aggregatedEntries, purgeLowPercentageAndFakeData);
+        return resultMap;
+    }
+
+    synchronized void clear() {
+        mTable = null;
+        mPairs = null;
+    }
+
+    // Reuses the pairs of the previous load whose timestamps did not change, and computes the
+    // others from the table.
+    private TimestampPair[] getPairs(BatteryHistoryTable table, int pairCount) {
+        final TimestampPair[] pairs = new TimestampPair[pairCount];
+        final int[] keyIndexes = getKeyIndexes(table);
+        final int[] previousIndexes =
+            getPreviousTimestampIndexes(table, pairCount + 1, keyIndexes);
+        mComputedPairCount = 0;
+        for (int index = 0; index < pairCount; index++) {
+            final int previousIndex = previousIndexes[index];
+            if (previousIndex >= 0
+                    && previousIndex < mPairs.length
+                    && previousIndexes[index + 1] == previousIndex + 1) {
+                pairs[index] = mPairs[previousIndex];
+                pairs[index].update(table, index, keyIndexes);
+            } else {
+                pairs[index] = new TimestampPair(table, index);
+                mComputedPairCount++;
+            }
+        }
+        return pairs;
+    }
+
+    // Returns, for every timestamp of the table, the index of the same timestamp in the previous
+    // table if it holds the same data there, otherwise -1. Both tables are sorted by timestamp.
+    private int[] getPreviousTimestampIndexes(
+            BatteryHistoryTable table, int timestampCount, int[] keyIndexes) {
+        final int[] previousIndexes = new int[timestampCount];
+        int previousIndex = 0;
+        for (int index = 0; index < timestampCount; index++) {
+            previousIndexes[index] = -1;
+            if (mTable == null) {
+                continue;
+            }
+            final long timestamp = table.getTimestamp(index);
+            while (previousIndex < mTable.getTimestampCount()
+                    && mTable.getTimestamp(previousIndex) < timestamp) {
+                previousIndex++;
+            }
+            if (previousIndex < mTable.getTimestampCount()
+                    && mTable.getTimestamp(previousIndex) == timestamp
+                    && hasSameData(mTable, previousIndex, table, index, keyIndexes)) {
+                previousIndexes[index] = previousIndex;
+            }
+        }
+        return previousIndexes;
+    }
+
+    // Returns the index in the table of every key of the previous table, or -1 if it is gone.
+    private int[] getKeyIndexes(BatteryHistoryTable table) {
+        if (mTable == null) {
+            return new int[0];
+        }
+        final int[] keyIndexes = new int[mTable.getKeyCount()];
+        for (int keyIndex = 0; keyIndex < keyIndexes.length; keyIndex++) {
+            keyIndexes[keyIndex] = table.getKeyIndex(mTable.getKey(keyIndex));
+        }
+        return keyIndexes;
+    }
+
+    // Compares the values of every key at a timestamp of two tables, whose key indexes differ.
+    private static boolean hasSameData(BatteryHistoryTable previousTable, int previousIndex,
+            BatteryHistoryTable table, int index, int[] keyIndexes) {
+        if (previousTable.getEntryCount(previousIndex) != table.getEntryCount(index)) {
+            return false;
+        }
+        for (int previous = 0; previous < keyIndexes.length; previous++) {
+            if (previousTable.getEntry(previousIndex, previous) == null) {
+                continue;
+            }
+            final int keyIndex = keyIndexes[previous];
+            if (keyIndex < 0 || table.getEntry(index, keyIndex) == null) {
+                return false;
+            }
+            if (previousTable.getForegroundUsageTimeInMs(previousIndex, previous)
+                    != table.getForegroundUsageTimeInMs(index, keyIndex)
+                || previousTable.getBackgroundUsageTimeInMs(previousIndex, previous)
+                    != table.getBackgroundUsageTimeInMs(index, keyIndex)
+                || Double.compare(previousTable.getConsumePower(previousIndex, previous),
+                    table.getConsumePower(index, keyIndex)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The usage diff between two adjacent timestamps of every key which has an entry at either
+     * of them, stored in flat arrays.
+     */
+    private static final class TimestampPair {
+        final boolean mHasData;
+        // Indexes of the keys in the table of the latest load.
+        final int[] mKeyIndexes;
+        final long[] mForegroundUsageTimeInMs;
+        final long[] mBackgroundUsageTimeInMs;
+        final double[] mConsumePower;
+        // The entry of the first timestamp, or of the second one if the first has none.
+        final BatteryHistEntry[] mEntries;
+
+        TimestampPair(BatteryHistoryTable table, int index) {
+            final int next = index + 1;
+            mHasData = table.hasData(index) && table.hasData(next);
+            int size = 0;
+            if (mHasData) {
+                for (int keyIndex = 0; keyIndex < table.getKeyCount(); keyIndex++) {
+                    if (table.getEntry(index, keyIndex) != null
+                            || table.getEntry(next, keyIndex) != null) {
+                        size++;
+                    }
+                }
+            }
+            mKeyIndexes = new int[size];
+            mForegroundUsageTimeInMs = new long[size];
+            mBackgroundUsageTimeInMs = new long[size];
+            mConsumePower = new double[size];
+            mEntries = new BatteryHistEntry[size];
+            int position = 0;
+            for (int keyIndex = 0; position < size; keyIndex++) {
+                if (table.getEntry(index, keyIndex) == null
+                        && table.getEntry(next, keyIndex) == null) {
+                    continue;
+                }
+                mKeyIndexes[position] = keyIndex;
+                // Missing entries are recorded as zero in the table.
+                mForegroundUsageTimeInMs[position] = ConvertUtils.getDiffValue(
+                    table.getForegroundUsageTimeInMs(index, keyIndex),
+                    table.getForegroundUsageTimeInMs(next, keyIndex));
+                mBackgroundUsageTimeInMs[position] = ConvertUtils.getDiffValue(
+                    table.getBackgroundUsageTimeInMs(index, keyIndex),
+                    table.getBackgroundUsageTimeInMs(next, keyIndex));
+                mConsumePower[position] = ConvertUtils.getDiffValue(
+                    table.getConsumePower(index, keyIndex),
+                    table.getConsumePower(next, keyIndex));
+                mEntries[position] = ConvertUtils.selectBatteryHistEntry(
+                    table.getEntry(index, keyIndex), table.getEntry(next, keyIndex),
+                    /*entry3=*/ null);
+                position++;
+            }
+        }
+
+        /**
+         * Moves the pair to the table of a new load, whose timestamps at {@code index} hold the
+         * same values, using the key indexes of that table and its entries.
+         */
+        void update(BatteryHistoryTable table, int index, int[] keyIndexes) {
+            for (int position = 0; position < mKeyIndexes.length; position++) {
+                final int keyIndex = keyIndexes[mKeyIndexes[position]];
+                mKeyIndexes[position] = keyIndex;
+                mEntries[position] = ConvertUtils.selectBatteryHistEntry(
+                    table.getEntry(index, keyIndex), table.getEntry(index + 1, keyIndex),
+                    /*entry3=*/ null);
+            }
+        }
+    }
+
+    /** Assembles the usage of each time slot from its two pairs, reusing its arrays. */
+    private static final class SlotUsage {
+        private final long[] mForegroundUsageTimeInMs;
+        private final long[] mBackgroundUsageTimeInMs;
+        private final double[] mConsumePower;
+        private final BatteryHistEntry[] mEntries;
+
+        SlotUsage(int keyCount) {
+            mForegroundUsageTimeInMs = new long[keyCount];
+            mBackgroundUsageTimeInMs = new long[keyCount];
+            mConsumePower = new double[keyCount];
+            mEntries = new BatteryHistEntry[keyCount];
+        }
+
+        // Same as ConvertUtils.getSlotUsageList() computes it from the three timestamps.
+        List<BatteryDiffEntry> getSlotUsageList(Context context, TimestampPair first,
+                TimestampPair second, BatteryDiffEntry[] aggregatedEntries) {
+            final List<BatteryDiffEntry> entries = new ArrayList<>();
+            if (!first.mHasData || !second.mHasData) {
+                return entries;
+            }
+            add(first);
+            add(second);
+            double totalConsumePower = 0.0;
+            for (int keyIndex = 0; keyIndex < mEntries.length; keyIndex++) {
+                final BatteryHistEntry selectedBatteryEntry = mEntries[keyIndex];
+                if (selectedBatteryEntry == null) {
+                    continue;
+                }
+                final long foregroundUsageTimeInMs = mForegroundUsageTimeInMs[keyIndex];
+                final long backgroundUsageTimeInMs = mBackgroundUsageTimeInMs[keyIndex];
+                final double consumePower = mConsumePower[keyIndex];
+                mForegroundUsageTimeInMs[keyIndex] = 0;
+                mBackgroundUsageTimeInMs[keyIndex] = 0;
+                mConsumePower[keyIndex] = 0.0;
+                mEntries[keyIndex] = null;
+                // Excludes entry since we don't have enough data to calculate.
+                if (foregroundUsageTimeInMs == 0
+                        && backgroundUsageTimeInMs == 0
+                        && consumePower == 0) {
+                    continue;
+                }
+                final BatteryDiffEntry entry = ConvertUtils.createSlotDiffEntry(
+                    context, foregroundUsageTimeInMs, backgroundUsageTimeInMs, consumePower,
+                    selectedBatteryEntry);
+                totalConsumePower += entry.mConsumePower;
+                entries.add(entry);
+                ConvertUtils.addToAggregatedEntry(aggregatedEntries, keyIndex, entry);
+            }
+            for (BatteryDiffEntry entry : entries) {
+                entry.setTotalConsumePower(totalConsumePower);
+            }
+            return entries;
+        }
+
+        private void add(TimestampPair pair) {
+            for (int position = 0; position < pair.mKeyIndexes.length; position++) {
+                final int keyIndex = pair.mKeyIndexes[position];
+                mForegroundUsageTimeInMs[keyIndex] += pair.mForegroundUsageTimeInMs[position];
+                mBackgroundUsageTimeInMs[keyIndex] += pair.mBackgroundUsageTimeInMs[position];
+                mConsumePower[keyIndex] += pair.mConsumePower[position];
+                // The entry of the first pair takes precedence, like the earliest timestamp.
+                if (mEntries[keyIndex] == null) {
+                    mEntries[keyIndex] = pair.mEntries[position];
+                }
+            }
+        }
+    }
+}
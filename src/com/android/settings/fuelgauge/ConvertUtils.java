@@ -31,21 +31,16 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 import java.util.TimeZone;
 
 /** A utility class to convert data into another types. */
 public final class ConvertUtils {
     private static final boolean DEBUG = false;
     private static final String TAG = "ConvertUtils";
-    private static final Map<String, BatteryHistEntry> EMPTY_BATTERY_MAP = new HashMap<>();
-    private static final BatteryHistEntry EMPTY_BATTERY_HIST_ENTRY =
-        new BatteryHistEntry(new ContentValues());
     // Maximum total time value for each slot cumulative data at most 2 hours.
     private static final float TOTAL_TIME_THRESHOLD = DateUtils.HOUR_IN_MILLIS * 2;
 
@@ -178,155 +173,193 @@ public final class ConvertUtils {
         if (batteryHistoryMap == null || batteryHistoryMap.isEmpty()) {
             return new HashMap<>();
         }
+        return getIndexedUsageMap(
+            context,
+            timeSlotSize,
+            BatteryHistoryTable.create(batteryHistoryKeys, batteryHistoryMap),
+            purgeLowPercentageAndFakeData);
+    }
+
+    /**
+     * Gets indexed battery usage data for each corresponding time slot from the columnar
+     * {@code table}, whose timestamps are the sorted battery history keys.
+     */
+    static Map<Integer, List<BatteryDiffEntry>> getIndexedUsageMap(
+            final Context context,
+            final int timeSlotSize,
+            final BatteryHistoryTable table,
+            final boolean purgeLowPercentageAndFakeData) {
         final Map<Integer, List<BatteryDiffEntry>> resultMap = new HashMap<>();
+        // Aggregates the last 24 hours data by key index while each slot is computed.
+        final BatteryDiffEntry[] aggregatedEntries = new BatteryDiffEntry[table.getKeyCount()];
+        for (int index = 0; index < timeSlotSize; index++) {
+            resultMap.put(Integer.valueOf(index),
+                getSlotUsageList(context, table, index, aggregatedEntries));
+        }
+        putAggregatedUsageList(resultMap, aggregatedEntries, purgeLowPercentageAndFakeData);
+        return resultMap;
+    }
+
+    /**
+     * Puts the last 24 hours data aggregated from every slot into {@code resultMap}, then purges
+     * it if needed.
+     */
+    static void putAggregatedUsageList(
+            final Map<Integer, List<BatteryDiffEntry>> resultMap,
+            final BatteryDiffEntry[] aggregatedEntries,
+            final boolean purgeLowPercentageAndFakeData) {
+        final List<BatteryDiffEntry> resultList = new ArrayList<>();
+        double totalConsumePower = 0.0;
+        for (BatteryDiffEntry entry : aggregatedEntries) {
+            if (entry != null) {
+                resultList.add(entry);
+                totalConsumePower += entry.mConsumePower;
+            }
+        }
+        // Sets total 24 hours consume power data into all BatteryDiffEntry.
+        for (BatteryDiffEntry entry : resultList) {
+            entry.setTotalConsumePower(totalConsumePower);
+        }
+        resultMap.put(Integer.valueOf(BatteryChartView.SELECTED_INDEX_ALL), resultList);
+        if (purgeLowPercentageAndFakeData) {
+            purgeLowPercentageAndFakeData(resultMap);
+        }
+    }
+
+    /**
+     * Gets the usage data of a single time slot from the columnar {@code table}.
+     *
+     * @param aggregatedEntries the 24 hours data indexed by key, which every entry of the slot is
+     *     added into, or {@code null}
+     */
+    static List<BatteryDiffEntry> getSlotUsageList(
+            final Context context,
+            final BatteryHistoryTable table,
+            final int slot,
+            final BatteryDiffEntry[] aggregatedEntries) {
+        final List<BatteryDiffEntry> batteryDiffEntryList = new ArrayList<>();
         // Each time slot usage diff data =
         //     Math.abs(timestamp[i+2] data - timestamp[i+1] data) +
         //     Math.abs(timestamp[i+1] data - timestamp[i] data);
         // since we want to aggregate every two hours data into a single time slot.
         final int timestampStride = 2;
-        for (int index = 0; index < timeSlotSize; index++) {
-            final Long currentTimestamp =
-                Long.valueOf(batteryHistoryKeys[index * timestampStride]);
-            final Long nextTimestamp =
-                Long.valueOf(batteryHistoryKeys[index * timestampStride + 1]);
-            final Long nextTwoTimestamp =
-                Long.valueOf(batteryHistoryKeys[index * timestampStride + 2]);
-            // Fetches BatteryHistEntry data from corresponding time slot.
-            final Map<String, BatteryHistEntry> currentBatteryHistMap =
-                batteryHistoryMap.getOrDefault(currentTimestamp, EMPTY_BATTERY_MAP);
-            final Map<String, BatteryHistEntry> nextBatteryHistMap =
-                batteryHistoryMap.getOrDefault(nextTimestamp, EMPTY_BATTERY_MAP);
-            final Map<String, BatteryHistEntry> nextTwoBatteryHistMap =
-                batteryHistoryMap.getOrDefault(nextTwoTimestamp, EMPTY_BATTERY_MAP);
-            // We should not get the empty list since we have at least one fake data to record
-            // the battery level and status in each time slot, the empty list is used to
-            // represent there is no enough data to apply interpolation arithmetic.
-            if (currentBatteryHistMap.isEmpty()
-                    || nextBatteryHistMap.isEmpty()
-                    || nextTwoBatteryHistMap.isEmpty()) {
-                resultMap.put(Integer.valueOf(index), new ArrayList<BatteryDiffEntry>());
+        final int current = slot * timestampStride;
+        final int next = current + 1;
+        final int nextTwo = current + 2;
+        // We should not get the empty list since we have at least one fake data to record
+        // the battery level and status in each time slot, the empty list is used to
+        // represent there is no enough data to apply interpolation arithmetic.
+        if (!table.hasData(current) || !table.hasData(next) || !table.hasData(nextTwo)) {
+            return batteryDiffEntryList;
+        }
+
+        double totalConsumePower = 0.0;
+        // Calculates all packages diff usage data in a specific time slot, keys missing from
+        // all three timestamps are skipped by the zero usage check below.
+        for (int keyIndex = 0; keyIndex < table.getKeyCount(); keyIndex++) {
+            // Cumulative values is a specific time slot for a specific app.
+            long foregroundUsageTimeInMs =
+                getDiffValue(
+                    table.getForegroundUsageTimeInMs(current, keyIndex),
+                    table.getForegroundUsageTimeInMs(next, keyIndex),
+                    table.getForegroundUsageTimeInMs(nextTwo, keyIndex));
+            long backgroundUsageTimeInMs =
+                getDiffValue(
+                    table.getBackgroundUsageTimeInMs(current, keyIndex),
+                    table.getBackgroundUsageTimeInMs(next, keyIndex),
+                    table.getBackgroundUsageTimeInMs(nextTwo, keyIndex));
+            double consumePower =
+                getDiffValue(
+                    table.getConsumePower(current, keyIndex),
+                    table.getConsumePower(next, keyIndex),
+                    table.getConsumePower(nextTwo, keyIndex));
+            // Excludes entry since we don't have enough data to calculate.
+            if (foregroundUsageTimeInMs == 0
+                    && backgroundUsageTimeInMs == 0
+                    && consumePower == 0) {
                 continue;
             }
-
-            // Collects all keys in these three time slot records as all populations.
-            final Set<String> allBatteryHistEntryKeys = new HashSet<>();
-            allBatteryHistEntryKeys.addAll(currentBatteryHistMap.keySet());
-            allBatteryHistEntryKeys.addAll(nextBatteryHistMap.keySet());
-            allBatteryHistEntryKeys.addAll(nextTwoBatteryHistMap.keySet());
-
-            double totalConsumePower = 0.0;
-            final List<BatteryDiffEntry> batteryDiffEntryList = new ArrayList<>();
-            // Adds a specific time slot BatteryDiffEntry list into result map.
-            resultMap.put(Integer.valueOf(index), batteryDiffEntryList);
-
-            // Calculates all packages diff usage data in a specific time slot.
-            for (String key : allBatteryHistEntryKeys) {
-                final BatteryHistEntry currentEntry =
-                    currentBatteryHistMap.getOrDefault(key, EMPTY_BATTERY_HIST_ENTRY);
-                final BatteryHistEntry nextEntry =
-                    nextBatteryHistMap.getOrDefault(key, EMPTY_BATTERY_HIST_ENTRY);
-                final BatteryHistEntry nextTwoEntry =
-                    nextTwoBatteryHistMap.getOrDefault(key, EMPTY_BATTERY_HIST_ENTRY);
-                // Cumulative values is a specific time slot for a specific app.
-                long foregroundUsageTimeInMs =
-                    getDiffValue(
-                        currentEntry.mForegroundUsageTimeInMs,
-                        nextEntry.mForegroundUsageTimeInMs,
-                        nextTwoEntry.mForegroundUsageTimeInMs);
-                long backgroundUsageTimeInMs =
-                    getDiffValue(
-                        currentEntry.mBackgroundUsageTimeInMs,
-                        nextEntry.mBackgroundUsageTimeInMs,
-                        nextTwoEntry.mBackgroundUsageTimeInMs);
-                double consumePower =
-                    getDiffValue(
-                        currentEntry.mConsumePower,
-                        nextEntry.mConsumePower,
-                        nextTwoEntry.mConsumePower);
-                // Excludes entry since we don't have enough data to calculate.
-                if (foregroundUsageTimeInMs == 0
-                        && backgroundUsageTimeInMs == 0
-                        && consumePower == 0) {
-                    continue;
-                }
-                final BatteryHistEntry selectedBatteryEntry =
-                    selectBatteryHistEntry(currentEntry, nextEntry, nextTwoEntry);
-                if (selectedBatteryEntry == null) {
-                    continue;
-                }
-                // Forces refine the cumulative value since it may introduce deviation
-                // error since we will apply the interpolation arithmetic.
-                final float totalUsageTimeInMs =
-                    foregroundUsageTimeInMs + backgroundUsageTimeInMs;
-                if (totalUsageTimeInMs > TOTAL_TIME_THRESHOLD) {
-                    final float ratio = TOTAL_TIME_THRESHOLD / totalUsageTimeInMs;
-                    if (DEBUG) {
-                        Log.w(TAG, String.format("abnormal usage time %d|%d for:\n%s",
-                                Duration.ofMillis(foregroundUsageTimeInMs).getSeconds(),
-                                Duration.ofMillis(backgroundUsageTimeInMs).getSeconds(),
-                                currentEntry));
-                    }
-                    foregroundUsageTimeInMs =
-                        Math.round(foregroundUsageTimeInMs * ratio);
-                    backgroundUsageTimeInMs =
-                        Math.round(backgroundUsageTimeInMs * ratio);
-                    consumePower = consumePower * ratio;
-                }
-                totalConsumePower += consumePower;
-                batteryDiffEntryList.add(
-                    new BatteryDiffEntry(
-                        context,
-                        foregroundUsageTimeInMs,
-                        backgroundUsageTimeInMs,
-                        consumePower,
-                        selectedBatteryEntry));
+            final BatteryHistEntry selectedBatteryEntry =
+                selectBatteryHistEntry(
+                    table.getEntry(current, keyIndex),
+                    table.getEntry(next, keyIndex),
+                    table.getEntry(nextTwo, keyIndex));
+            final BatteryDiffEntry diffEntry = createSlotDiffEntry(
+                context, foregroundUsageTimeInMs, backgroundUsageTimeInMs, consumePower,
+                selectedBatteryEntry);
+            if (diffEntry == null) {
+                continue;
             }
-            // Sets total consume power data into all BatteryDiffEntry in the same slot.
-            for (BatteryDiffEntry diffEntry : batteryDiffEntryList) {
-                diffEntry.setTotalConsumePower(totalConsumePower);
+            totalConsumePower += diffEntry.mConsumePower;
+            batteryDiffEntryList.add(diffEntry);
+            if (aggregatedEntries != null) {
+                addToAggregatedEntry(aggregatedEntries, keyIndex, diffEntry);
             }
         }
-        insert24HoursData(BatteryChartView.SELECTED_INDEX_ALL, resultMap);
-        if (purgeLowPercentageAndFakeData) {
-            purgeLowPercentageAndFakeData(resultMap);
+        // Sets total consume power data into all BatteryDiffEntry in the same slot.
+        for (BatteryDiffEntry diffEntry : batteryDiffEntryList) {
+            diffEntry.setTotalConsumePower(totalConsumePower);
         }
-        return resultMap;
+        return batteryDiffEntryList;
     }
 
-    private static void insert24HoursData(
-            final int desiredIndex,
-            final Map<Integer, List<BatteryDiffEntry>> indexedUsageMap) {
-        final Map<String, BatteryDiffEntry> resultMap = new HashMap<>();
-        double totalConsumePower = 0.0;
-        // Loops for all BatteryDiffEntry and aggregate them together.
-        for (List<BatteryDiffEntry> entryList : indexedUsageMap.values()) {
-            for (BatteryDiffEntry entry : entryList) {
-                final String key = entry.mBatteryHistEntry.getKey();
-                final BatteryDiffEntry oldBatteryDiffEntry = resultMap.get(key);
-                // Creates new BatteryDiffEntry if we don't have it.
-                if (oldBatteryDiffEntry == null) {
-                    resultMap.put(key, entry.clone());
-                } else {
-                    // Sums up some fields data into the existing one.
-                    oldBatteryDiffEntry.mForegroundUsageTimeInMs +=
-                        entry.mForegroundUsageTimeInMs;
-                    oldBatteryDiffEntry.mBackgroundUsageTimeInMs +=
-                        entry.mBackgroundUsageTimeInMs;
-                    oldBatteryDiffEntry.mConsumePower += entry.mConsumePower;
-                }
-                totalConsumePower += entry.mConsumePower;
+    /**
+     * Creates the usage data of a single key in a time slot from its diff values, or returns
+     * {@code null} if the key has no entry over the slot.
+     */
+    static BatteryDiffEntry createSlotDiffEntry(
+            final Context context,
+            long foregroundUsageTimeInMs,
+            long backgroundUsageTimeInMs,
+            double consumePower,
+            final BatteryHistEntry selectedBatteryEntry) {
+        if (selectedBatteryEntry == null) {
+            return null;
+        }
+        // Forces refine the cumulative value since it may introduce deviation
+        // error since we will apply the interpolation arithmetic.
+        final float totalUsageTimeInMs =
+            foregroundUsageTimeInMs + backgroundUsageTimeInMs;
+        if (totalUsageTimeInMs > TOTAL_TIME_THRESHOLD) {
+            final float ratio = TOTAL_TIME_THRESHOLD / totalUsageTimeInMs;
+            if (DEBUG) {
+                Log.w(TAG, String.format("abnormal usage time %d|%d for:\n%s",
+                        Duration.ofMillis(foregroundUsageTimeInMs).getSeconds(),
+                        Duration.ofMillis(backgroundUsageTimeInMs).getSeconds(),
+                        selectedBatteryEntry));
             }
+            foregroundUsageTimeInMs =
+                Math.round(foregroundUsageTimeInMs * ratio);
+            backgroundUsageTimeInMs =
+                Math.round(backgroundUsageTimeInMs * ratio);
+            consumePower = consumePower * ratio;
         }
-        final List<BatteryDiffEntry> resultList = new ArrayList<>(resultMap.values());
-        // Sets total 24 hours consume power data into all BatteryDiffEntry.
-        for (BatteryDiffEntry entry : resultList) {
-            entry.setTotalConsumePower(totalConsumePower);
+        return new BatteryDiffEntry(
+            context,
+            foregroundUsageTimeInMs,
+            backgroundUsageTimeInMs,
+            consumePower,
+            selectedBatteryEntry);
+    }
+
+    static void addToAggregatedEntry(
+            final BatteryDiffEntry[] aggregatedEntries,
+            final int keyIndex,
+            final BatteryDiffEntry entry) {
+        final BatteryDiffEntry aggregatedEntry = aggregatedEntries[keyIndex];
+        // Creates new BatteryDiffEntry if we don't have it.
+        if (aggregatedEntry == null) {
+            aggregatedEntries[keyIndex] = entry.clone();
+        } else {
+            // Sums up some fields data into the existing one.
+            aggregatedEntry.mForegroundUsageTimeInMs += entry.mForegroundUsageTimeInMs;
+            aggregatedEntry.mBackgroundUsageTimeInMs += entry.mBackgroundUsageTimeInMs;
+            aggregatedEntry.mConsumePower += entry.mConsumePower;
         }
-        indexedUsageMap.put(Integer.valueOf(desiredIndex), resultList);
     }
 
     // Removes low percentage data and fake usage data, which will be zero value.
-    private static void purgeLowPercentageAndFakeData(
+    static void purgeLowPercentageAndFakeData(
             final Map<Integer, List<BatteryDiffEntry>> indexedUsageMap) {
         for (List<BatteryDiffEntry> entries : indexedUsageMap.values()) {
             final Iterator<BatteryDiffEntry> iterator = entries.iterator();
@@ -341,24 +374,32 @@ public final class ConvertUtils {
     }
 
     private static long getDiffValue(long v1, long v2, long v3) {
-        return (v2 > v1 ? v2 - v1 : 0) + (v3 > v2 ? v3 - v2 : 0);
+        return getDiffValue(v1, v2) + getDiffValue(v2, v3);
     }
 
     private static double getDiffValue(double v1, double v2, double v3) {
-        return (v2 > v1 ? v2 - v1 : 0) + (v3 > v2 ? v3 - v2 : 0);
+        return getDiffValue(v1, v2) + getDiffValue(v2, v3);
+    }
+
+    /** Gets the usage between two adjacent timestamps, ignoring a reset cumulative value. */
+    static long getDiffValue(long v1, long v2) {
+        return v2 > v1 ? v2 - v1 : 0;
+    }
+
+    static double getDiffValue(double v1, double v2) {
+        return v2 > v1 ? v2 - v1 : 0;
     }
 
-    private static BatteryHistEntry selectBatteryHistEntry(
+    static BatteryHistEntry selectBatteryHistEntry(
             BatteryHistEntry entry1,
             BatteryHistEntry entry2,
             BatteryHistEntry entry3) {
-        if (entry1 != null && entry1 != EMPTY_BATTERY_HIST_ENTRY) {
+        if (entry1 != null) {
             return entry1;
-        } else if (entry2 != null && entry2 != EMPTY_BATTERY_HIST_ENTRY) {
+        } else if (entry2 != null) {
             return entry2;
         } else {
-            return entry3 != null && entry3 != EMPTY_BATTERY_HIST_ENTRY
-                ? entry3 : null;
+            return entry3;
         }
     }
 
@@ -114,6 +114,10 @@ public class PowerGaugePreference extends AppPreference {
     @Override
     public void onBindViewHolder(PreferenceViewHolder view) {
         super.onBindViewHolder(view);
+        if (mInfo != null) {
+            // Resolves the label and icon of the shown entries first.
+            BatteryEntry.prioritizeRequest(mInfo.getUid());
+        }
 
         final TextView subtitle = (TextView) view.findViewById(R.id.widget_summary);
         subtitle.setText(mProgress);
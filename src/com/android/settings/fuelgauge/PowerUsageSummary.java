@@ -148,6 +148,11 @@ public class PowerUsageSummary extends PowerUsageBase implements
                 }
             };
 
+    @Override
+    protected boolean isParalleledControllers() {
+        return true;
+    }
+
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
@@ -17,9 +17,7 @@
 package com.android.settings.fuelgauge.batterytip;
 
 import android.content.Context;
-import android.content.pm.PackageManager;
 import android.os.UserHandle;
-import android.util.IconDrawableFactory;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -30,6 +28,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.android.settings.R;
 import com.android.settings.Utils;
+import com.android.settings.utils.AppIconCache;
 
 import java.util.List;
 
@@ -38,8 +37,6 @@ import java.util.List;
  */
 public class HighUsageAdapter extends RecyclerView.Adapter<HighUsageAdapter.ViewHolder> {
     private final Context mContext;
-    private final IconDrawableFactory mIconDrawableFactory;
-    private final PackageManager mPackageManager;
     private final List<AppInfo> mHighUsageAppList;
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
@@ -60,8 +57,6 @@ public class HighUsageAdapter extends RecyclerView.Adapter<HighUsageAdapter.View
     public HighUsageAdapter(Context context, List<AppInfo> highUsageAppList) {
         mContext = context;
         mHighUsageAppList = highUsageAppList;
-        mIconDrawableFactory = IconDrawableFactory.newInstance(context);
-        mPackageManager = context.getPackageManager();
     }
 
     @Override
@@ -75,7 +70,7 @@ public class HighUsageAdapter extends RecyclerView.Adapter<HighUsageAdapter.View
     public void onBindViewHolder(ViewHolder holder, int position) {
         final AppInfo app = mHighUsageAppList.get(position);
         holder.appIcon.setImageDrawable(
-                Utils.getBadgedIcon(mIconDrawableFactory, mPackageManager, app.packageName,
+                AppIconCache.getInstance(mContext).getBadgedIcon(mContext, app.packageName,
                         UserHandle.getUserId(app.uid)));
         CharSequence label = Utils.getApplicationLabel(mContext, app.packageName);
         if (label == null) {
@@ -34,6 +34,7 @@ import com.android.settings.Utils;
 import com.android.settings.core.SubSettingLauncher;
 import com.android.settings.dashboard.DashboardFragment;
 import com.android.settings.search.BaseSearchIndexProvider;
+import com.android.settings.search.NonIndexableKeysInvalidation;
 import com.android.settings.support.SupportPreferenceController;
 import com.android.settingslib.core.instrumentation.Instrumentable;
 import com.android.settingslib.search.SearchIndexable;
@@ -155,5 +156,12 @@ public class TopLevelSettings extends DashboardFragment implements
                     // Never searchable, all entries in this page are already indexed elsewhere.
                     return false;
                 }
+
+                @Override
+                public NonIndexableKeysInvalidation getNonIndexableKeysInvalidation(
+                        Context context) {
+                    // The page is never searchable, so all of its keys stay non-indexable.
+                    return new NonIndexableKeysInvalidation.Builder().build();
+                }
             };
 }
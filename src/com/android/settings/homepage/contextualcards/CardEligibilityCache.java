@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.homepage.contextualcards;
+
+import static android.app.slice.Slice.HINT_ERROR;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.slice.Slice;
+import androidx.slice.SliceViewManager;
+
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Remembers the slices bound by {@link EligibleCardChecker} for a short time, so that reloading
+ * the cards while the homepage is shown does not bind every card slice again.
+ *
+ * <p>Only slices which bound successfully are kept. An entry is dropped once it is older than
+ * {@link #TTL_MS}, or as soon as its slice notifies a change of its {@link Uri}. The slice stays
+ * pinned while its entry is kept, so that its provider keeps notifying changes. Every entry is
+ * dropped by {@link #clear()} once the homepage stops, so that no slice stays pinned or observed
+ * in the background.
+ */
+class CardEligibilityCache {
+
+    private static final String TAG = "CardEligibilityCache";
+
+    private static final long TTL_MS = 30000;
+
+    private static CardEligibilityCache sInstance;
+
+    /**
+     * Pins the slices of the kept entries.
+     */
+    interface SlicePinner {
+        void pin(Uri uri);
+
+        void unpin(Uri uri);
+    }
+
+    private final Context mContext;
+    private final long mTtlMs;
+    private final SlicePinner mPinner;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Map<Uri, Entry> mEntries = new ArrayMap<>();
+    private final Map<Uri, ContentObserver> mObservers = new ArrayMap<>();
+
+    // Incremented on every invalidation, to drop slices bound before it.
+    private int mGeneration;
+
+    static synchronized CardEligibilityCache getInstance(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            sInstance = new CardEligibilityCache(appContext, TTL_MS,
+                    new ViewManagerPinner(appContext));
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    CardEligibilityCache(Context context, long ttlMs, SlicePinner pinner) {
+        mContext = context;
+        mTtlMs = ttlMs;
+        mPinner = pinner;
+    }
+
+    /**
+     * @return the slice last bound for {@code uri} if it is still fresh, otherwise the result of
+     * {@code bind}, which may be {@code null}.
+     */
+    Slice getSlice(Uri uri, Function<Uri, Slice> bind) {
+        final int generation;
+        synchronized (this) {
+            final Entry entry = mEntries.get(uri);
+            if (entry != null && SystemClock.elapsedRealtime() < entry.mExpiry) {
+                return entry.mSlice;
+            }
+            generation = mGeneration;
+        }
+
+        final Slice slice = bind.apply(uri);
+        if (slice == null || slice.hasHint(HINT_ERROR)) {
+            // The next load may succeed.
+            return slice;
+        }
+        final Entry entry = new Entry(slice, SystemClock.elapsedRealtime() + mTtlMs);
+        synchronized (this) {
+            if (generation != mGeneration) {
+                return slice;
+            }
+            if (mEntries.put(uri, entry) == null) {
+                mPinner.pin(uri);
+            }
+            observe(uri);
+        }
+        mHandler.postDelayed(() -> expire(uri, entry), mTtlMs);
+        return slice;
+    }
+
+    private synchronized void invalidate(Uri uri) {
+        mGeneration++;
+        if (mEntries.remove(uri) != null) {
+            mPinner.unpin(uri);
+        }
+    }
+
+    /**
+     * Drops every entry, unpins their slices and stops observing them.
+     */
+    synchronized void clear() {
+        mGeneration++;
+        mHandler.removeCallbacksAndMessages(null /* token */);
+        for (Uri uri : mEntries.keySet()) {
+            mPinner.unpin(uri);
+        }
+        mEntries.clear();
+        for (ContentObserver observer : mObservers.values()) {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+        }
+        mObservers.clear();
+    }
+
+    private synchronized void expire(Uri uri, Entry entry) {
+        // The entry may have been replaced by a newer one, which expires later.
+        if (mEntries.get(uri) == entry) {
+            mEntries.remove(uri);
+            mPinner.unpin(uri);
+        }
+    }
+
+    private void observe(Uri uri) {
+        if (mObservers.containsKey(uri)) {
+            return;
+        }
+        final ContentObserver observer = new ContentObserver(null /* handler */) {
+            @Override
+            public void onChange(boolean selfChange) {
+                invalidate(uri);
+            }
+        };
+        try {
+            mContext.getContentResolver().registerContentObserver(uri,
+                    false /* notifyForDescendants */, observer);
+            mObservers.put(uri, observer);
+        } catch (SecurityException e) {
+            // Without an observer, the entry is only dropped when it expires.
+            Log.w(TAG, "Cannot observe " + uri, e);
+        }
+    }
+
+    /**
+     * Pins slices with a trivial callback, like {@link EligibleCardChecker#bindSlice} does while
+     * binding.
+     */
+    private static class ViewManagerPinner implements SlicePinner {
+        private final SliceViewManager mManager;
+        private final Map<Uri, SliceViewManager.SliceCallback> mCallbacks = new ArrayMap<>();
+
+        ViewManagerPinner(Context context) {
+            mManager = SliceViewManager.getInstance(context);
+        }
+
+        @Override
+        public void pin(Uri uri) {
+            final SliceViewManager.SliceCallback callback = slice -> { };
+            try {
+                mManager.registerSliceCallback(uri, callback);
+                mCallbacks.put(uri, callback);
+            } catch (SecurityException e) {
+                Log.w(TAG, "Cannot pin " + uri, e);
+            }
+        }
+
+        @Override
+        public void unpin(Uri uri) {
+            final SliceViewManager.SliceCallback callback = mCallbacks.remove(uri);
+            if (callback == null) {
+                return;
+            }
+            // Unpin in the same SerialExecutor of AsyncTask as the observer of the callback.
+            ThreadUtils.postOnMainThread(() -> AsyncTask.execute(() -> {
+                try {
+                    mManager.unregisterSliceCallback(uri, callback);
+                } catch (SecurityException e) {
+                    Log.d(TAG, "No permission currently: " + e);
+                }
+            }));
+        }
+    }
+
+    private static class Entry {
+        final Slice mSlice;
+        final long mExpiry;
+
+        Entry(Slice slice, long expiry) {
+            mSlice = slice;
+            mExpiry = expiry;
+        }
+    }
+}
@@ -41,9 +41,10 @@ import com.android.settingslib.utils.AsyncLoaderCompat;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -57,6 +58,11 @@ public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>
 
     private static final String TAG = "ContextualCardLoader";
     private static final long ELIGIBILITY_CHECKER_TIMEOUT_MS = 400;
+    private static final long ELIGIBILITY_CHECKER_KEEP_ALIVE_SECONDS = 30;
+    private static final int ELIGIBILITY_CHECKER_POOL_SIZE = 4;
+    private static final int ELIGIBILITY_CHECKER_QUEUE_SIZE = 32;
+
+    private static ExecutorService sEligibilityExecutor;
 
     private final ContentObserver mObserver = new ContentObserver(
             new Handler(Looper.getMainLooper())) {
@@ -93,6 +99,8 @@ public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>
     protected void onStopLoading() {
         super.onStopLoading();
         mContext.getContentResolver().unregisterContentObserver(mObserver);
+        // Don't keep the card slices pinned while the homepage is not shown.
+        CardEligibilityCache.getInstance(mContext).clear();
     }
 
     @Override
@@ -188,12 +196,13 @@ public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>
             return candidates;
         }
 
-        final ExecutorService executor = Executors.newFixedThreadPool(candidates.size());
+        final ExecutorService executor = getEligibilityExecutor();
+        final CardEligibilityCache eligibilityCache = CardEligibilityCache.getInstance(mContext);
         final List<ContextualCard> cards = new ArrayList<>();
         List<Future<ContextualCard>> eligibleCards = new ArrayList<>();
 
         final List<EligibleCardChecker> checkers = candidates.stream()
-                .map(card -> new EligibleCardChecker(mContext, card))
+                .map(card -> new EligibleCardChecker(mContext, card, eligibilityCache))
                 .collect(Collectors.toList());
         try {
             eligibleCards = executor.invokeAll(checkers, ELIGIBILITY_CHECKER_TIMEOUT_MS,
@@ -201,11 +210,14 @@ public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>
         } catch (InterruptedException e) {
             Log.w(TAG, "Failed to get eligible states for all cards", e);
         }
-        executor.shutdown();
 
         // Collect future and eligible cards
         for (int i = 0; i < eligibleCards.size(); i++) {
             final Future<ContextualCard> cardFuture = eligibleCards.get(i);
+            if (!cardFuture.isDone()) {
+                // Interrupt the check so that it does not hold a thread of the pool.
+                cardFuture.cancel(true /* mayInterruptIfRunning */);
+            }
             if (cardFuture.isCancelled()) {
                 Log.w(TAG, "Timeout getting eligible state for card: "
                         + candidates.get(i).getSliceUri());
@@ -224,6 +236,26 @@ public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>
         return cards;
     }
 
+    /**
+     * @return the executor shared by all loaders to check card eligibility. It runs a few checks
+     * at a time and queues the others. Checks which don't fit in the queue are dropped, and are
+     * treated like checks which timed out. Threads are reused across loads and only kept while
+     * cards are being loaded.
+     */
+    private static synchronized ExecutorService getEligibilityExecutor() {
+        if (sEligibilityExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    ELIGIBILITY_CHECKER_POOL_SIZE /* corePoolSize */,
+                    ELIGIBILITY_CHECKER_POOL_SIZE /* maximumPoolSize */,
+                    ELIGIBILITY_CHECKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(ELIGIBILITY_CHECKER_QUEUE_SIZE),
+                    new ThreadPoolExecutor.DiscardPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            sEligibilityExecutor = executor;
+        }
+        return sEligibilityExecutor;
+    }
+
     private boolean isLargeCard(ContextualCard card) {
         return card.getSliceUri().equals(CONTEXTUAL_WIFI_SLICE_URI)
                 || card.getSliceUri().equals(BLUETOOTH_DEVICES_SLICE_URI);
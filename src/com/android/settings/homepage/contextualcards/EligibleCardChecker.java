@@ -44,12 +44,24 @@ public class EligibleCardChecker implements Callable<ContextualCard> {
 
     private final Context mContext;
 
+    private final CardEligibilityCache mEligibilityCache;
+
     @VisibleForTesting
     ContextualCard mCard;
 
     EligibleCardChecker(Context context, ContextualCard card) {
+        this(context, card, null /* eligibilityCache */);
+    }
+
+    /**
+     * @param eligibilityCache where to reuse recently bound slices from, or {@code null} to always
+     *                         bind the slice
+     */
+    EligibleCardChecker(Context context, ContextualCard card,
+            CardEligibilityCache eligibilityCache) {
         mContext = context;
         mCard = card;
+        mEligibilityCache = eligibilityCache;
     }
 
     @Override
@@ -93,7 +105,9 @@ public class EligibleCardChecker implements Callable<ContextualCard> {
             return false;
         }
 
-        final Slice slice = bindSlice(uri);
+        final Slice slice = mEligibilityCache != null
+                ? mEligibilityCache.getSlice(uri, this::bindSlice)
+                : bindSlice(uri);
 
         if (slice == null || slice.hasHint(HINT_ERROR)) {
             Log.w(TAG, "Failed to bind slice, not eligible for display " + uri);
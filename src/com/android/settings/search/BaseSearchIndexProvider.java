@@ -167,6 +167,16 @@ public class BaseSearchIndexProvider implements Indexable.SearchIndexProvider {
         return null;
     }
 
+    /**
+     * Returns the events which can change the result of {@link #getNonIndexableKeys(Context)}.
+     * Override this to let the search index cache the keys until one of them happens. A
+     * declaration without any event keeps the keys for the life of the process. By default the
+     * keys are recomputed on every query.
+     */
+    public NonIndexableKeysInvalidation getNonIndexableKeysInvalidation(Context context) {
+        return null;
+    }
+
     /**
      * Returns true if the page should be considered in search query. If return false, entire page
      * will be suppressed during search query.
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.UserManager;
+import android.telephony.CarrierConfigManager;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settingslib.search.Indexable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Caches the non-indexable keys of each {@link BaseSearchIndexProvider} which declares a
+ * {@link NonIndexableKeysInvalidation}. A provider is only recomputed once one of its declared
+ * sources changed; providers without a declaration are recomputed on every query.
+ *
+ * <p>Declarations are only queried once per provider, and keys are always computed outside of
+ * the lock so that providers can be queried in parallel.
+ */
+public class NonIndexableKeysCache {
+
+    private static final String TAG = "NonIndexableKeysCache";
+
+    private final Map<Indexable.SearchIndexProvider, Entry> mEntries = new ArrayMap<>();
+    private final Set<Indexable.SearchIndexProvider> mUncachedProviders = new ArraySet<>();
+    private final Map<Uri, Set<Entry>> mUriEntries = new ArrayMap<>();
+    private final Set<Entry> mPackageEntries = new ArraySet<>();
+    private final Set<Entry> mUserEntries = new ArraySet<>();
+    private final Set<Entry> mCarrierConfigEntries = new ArraySet<>();
+
+    private Context mContext;
+    private BroadcastReceiver mPackageReceiver;
+    private BroadcastReceiver mUserReceiver;
+    private BroadcastReceiver mCarrierConfigReceiver;
+
+    /**
+     * Returns the non-indexable keys of {@code provider}, from the cache when they are still
+     * valid, or from {@code compute} otherwise.
+     */
+    public List<String> get(Context context, Indexable.SearchIndexProvider provider,
+            Supplier<List<String>> compute) {
+        if (!(provider instanceof BaseSearchIndexProvider)) {
+            return compute.get();
+        }
+        final Entry entry = getEntry(context, (BaseSearchIndexProvider) provider);
+        if (entry == null) {
+            return compute.get();
+        }
+        final int version;
+        synchronized (this) {
+            if (entry.mKeys != null) {
+                return new ArrayList<>(entry.mKeys);
+            }
+            version = entry.mVersion;
+        }
+
+        final List<String> keys = compute.get();
+        synchronized (this) {
+            // Drop the result if a source changed while it was computed.
+            if (keys != null && version == entry.mVersion) {
+                entry.mKeys = new ArrayList<>(keys);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return the entry of {@code provider}, or {@code null} if its keys are not cacheable.
+     */
+    private synchronized Entry getEntry(Context context, BaseSearchIndexProvider provider) {
+        if (mUncachedProviders.contains(provider)) {
+            return null;
+        }
+        Entry entry = mEntries.get(provider);
+        if (entry == null) {
+            final NonIndexableKeysInvalidation invalidation =
+                    provider.getNonIndexableKeysInvalidation(context);
+            if (invalidation == null) {
+                mUncachedProviders.add(provider);
+                return null;
+            }
+            entry = new Entry();
+            mEntries.put(provider, entry);
+            register(context, entry, invalidation);
+        }
+        return entry;
+    }
+
+    @VisibleForTesting
+    synchronized boolean isCached(Indexable.SearchIndexProvider provider) {
+        final Entry entry = mEntries.get(provider);
+        return entry != null && entry.mKeys != null;
+    }
+
+    @VisibleForTesting
+    synchronized void invalidateUri(Uri uri) {
+        invalidate(mUriEntries.get(uri));
+    }
+
+    @VisibleForTesting
+    synchronized void invalidatePackages() {
+        invalidate(mPackageEntries);
+    }
+
+    @VisibleForTesting
+    synchronized void invalidateUsers() {
+        invalidate(mUserEntries);
+    }
+
+    @VisibleForTesting
+    synchronized void invalidateCarrierConfig() {
+        invalidate(mCarrierConfigEntries);
+    }
+
+    private void invalidate(Set<Entry> entries) {
+        if (entries == null) {
+            return;
+        }
+        for (Entry entry : entries) {
+            entry.mKeys = null;
+            entry.mVersion++;
+        }
+    }
+
+    private void register(Context context, Entry entry,
+            NonIndexableKeysInvalidation invalidation) {
+        if (mContext == null) {
+            mContext = context.getApplicationContext();
+        }
+        for (Uri uri : invalidation.getUris()) {
+            Set<Entry> entries = mUriEntries.get(uri);
+            if (entries == null) {
+                entries = new ArraySet<>();
+                mUriEntries.put(uri, entries);
+                mContext.getContentResolver().registerContentObserver(uri,
+                        false /* notifyForDescendants */, new ContentObserver(null /* handler */) {
+                            @Override
+                            public void onChange(boolean selfChange) {
+                                invalidateUri(uri);
+                            }
+                        });
+            }
+            entries.add(entry);
+        }
+        if (invalidation.isOnPackageChange()) {
+            if (mPackageReceiver == null) {
+                mPackageReceiver = new InvalidationReceiver(this::invalidatePackages);
+                final IntentFilter filter = new IntentFilter();
+                filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+                filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+                filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+                filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+                filter.addDataScheme("package");
+                mContext.registerReceiver(mPackageReceiver, filter);
+            }
+            mPackageEntries.add(entry);
+        }
+        if (invalidation.isOnUserChange()) {
+            if (mUserReceiver == null) {
+                mUserReceiver = new InvalidationReceiver(this::invalidateUsers);
+                final IntentFilter filter = new IntentFilter();
+                filter.addAction(Intent.ACTION_USER_ADDED);
+                filter.addAction(Intent.ACTION_USER_REMOVED);
+                filter.addAction(Intent.ACTION_USER_SWITCHED);
+                filter.addAction(Intent.ACTION_MANAGED_PROFILE_ADDED);
+                filter.addAction(Intent.ACTION_MANAGED_PROFILE_REMOVED);
+                filter.addAction(Intent.ACTION_MANAGED_PROFILE_AVAILABLE);
+                filter.addAction(Intent.ACTION_MANAGED_PROFILE_UNAVAILABLE);
+                filter.addAction(UserManager.ACTION_USER_RESTRICTIONS_CHANGED);
+                mContext.registerReceiver(mUserReceiver, filter);
+            }
+            mUserEntries.add(entry);
+        }
+        if (invalidation.isOnCarrierConfigChange()) {
+            if (mCarrierConfigReceiver == null) {
+                mCarrierConfigReceiver = new InvalidationReceiver(this::invalidateCarrierConfig);
+                mContext.registerReceiver(mCarrierConfigReceiver,
+                        new IntentFilter(CarrierConfigManager.ACTION_CARRIER_CONFIG_CHANGED));
+            }
+            mCarrierConfigEntries.add(entry);
+        }
+    }
+
+    private static class Entry {
+        List<String> mKeys;
+        int mVersion;
+    }
+
+    private static class InvalidationReceiver extends BroadcastReceiver {
+        private final Runnable mInvalidate;
+
+        InvalidationReceiver(Runnable invalidate) {
+            mInvalidate = invalidate;
+        }
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.d(TAG, "Invalidated by " + intent.getAction());
+            mInvalidate.run();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes the events which can change the non-indexable keys of a
+ * {@link BaseSearchIndexProvider}. Until one of them happens, the keys are served from
+ * {@link NonIndexableKeysCache}.
+ */
+public class NonIndexableKeysInvalidation {
+
+    private final List<Uri> mUris;
+    private final boolean mOnPackageChange;
+    private final boolean mOnUserChange;
+    private final boolean mOnCarrierConfigChange;
+
+    private NonIndexableKeysInvalidation(Builder builder) {
+        mUris = Collections.unmodifiableList(builder.mUris);
+        mOnPackageChange = builder.mOnPackageChange;
+        mOnUserChange = builder.mOnUserChange;
+        mOnCarrierConfigChange = builder.mOnCarrierConfigChange;
+    }
+
+    /**
+     * @return the Settings URIs whose changes invalidate the keys.
+     */
+    public List<Uri> getUris() {
+        return mUris;
+    }
+
+    /**
+     * @return {@code true} if the keys are invalidated when a package is added, removed or
+     * changed.
+     */
+    public boolean isOnPackageChange() {
+        return mOnPackageChange;
+    }
+
+    /**
+     * @return {@code true} if the keys are invalidated when a user or a profile is added,
+     * removed, switched to or made (un)available, or when user restrictions change.
+     */
+    public boolean isOnUserChange() {
+        return mOnUserChange;
+    }
+
+    /**
+     * @return {@code true} if the keys are invalidated when the carrier config changes.
+     */
+    public boolean isOnCarrierConfigChange() {
+        return mOnCarrierConfigChange;
+    }
+
+    public static class Builder {
+        private final List<Uri> mUris = new ArrayList<>();
+        private boolean mOnPackageChange;
+        private boolean mOnUserChange;
+        private boolean mOnCarrierConfigChange;
+
+        /**
+         * Invalidates the keys when the setting behind {@code uri} changes, for example
+         * {@code Settings.Secure.getUriFor(name)}.
+         */
+        public Builder addUri(Uri uri) {
+            mUris.add(uri);
+            return this;
+        }
+
+        public Builder setOnPackageChange(boolean onPackageChange) {
+            mOnPackageChange = onPackageChange;
+            return this;
+        }
+
+        public Builder setOnUserChange(boolean onUserChange) {
+            mOnUserChange = onUserChange;
+            return this;
+        }
+
+        public Builder setOnCarrierConfigChange(boolean onCarrierConfigChange) {
+            mOnCarrierConfigChange = onCarrierConfigChange;
+            return this;
+        }
+
+        public NonIndexableKeysInvalidation build() {
+            return new NonIndexableKeysInvalidation(this);
+        }
+    }
+}
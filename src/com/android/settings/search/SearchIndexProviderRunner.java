@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.FeatureFlagUtils;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.core.FeatureFlags;
+import com.android.settings.core.instrumentation.ControllerLatencyRecorder;
+import com.android.settingslib.search.SearchIndexableData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs one query against every {@link com.android.settingslib.search.Indexable.SearchIndexProvider}
+ * and merges the results in provider order.
+ *
+ * <p>When {@link FeatureFlags#PARALLEL_SEARCH_INDEXING} is enabled, providers are fanned out on a
+ * shared work-stealing pool. Each provider then has until {@link #PROVIDER_TIMEOUT_MS} after the
+ * start of the query to answer, otherwise its results are skipped for this query, just like
+ * when a provider throws. Queries which feed the persisted index, and so must not miss any
+ * provider, use {@link #runToCompletion} instead, which queries a late provider again on the
+ * calling thread. If the calling thread is interrupted while waiting, the remaining providers are
+ * queried on the calling thread and the interrupt is restored afterwards, so results are never
+ * partial. The time spent in each provider is recorded in {@link ControllerLatencyRecorder} in
+ * both modes.
+ */
+class SearchIndexProviderRunner {
+
+    private static final String TAG = "SearchIndexProvRunner";
+
+    @VisibleForTesting
+    static final long PROVIDER_TIMEOUT_MS = 5000;
+    private static final int MAX_PARALLELISM = 4;
+
+    private static ExecutorService sExecutor;
+
+    /**
+     * Query issued to a single provider.
+     */
+    interface ProviderQuery<T> {
+        /**
+         * @return the results of the provider held by {@code bundle}, or {@code null}.
+         */
+        List<T> query(SearchIndexableData bundle);
+    }
+
+    private final ExecutorService mExecutor;
+    private final long mTimeoutMs;
+
+    SearchIndexProviderRunner() {
+        this(null /* executor */, PROVIDER_TIMEOUT_MS);
+    }
+
+    @VisibleForTesting
+    SearchIndexProviderRunner(ExecutorService executor, long timeoutMs) {
+        mExecutor = executor;
+        mTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * Runs {@code query} on every provider and returns the concatenation of their results in the
+     * order of {@code bundles}.
+     */
+    <T> List<T> run(Context context, Collection<SearchIndexableData> bundles,
+            @ControllerLatencyRecorder.Operation int operation, ProviderQuery<T> query) {
+        return run(context, bundles, operation, query, false /* retryLateProviders */);
+    }
+
+    /**
+     * Like {@link #run}, but a provider which misses the deadline is queried again on the calling
+     * thread instead of being skipped, so that the results are never missing a provider.
+     */
+    <T> List<T> runToCompletion(Context context, Collection<SearchIndexableData> bundles,
+            @ControllerLatencyRecorder.Operation int operation, ProviderQuery<T> query) {
+        return run(context, bundles, operation, query, true /* retryLateProviders */);
+    }
+
+    private <T> List<T> run(Context context, Collection<SearchIndexableData> bundles,
+            @ControllerLatencyRecorder.Operation int operation, ProviderQuery<T> query,
+            boolean retryLateProviders) {
+        if (mExecutor == null && !isParallelEnabled(context)) {
+            final List<T> results = new ArrayList<>();
+            for (SearchIndexableData bundle : bundles) {
+                final List<T> providerResults = timedQuery(bundle, operation, query);
+                if (providerResults != null) {
+                    results.addAll(providerResults);
+                }
+            }
+            return results;
+        }
+
+        final ExecutorService executor = mExecutor != null ? mExecutor : getSharedExecutor();
+        final List<SearchIndexableData> bundleList = new ArrayList<>(bundles);
+        final List<Future<List<T>>> futures = new ArrayList<>(bundleList.size());
+        for (SearchIndexableData bundle : bundleList) {
+            futures.add(executor.submit(() -> timedQuery(bundle, operation, query)));
+        }
+
+        final long deadline = SystemClock.elapsedRealtime() + mTimeoutMs;
+        final List<T> results = new ArrayList<>();
+        final int size = futures.size();
+        boolean interrupted = false;
+        for (int i = 0; i < size; i++) {
+            final Future<List<T>> future = futures.get(i);
+            final String providerName = bundleList.get(i).getTargetClass().getName();
+            List<T> providerResults;
+            try {
+                if (interrupted) {
+                    // Not waiting anymore, the rest of the providers are queried serially.
+                    future.cancel(true /* mayInterruptIfRunning */);
+                    providerResults = timedQuery(bundleList.get(i), operation, query);
+                } else {
+                    final long remaining = Math.max(0, deadline - SystemClock.elapsedRealtime());
+                    providerResults = future.get(remaining, TimeUnit.MILLISECONDS);
+                }
+            } catch (TimeoutException e) {
+                future.cancel(true /* mayInterruptIfRunning */);
+                if (!retryLateProviders) {
+                    Log.e(TAG, "Skipping " + providerName + ", exceeded " + mTimeoutMs + " ms");
+                    continue;
+                }
+                Log.e(TAG, "Querying " + providerName + " again, exceeded " + mTimeoutMs + " ms");
+                providerResults = timedQuery(bundleList.get(i), operation, query);
+            } catch (InterruptedException e) {
+                Log.e(TAG, "Interrupted while waiting for " + providerName
+                        + ", querying the remaining providers serially", e);
+                interrupted = true;
+                future.cancel(true /* mayInterruptIfRunning */);
+                providerResults = timedQuery(bundleList.get(i), operation, query);
+            } catch (ExecutionException e) {
+                // Surface failures the same way the serial mode does.
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+            if (providerResults != null) {
+                results.addAll(providerResults);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return results;
+    }
+
+    private static <T> List<T> timedQuery(SearchIndexableData bundle,
+            @ControllerLatencyRecorder.Operation int operation, ProviderQuery<T> query) {
+        final long startTime = ControllerLatencyRecorder.start();
+        try {
+            return query.query(bundle);
+        } finally {
+            ControllerLatencyRecorder.getInstance().record(bundle.getTargetClass(), operation,
+                    startTime);
+        }
+    }
+
+    private static boolean isParallelEnabled(Context context) {
+        return FeatureFlagUtils.isEnabled(context, FeatureFlags.PARALLEL_SEARCH_INDEXING);
+    }
+
+    private static synchronized ExecutorService getSharedExecutor() {
+        if (sExecutor == null) {
+            sExecutor = new ForkJoinPool(Math.max(2,
+                    Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors())));
+        }
+        return sExecutor;
+    }
+}
@@ -65,6 +65,7 @@ import androidx.slice.SliceViewManager;
 
 import com.android.settings.R;
 import com.android.settings.SettingsActivity;
+import com.android.settings.core.instrumentation.ControllerLatencyRecorder;
 import com.android.settings.dashboard.CategoryManager;
 import com.android.settings.dashboard.DashboardFeatureProvider;
 import com.android.settings.dashboard.DashboardFragmentRegistry;
@@ -99,6 +100,8 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
 
     // Search enabled states for injection (key: category key, value: search enabled)
     private Map<String, Boolean> mSearchEnabledByCategoryKeyMap;
+    private final SearchIndexProviderRunner mProviderRunner = new SearchIndexProviderRunner();
+    private final NonIndexableKeysCache mNonIndexableKeysCache = new NonIndexableKeysCache();
 
     static {
         INVALID_KEYS = new ArraySet<>();
@@ -172,13 +175,13 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
     @Override
     public Cursor queryDynamicRawData(String[] projection) {
         final Context context = getContext();
-        final List<SearchIndexableRaw> rawList = new ArrayList<>();
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFactory(context)
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
+        final List<SearchIndexableRaw> rawList = mProviderRunner.run(context, bundles,
+                ControllerLatencyRecorder.OP_SEARCH_DYNAMIC_RAW_DATA,
+                bundle -> getDynamicSearchIndexableRawData(context, bundle));
 
         for (SearchIndexableData bundle : bundles) {
-            rawList.addAll(getDynamicSearchIndexableRawData(context, bundle));
-
             // Refresh the search enabled state for indexing injection raw data
             final Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
             if (provider instanceof BaseSearchIndexProvider) {
@@ -274,103 +277,103 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFactory(context)
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
 
-        final List<String> nonIndexableKeys = new ArrayList<>();
-
-        for (SearchIndexableData bundle : bundles) {
-            final long startTime = System.currentTimeMillis();
-            Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
-            List<String> providerNonIndexableKeys;
-            try {
-                providerNonIndexableKeys = provider.getNonIndexableKeys(context);
-            } catch (Exception e) {
-                // Catch a generic crash. In the absence of the catch, the background thread will
-                // silently fail anyway, so we aren't losing information by catching the exception.
-                // We crash when the system property exists so that we can test if crashes need to
-                // be fixed.
-                // The gain is that if there is a crash in a specific controller, we don't lose all
-                // non-indexable keys, but we can still find specific crashes in development.
-                if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
-                    throw new RuntimeException(e);
-                }
-                Log.e(TAG, "Error trying to get non-indexable keys from: "
-                        + bundle.getTargetClass().getName(), e);
-                continue;
-            }
-
-            if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
-                if (DEBUG) {
-                    final long totalTime = System.currentTimeMillis() - startTime;
-                    Log.d(TAG, "No indexable, total time " + totalTime);
-                }
-                continue;
-            }
+        // Keys of a late provider must not be missed, or hidden settings would be indexed.
+        return mProviderRunner.runToCompletion(context, bundles,
+                ControllerLatencyRecorder.OP_SEARCH_NON_INDEXABLE_KEYS,
+                bundle -> getNonIndexableKeysFromProvider(context, bundle));
+    }
 
-            if (providerNonIndexableKeys.removeAll(INVALID_KEYS)) {
-                Log.v(TAG, provider + " tried to add an empty non-indexable key");
+    private List<String> getNonIndexableKeysFromProvider(Context context,
+            SearchIndexableData bundle) {
+        final long startTime = System.currentTimeMillis();
+        final Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+        List<String> providerNonIndexableKeys;
+        try {
+            providerNonIndexableKeys = mNonIndexableKeysCache.get(context, provider,
+                    () -> provider.getNonIndexableKeys(context));
+        } catch (Exception e) {
+            // Catch a generic crash. In the absence of the catch, the background thread will
+            // silently fail anyway, so we aren't losing information by catching the exception.
+            // We crash when the system property exists so that we can test if crashes need to
+            // be fixed.
+            // The gain is that if there is a crash in a specific controller, we don't lose all
+            // non-indexable keys, but we can still find specific crashes in development.
+            if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
+                throw new RuntimeException(e);
             }
+            Log.e(TAG, "Error trying to get non-indexable keys from: "
+                    + bundle.getTargetClass().getName(), e);
+            return null;
+        }
 
+        if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
             if (DEBUG) {
                 final long totalTime = System.currentTimeMillis() - startTime;
-                Log.d(TAG, "Non-indexables " + providerNonIndexableKeys.size() + ", total time "
-                        + totalTime);
+                Log.d(TAG, "No indexable, total time " + totalTime);
             }
+            return null;
+        }
 
-            nonIndexableKeys.addAll(providerNonIndexableKeys);
+        if (providerNonIndexableKeys.removeAll(INVALID_KEYS)) {
+            Log.v(TAG, provider + " tried to add an empty non-indexable key");
         }
 
-        return nonIndexableKeys;
+        if (DEBUG) {
+            final long totalTime = System.currentTimeMillis() - startTime;
+            Log.d(TAG, "Non-indexables " + providerNonIndexableKeys.size() + ", total time "
+                    + totalTime);
+        }
+        return providerNonIndexableKeys;
     }
 
     private List<SearchIndexableResource> getSearchIndexableResourcesFromProvider(Context context) {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFactory(context)
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-        List<SearchIndexableResource> resourceList = new ArrayList<>();
-
-        for (SearchIndexableData bundle : bundles) {
-            Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
-            final List<SearchIndexableResource> resList =
-                    provider.getXmlResourcesToIndex(context, true);
 
-            if (resList == null) {
-                continue;
-            }
-
-            for (SearchIndexableResource item : resList) {
-                item.className = TextUtils.isEmpty(item.className)
-                        ? bundle.getTargetClass().getName()
-                        : item.className;
-            }
-
-            resourceList.addAll(resList);
-        }
-
-        return resourceList;
+        // Resources of a late provider must not be missed, or its settings stay unsearchable until
+        // the next full reindex.
+        return mProviderRunner.runToCompletion(context, bundles,
+                ControllerLatencyRecorder.OP_SEARCH_XML_RESOURCES, bundle -> {
+                    Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+                    final List<SearchIndexableResource> resList =
+                            provider.getXmlResourcesToIndex(context, true);
+
+                    if (resList == null) {
+                        return null;
+                    }
+
+                    for (SearchIndexableResource item : resList) {
+                        item.className = TextUtils.isEmpty(item.className)
+                                ? bundle.getTargetClass().getName()
+                                : item.className;
+                    }
+                    return resList;
+                });
     }
 
     private List<SearchIndexableRaw> getSearchIndexableRawFromProvider(Context context) {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFactory(context)
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-        final List<SearchIndexableRaw> rawList = new ArrayList<>();
-
-        for (SearchIndexableData bundle : bundles) {
-            Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
-            final List<SearchIndexableRaw> providerRaws = provider.getRawDataToIndex(context,
-                    true /* enabled */);
-
-            if (providerRaws == null) {
-                continue;
-            }
-
-            for (SearchIndexableRaw raw : providerRaws) {
-                // The classname and intent information comes from the PreIndexData
-                // This will be more clear when provider conversion is done at PreIndex time.
-                raw.className = bundle.getTargetClass().getName();
 
-            }
-            rawList.addAll(providerRaws);
-        }
-
-        return rawList;
+        // Same as the resources, the raw data is persisted in the index.
+        return mProviderRunner.runToCompletion(context, bundles,
+                ControllerLatencyRecorder.OP_SEARCH_RAW_DATA, bundle -> {
+                    Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+                    final List<SearchIndexableRaw> providerRaws = provider.getRawDataToIndex(
+                            context, true /* enabled */);
+
+                    if (providerRaws == null) {
+                        return null;
+                    }
+
+                    for (SearchIndexableRaw raw : providerRaws) {
+                        // The classname and intent information comes from the PreIndexData
+                        // This will be more clear when provider conversion is done at PreIndex
+                        // time.
+                        raw.className = bundle.getTargetClass().getName();
+                    }
+                    return providerRaws;
+                });
     }
 
     private List<SearchIndexableRaw> getDynamicSearchIndexableRawData(Context context,
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.slices;
+
+import android.net.Uri;
+import android.util.LruCache;
+import android.util.Pair;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Bounded cache of the {@link SliceData} built by {@link SlicesDatabaseAccessor}, so that slices
+ * bound repeatedly do not query the database each time.
+ *
+ * <p>Entries are keyed by the slice {@link Uri}, or by the slice key alone when the data was
+ * requested without a {@link Uri}. The cache is cleared whenever the slices table is rewritten.
+ */
+class SliceDataCache {
+
+    @VisibleForTesting
+    static final int MAX_SIZE = 64;
+
+    private final LruCache<Pair<Uri, String>, SliceData> mCache = new LruCache<>(MAX_SIZE);
+
+    // Incremented on every invalidation, to drop data read from the database before it.
+    private int mGeneration;
+
+    /**
+     * @return the cached data for {@code uri} and {@code key}, or {@code null}.
+     */
+    synchronized SliceData get(Uri uri, String key) {
+        return mCache.get(Pair.create(uri, key));
+    }
+
+    /**
+     * @return the current generation, to read before querying the database.
+     */
+    synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Caches {@code data}, unless the cache was invalidated since {@code generation} was read.
+     */
+    synchronized void put(Uri uri, String key, SliceData data, int generation) {
+        if (generation == mGeneration) {
+            mCache.put(Pair.create(uri, key), data);
+        }
+    }
+
+    synchronized void invalidate() {
+        mGeneration++;
+        mCache.evictAll();
+    }
+
+    synchronized int hitCount() {
+        return mCache.hitCount();
+    }
+
+    synchronized int missCount() {
+        return mCache.missCount();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SliceDataCache{size=" + mCache.size() + ", hits=" + mCache.hitCount()
+                + ", misses=" + mCache.missCount() + "}";
+    }
+}
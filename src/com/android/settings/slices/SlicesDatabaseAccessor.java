@@ -71,9 +71,7 @@ public class SlicesDatabaseAccessor {
         if (pathData == null) {
             throw new IllegalStateException("Invalid Slices uri: " + uri);
         }
-        try (Cursor cursor = getIndexedSliceData(pathData.second /* key */)) {
-            return buildSliceData(cursor, uri, pathData.first /* isIntentOnly */);
-        }
+        return getSliceData(uri, pathData.second /* key */, pathData.first /* isIntentOnly */);
     }
 
     /**
@@ -82,9 +80,7 @@ public class SlicesDatabaseAccessor {
      * Used when handling the action of the {@link Slice}.
      */
     public SliceData getSliceDataFromKey(String key) {
-        try (Cursor cursor = getIndexedSliceData(key)) {
-            return buildSliceData(cursor, null /* uri */, false /* isIntentOnly */);
-        }
+        return getSliceData(null /* uri */, key, false /* isIntentOnly */);
     }
 
     /**
@@ -115,9 +111,24 @@ public class SlicesDatabaseAccessor {
         return uris;
     }
 
-    private Cursor getIndexedSliceData(String path) {
+    private SliceData getSliceData(Uri uri, String key, boolean isIntentOnly) {
         verifyIndexing();
 
+        final SliceDataCache cache = mHelper.getSliceDataCache();
+        final int generation = cache.getGeneration();
+        final SliceData cachedSliceData = cache.get(uri, key);
+        if (cachedSliceData != null) {
+            return cachedSliceData;
+        }
+        final SliceData sliceData;
+        try (Cursor cursor = getIndexedSliceData(key)) {
+            sliceData = buildSliceData(cursor, uri, isIntentOnly);
+        }
+        cache.put(uri, key, sliceData, generation);
+        return sliceData;
+    }
+
+    private Cursor getIndexedSliceData(String path) {
         final String whereClause = buildKeyMatchWhereClause();
         final SQLiteDatabase database = mHelper.getReadableDatabase();
         final String[] selection = new String[]{path};
@@ -138,6 +138,7 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
                     ");";
 
     private final Context mContext;
+    private final SliceDataCache mSliceDataCache = new SliceDataCache();
 
     private static SlicesDatabaseHelper sSingleton;
 
@@ -172,12 +173,21 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
      * {@link#isNewIndexingState(Context)} will return {@code true}.
      */
     void reconstruct(SQLiteDatabase db) {
+        clearIndexedState();
+        dropTables(db);
+        createDatabases(db);
+        mSliceDataCache.invalidate();
+    }
+
+    /**
+     * Un-marks the state of the data, without touching the stored rows. Should be called before
+     * the TABLE_SLICES_INDEX is updated in place.
+     */
+    void clearIndexedState() {
         mContext.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
                 .edit()
                 .clear()
                 .apply();
-        dropTables(db);
-        createDatabases(db);
     }
 
     /**
@@ -198,6 +208,13 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
         return isBuildIndexed() && isLocaleIndexed();
     }
 
+    /**
+     * @return the cache of the {@link SliceData} read from this database.
+     */
+    SliceDataCache getSliceDataCache() {
+        return mSliceDataCache;
+    }
+
     private void createDatabases(SQLiteDatabase db) {
         db.execSQL(CREATE_SLICES_TABLE);
         Log.d(TAG, "Created databases");
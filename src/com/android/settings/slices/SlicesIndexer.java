@@ -16,9 +16,12 @@
 
 package com.android.settings.slices;
 
-import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.ArrayMap;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
@@ -29,20 +32,49 @@ import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
 import com.android.settings.slices.SlicesDatabaseHelper.Tables;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * Manages the conversion of {@link DashboardFragment} and {@link BasePreferenceController} to
  * indexable data {@link SliceData} to be stored for Slices.
+ *
+ * <p>Indexing is differential: the new data is compared with the rows already stored, and only
+ * the inserted, updated and deleted rows are written, in one transaction.
  */
 class SlicesIndexer implements Runnable {
 
     private static final String TAG = "SlicesIndexer";
 
+    private static final String ROW_ID = "rowid";
+
+    /**
+     * Columns written for each {@link SliceData}, the key first.
+     */
+    private static final String[] COLUMNS = {
+            IndexColumns.KEY,
+            IndexColumns.SLICE_URI,
+            IndexColumns.TITLE,
+            IndexColumns.SUMMARY,
+            IndexColumns.SCREENTITLE,
+            IndexColumns.KEYWORDS,
+            IndexColumns.ICON_RESOURCE,
+            IndexColumns.FRAGMENT,
+            IndexColumns.CONTROLLER,
+            IndexColumns.SLICE_TYPE,
+            IndexColumns.UNAVAILABLE_SLICE_SUBTITLE,
+            IndexColumns.PUBLIC_SLICE,
+    };
+
     private Context mContext;
 
     private SlicesDatabaseHelper mHelper;
 
+    private IndexStats mLastIndexStats;
+
     public SlicesIndexer(Context context) {
         mContext = context;
         mHelper = SlicesDatabaseHelper.getInstance(mContext);
@@ -66,24 +98,33 @@ class SlicesIndexer implements Runnable {
             return;
         }
 
-        final SQLiteDatabase database = mHelper.getWritableDatabase();
+        final IndexStats stats = new IndexStats();
+        final long startTime = SystemClock.elapsedRealtime();
+        mHelper.clearIndexedState();
+        final List<SliceData> indexData = getSliceData();
+        stats.mCollectMs = SystemClock.elapsedRealtime() - startTime;
 
-        long startTime = System.currentTimeMillis();
+        final SQLiteDatabase database = mHelper.getWritableDatabase();
+        final long writeStartTime = SystemClock.elapsedRealtime();
         database.beginTransaction();
         try {
-            mHelper.reconstruct(database);
-            List<SliceData> indexData = getSliceData();
-            insertSliceData(database, indexData);
-
+            updateSliceData(database, indexData, stats);
             mHelper.setIndexedState();
-
-            // TODO (b/71503044) Log indexing time.
-            Log.d(TAG,
-                    "Indexing slices database took: " + (System.currentTimeMillis() - startTime));
             database.setTransactionSuccessful();
         } finally {
             database.endTransaction();
         }
+        mHelper.getSliceDataCache().invalidate();
+        stats.mWriteMs = SystemClock.elapsedRealtime() - writeStartTime;
+        mLastIndexStats = stats;
+        Log.d(TAG, "Indexing slices database: " + stats);
+    }
+
+    /**
+     * @return the outcome of the last indexing pass, or {@code null} if nothing was indexed yet.
+     */
+    IndexStats getLastIndexStats() {
+        return mLastIndexStats;
     }
 
     @VisibleForTesting
@@ -94,31 +135,172 @@ class SlicesIndexer implements Runnable {
                 .getSliceData();
     }
 
-    @VisibleForTesting
-    void insertSliceData(SQLiteDatabase database, List<SliceData> indexData) {
-        ContentValues values;
+    /**
+     * Brings the slices table in line with {@code indexData}. Must be called within a transaction.
+     */
+    private void updateSliceData(SQLiteDatabase database, List<SliceData> indexData,
+            IndexStats stats) {
+        // Existing rows by key, duplicate keys are deleted.
+        final Map<String, Row> existingRows = new ArrayMap<>();
+        final List<Long> deletedRowIds = new ArrayList<>();
+        final String[] projection = Arrays.copyOf(COLUMNS, COLUMNS.length + 1);
+        projection[COLUMNS.length] = ROW_ID;
+        try (Cursor cursor = database.query(Tables.TABLE_SLICES_INDEX, projection,
+                null /* selection */, null /* selectionArgs */, null /* groupBy */,
+                null /* having */, null /* orderBy */)) {
+            while (cursor.moveToNext()) {
+                final Row row = new Row(cursor);
+                if (existingRows.containsKey(row.getKey())) {
+                    deletedRowIds.add(row.mRowId);
+                } else {
+                    existingRows.put(row.getKey(), row);
+                }
+            }
+        }
 
+        final List<Row> insertedRows = new ArrayList<>();
+        final List<Row> updatedRows = new ArrayList<>();
         for (SliceData dataRow : indexData) {
-            values = new ContentValues();
-            values.put(IndexColumns.KEY, dataRow.getKey());
-            values.put(IndexColumns.SLICE_URI, dataRow.getUri().toSafeString());
-            values.put(IndexColumns.TITLE, dataRow.getTitle());
-            values.put(IndexColumns.SUMMARY, dataRow.getSummary());
-            final CharSequence screenTitle = dataRow.getScreenTitle();
-            if (screenTitle != null) {
-                values.put(IndexColumns.SCREENTITLE, screenTitle.toString());
+            final Row row = new Row(dataRow);
+            final Row existingRow = existingRows.remove(row.getKey());
+            if (existingRow == null) {
+                insertedRows.add(row);
+            } else if (!row.hasSameValues(existingRow)) {
+                row.mRowId = existingRow.mRowId;
+                updatedRows.add(row);
+            } else {
+                stats.mUnchanged++;
+            }
+        }
+        for (Row row : existingRows.values()) {
+            deletedRowIds.add(row.mRowId);
+        }
+
+        if (!deletedRowIds.isEmpty()) {
+            try (SQLiteStatement delete = database.compileStatement("DELETE FROM "
+                    + Tables.TABLE_SLICES_INDEX + " WHERE " + ROW_ID + " = ?")) {
+                for (long rowId : deletedRowIds) {
+                    delete.bindLong(1, rowId);
+                    delete.executeUpdateDelete();
+                }
+            }
+        }
+        if (!updatedRows.isEmpty()) {
+            try (SQLiteStatement update = database.compileStatement("UPDATE "
+                    + Tables.TABLE_SLICES_INDEX + " SET " + String.join(" = ?, ", COLUMNS)
+                    + " = ? WHERE " + ROW_ID + " = ?")) {
+                for (Row row : updatedRows) {
+                    row.bind(update);
+                    update.bindLong(COLUMNS.length + 1, row.mRowId);
+                    update.executeUpdateDelete();
+                }
+            }
+        }
+        if (!insertedRows.isEmpty()) {
+            final String[] placeholders = new String[COLUMNS.length];
+            Arrays.fill(placeholders, "?");
+            try (SQLiteStatement insert = database.compileStatement("INSERT INTO "
+                    + Tables.TABLE_SLICES_INDEX + " (" + String.join(", ", COLUMNS)
+                    + ") VALUES (" + String.join(", ", placeholders) + ")")) {
+                for (Row row : insertedRows) {
+                    row.bind(insert);
+                    insert.executeInsert();
+                }
+            }
+        }
+        stats.mInserted = insertedRows.size();
+        stats.mUpdated = updatedRows.size();
+        stats.mDeleted = deletedRowIds.size();
+    }
+
+    /**
+     * Counts and timings of one indexing pass.
+     */
+    static class IndexStats {
+        int mInserted;
+        int mUpdated;
+        int mDeleted;
+        int mUnchanged;
+        // Time spent building the slice data.
+        long mCollectMs;
+        // Time spent diffing and writing the slice data.
+        long mWriteMs;
+
+        @Override
+        public String toString() {
+            return "inserted=" + mInserted + ", updated=" + mUpdated + ", deleted=" + mDeleted
+                    + ", unchanged=" + mUnchanged + ", collect=" + mCollectMs + "ms, write="
+                    + mWriteMs + "ms";
+        }
+    }
+
+    /**
+     * One row of the slices table, with its values in the order of {@link #COLUMNS}.
+     */
+    private static class Row {
+        final Object[] mValues;
+        long mRowId;
+
+        Row(SliceData data) {
+            final CharSequence screenTitle = data.getScreenTitle();
+            mValues = new Object[]{
+                    data.getKey(),
+                    data.getUri().toSafeString(),
+                    data.getTitle(),
+                    data.getSummary(),
+                    screenTitle != null ? screenTitle.toString() : null,
+                    data.getKeywords(),
+                    (long) data.getIconResource(),
+                    data.getFragmentClassName(),
+                    data.getPreferenceController(),
+                    (long) data.getSliceType(),
+                    data.getUnavailableSliceSubtitle(),
+                    data.isPublicSlice() ? 1L : 0L,
+            };
+        }
+
+        Row(Cursor cursor) {
+            mValues = new Object[COLUMNS.length];
+            for (int i = 0; i < COLUMNS.length; i++) {
+                mValues[i] = cursor.getString(i);
             }
-            values.put(IndexColumns.KEYWORDS, dataRow.getKeywords());
-            values.put(IndexColumns.ICON_RESOURCE, dataRow.getIconResource());
-            values.put(IndexColumns.FRAGMENT, dataRow.getFragmentClassName());
-            values.put(IndexColumns.CONTROLLER, dataRow.getPreferenceController());
-            values.put(IndexColumns.SLICE_TYPE, dataRow.getSliceType());
-            values.put(IndexColumns.UNAVAILABLE_SLICE_SUBTITLE,
-                    dataRow.getUnavailableSliceSubtitle());
-            values.put(IndexColumns.PUBLIC_SLICE, dataRow.isPublicSlice());
-
-            database.replaceOrThrow(Tables.TABLE_SLICES_INDEX, null /* nullColumnHack */,
-                    values);
+            mRowId = cursor.getLong(COLUMNS.length);
+        }
+
+        String getKey() {
+            return (String) mValues[0];
+        }
+
+        /**
+         * Compares the string forms of the values, which is how SQLite returns them.
+         */
+        boolean hasSameValues(Row other) {
+            for (int i = 0; i < mValues.length; i++) {
+                if (!Objects.equals(toString(mValues[i]), toString(other.mValues[i]))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Binds the values to the first {@link #COLUMNS} parameters of {@code statement}.
+         */
+        void bind(SQLiteStatement statement) {
+            for (int i = 0; i < mValues.length; i++) {
+                final Object value = mValues[i];
+                if (value == null) {
+                    statement.bindNull(i + 1);
+                } else if (value instanceof Long) {
+                    statement.bindLong(i + 1, (Long) value);
+                } else {
+                    statement.bindString(i + 1, (String) value);
+                }
+            }
+        }
+
+        private static String toString(Object value) {
+            return value == null ? null : value.toString();
         }
     }
-}
\ No newline at end of file
+}
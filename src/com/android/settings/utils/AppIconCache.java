@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.IconDrawableFactory;
+import android.util.LruCache;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Process wide cache of badged app icons and app labels, shared by every screen listing apps.
+ *
+ * <p>Icons are keyed by package, user, screen density and whether they are badged, and bounded by the estimated size of
+ * their bitmaps. Every caller gets its own mutated drawable, created from the cached constant
+ * state, so that changing the bounds, alpha or tint of an icon does not affect other screens.
+ * Entries of a package are dropped when the package is added, changed or removed, and labels on a
+ * locale change.
+ */
+public class AppIconCache {
+
+    // Upper bound of the memory used by the cached icons.
+    private static final int MAX_ICON_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_LABEL_COUNT = 512;
+    private static final String UNBADGED_KEY_SUFFIX = "/unbadged";
+
+    private static AppIconCache sInstance;
+
+    private final Context mContext;
+    @VisibleForTesting
+    final LruCache<String, IconEntry> mIcons;
+    private final LruCache<String, CharSequence> mLabels = new LruCache<>(MAX_LABEL_COUNT);
+    // Callbacks waiting for an icon which is loaded in the background, by icon key.
+    private final Map<String, List<Consumer<Drawable>>> mPendingCallbacks = new ArrayMap<>();
+
+    /**
+     * Returns the cache of the application of {@code context}.
+     */
+    public static synchronized AppIconCache getInstance(Context context) {
+        Context appContext = context.getApplicationContext();
+        if (appContext == null) {
+            appContext = context;
+        }
+        if (sInstance == null || sInstance.mContext != appContext) {
+            sInstance = new AppIconCache(appContext, getMaxIconBytes());
+            sInstance.registerReceivers();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    AppIconCache(Context context, int maxIconBytes) {
+        mContext = context;
+        mIcons = new LruCache<String, IconEntry>(maxIconBytes) {
+            @Override
+            protected int sizeOf(String key, IconEntry entry) {
+                return entry.mBytes;
+            }
+        };
+    }
+
+    /**
+     * Returns the icon of {@code appInfo} badged for the user of its uid.
+     */
+    public Drawable getBadgedIcon(Context context, ApplicationInfo appInfo) {
+        return getBadgedIcon(context, appInfo, UserHandle.getUserId(appInfo.uid));
+    }
+
+    /**
+     * Returns the icon of {@code appInfo} badged for {@code userId}, loading it on the calling
+     * thread if it is not cached.
+     */
+    public Drawable getBadgedIcon(Context context, ApplicationInfo appInfo, int userId) {
+        final String key = getIconKey(context, appInfo.packageName, userId);
+        final Drawable cached = getCachedIcon(context, key);
+        if (cached != null) {
+            return cached;
+        }
+        return loadIcon(context, key, appInfo, userId);
+    }
+
+    /**
+     * Returns the icon of {@code appInfo} without the badge of its user, for callers which badge
+     * it themselves, loading it on the calling thread if it is not cached.
+     */
+    public Drawable getIcon(Context context, ApplicationInfo appInfo) {
+        final int userId = UserHandle.getUserId(appInfo.uid);
+        final String key = getIconKey(context, appInfo.packageName, userId) + UNBADGED_KEY_SUFFIX;
+        final Drawable cached = getCachedIcon(context, key);
+        if (cached != null) {
+            return cached;
+        }
+        return cacheIcon(context, key, appInfo.loadIcon(context.getPackageManager()));
+    }
+
+    /**
+     * Returns the icon of {@code packageName} badged for {@code userId}. The application info is
+     * only looked up if the icon is not cached.
+     */
+    public Drawable getBadgedIcon(Context context, String packageName, int userId) {
+        final String key = getIconKey(context, packageName, userId);
+        final Drawable cached = getCachedIcon(context, key);
+        if (cached != null) {
+            return cached;
+        }
+        final PackageManager packageManager = context.getPackageManager();
+        try {
+            final ApplicationInfo appInfo = packageManager.getApplicationInfoAsUser(
+                    packageName, PackageManager.GET_META_DATA, userId);
+            return loadIcon(context, key, appInfo, userId);
+        } catch (PackageManager.NameNotFoundException e) {
+            return packageManager.getDefaultActivityIcon();
+        }
+    }
+
+    /**
+     * Delivers the icon of {@code appInfo} badged for {@code userId} to {@code callback} on the
+     * main thread. Concurrent requests of the same icon share a single background load.
+     */
+    public void loadBadgedIcon(Context context, ApplicationInfo appInfo, int userId,
+            Consumer<Drawable> callback) {
+        final String key = getIconKey(context, appInfo.packageName, userId);
+        final Drawable cached = getCachedIcon(context, key);
+        if (cached != null) {
+            callback.accept(cached);
+            return;
+        }
+        synchronized (mPendingCallbacks) {
+            List<Consumer<Drawable>> callbacks = mPendingCallbacks.get(key);
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return;
+            }
+            callbacks = new ArrayList<>();
+            callbacks.add(callback);
+            mPendingCallbacks.put(key, callbacks);
+        }
+        ThreadUtils.postOnBackgroundThread(() -> {
+            loadIcon(context, key, appInfo, userId);
+            ThreadUtils.postOnMainThread(() -> {
+                final List<Consumer<Drawable>> callbacks;
+                synchronized (mPendingCallbacks) {
+                    callbacks = mPendingCallbacks.remove(key);
+                }
+                // Every callback gets its own drawable, the cache may have been cleared since.
+                for (Consumer<Drawable> pending : callbacks) {
+                    final Drawable icon = getCachedIcon(context, key);
+                    pending.accept(icon != null
+                            ? icon : loadIcon(context, key, appInfo, userId));
+                }
+            });
+        });
+    }
+
+    /**
+     * Returns the label of {@code appInfo}.
+     */
+    public CharSequence getLabel(Context context, ApplicationInfo appInfo) {
+        final String key = appInfo.packageName + "/" + UserHandle.getUserId(appInfo.uid);
+        CharSequence label = mLabels.get(key);
+        if (label == null) {
+            label = appInfo.loadLabel(context.getPackageManager());
+            mLabels.put(key, label);
+        }
+        return label;
+    }
+
+    /**
+     * Drops the icons and labels of {@code packageName} for all users.
+     */
+    public void invalidate(String packageName) {
+        final String prefix = packageName + "/";
+        for (String key : mIcons.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mIcons.remove(key);
+            }
+        }
+        for (String key : mLabels.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mLabels.remove(key);
+            }
+        }
+    }
+
+    public void clear() {
+        mIcons.evictAll();
+        mLabels.evictAll();
+    }
+
+    private Drawable getCachedIcon(Context context, String key) {
+        final IconEntry entry = mIcons.get(key);
+        return entry == null ? null : entry.mState.newDrawable(context.getResources()).mutate();
+    }
+
+    private Drawable loadIcon(Context context, String key, ApplicationInfo appInfo, int userId) {
+        return cacheIcon(context, key,
+                IconDrawableFactory.newInstance(context).getBadgedIcon(appInfo, userId));
+    }
+
+    private Drawable cacheIcon(Context context, String key, Drawable icon) {
+        final Drawable.ConstantState state = icon == null ? null : icon.getConstantState();
+        if (state == null) {
+            return icon;
+        }
+        final int bytes = Math.max(1, icon.getIntrinsicWidth())
+                * Math.max(1, icon.getIntrinsicHeight()) * 4;
+        mIcons.put(key, new IconEntry(state, bytes));
+        // The loaded drawable shares its state with the cache, so it is not handed out either.
+        return state.newDrawable(context.getResources()).mutate();
+    }
+
+    private void registerReceivers() {
+        final IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addDataScheme("package");
+        mContext.registerReceiverAsUser(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final Uri data = intent.getData();
+                final String packageName = data == null ? null : data.getSchemeSpecificPart();
+                if (packageName != null) {
+                    invalidate(packageName);
+                }
+            }
+        }, UserHandle.ALL, packageFilter, null /* permission */, null /* scheduler */);
+        mContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                mLabels.evictAll();
+            }
+        }, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+    }
+
+    private static String getIconKey(Context context, String packageName, int userId) {
+        return packageName + "/" + userId + "@"
+                + context.getResources().getDisplayMetrics().densityDpi;
+    }
+
+    private static int getMaxIconBytes() {
+        return (int) Math.min(MAX_ICON_BYTES, Runtime.getRuntime().maxMemory() / 32);
+    }
+
+    private static class IconEntry {
+        final Drawable.ConstantState mState;
+        final int mBytes;
+
+        IconEntry(Drawable.ConstantState state, int bytes) {
+            mState = state;
+            mBytes = bytes;
+        }
+    }
+}
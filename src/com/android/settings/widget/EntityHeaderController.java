@@ -145,7 +145,7 @@ public class EntityHeaderController {
      * accessibility purposes.
      */
     public EntityHeaderController setIcon(ApplicationsState.AppEntry appEntry) {
-        mIcon = Utils.getBadgedIcon(mAppContext, appEntry.info);
+        mIcon = Utils.getCachedBadgedIcon(mAppContext, appEntry.info);
         mPackageNameReal = appEntry.info.packageName;
         return this;
     }
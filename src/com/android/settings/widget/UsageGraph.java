@@ -37,7 +37,6 @@ import android.view.View;
 
 import androidx.annotation.VisibleForTesting;
 
-import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settingslib.R;
 
 public class UsageGraph extends View {
@@ -53,7 +52,11 @@ public class UsageGraph extends View {
     private final Drawable mTintedDivider;
     private final int mDividerSize;
 
-    private final Path mPath = new Path();
+    // Paths to draw, built from the local paths only when those change.
+    private final Path mLinePath = new Path();
+    private final Path mFillPath = new Path();
+    private final Path mProjectedLinePath = new Path();
+    private boolean mPathsChanged;
 
     // Paths in coordinates they are passed in.
     private final SparseIntArray mPaths = new SparseIntArray();
@@ -111,15 +114,14 @@ public class UsageGraph extends View {
         mLocalPaths.clear();
         mProjectedPaths.clear();
         mLocalProjectedPaths.clear();
+        mPathsChanged = true;
     }
 
     void setMax(int maxX, int maxY) {
-        final long startTime = System.currentTimeMillis();
         mMaxX = maxX;
         mMaxY = maxY;
-        calculateLocalPaths();
+        mPathsChanged = true;
         postInvalidate();
-        BatteryUtils.logRuntime(LOG_TAG, "setMax", startTime);
     }
 
     void setDividerLoc(int height) {
@@ -132,24 +134,21 @@ public class UsageGraph extends View {
     }
 
     public void addPath(SparseIntArray points) {
-        addPathAndUpdate(points, mPaths, mLocalPaths);
+        addPathAndUpdate(points, mPaths);
     }
 
     public void addProjectedPath(SparseIntArray points) {
-        addPathAndUpdate(points, mProjectedPaths, mLocalProjectedPaths);
+        addPathAndUpdate(points, mProjectedPaths);
     }
 
-    private void addPathAndUpdate(
-            SparseIntArray points, SparseIntArray paths, SparseIntArray localPaths) {
-        final long startTime = System.currentTimeMillis();
+    private void addPathAndUpdate(SparseIntArray points, SparseIntArray paths) {
         for (int i = 0, size = points.size(); i < size; i++) {
             paths.put(points.keyAt(i), points.valueAt(i));
         }
         // Add a delimiting value immediately after the last point.
         paths.put(points.keyAt(points.size() - 1) + 1, PATH_DELIM);
-        calculateLocalPaths(paths, localPaths);
+        mPathsChanged = true;
         postInvalidate();
-        BatteryUtils.logRuntime(LOG_TAG, "addPathAndUpdate", startTime);
     }
 
     void setAccentColor(int color) {
@@ -161,21 +160,29 @@ public class UsageGraph extends View {
 
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        final long startTime = System.currentTimeMillis();
         super.onSizeChanged(w, h, oldw, oldh);
         updateGradient();
-        calculateLocalPaths();
-        BatteryUtils.logRuntime(LOG_TAG, "onSizeChanged", startTime);
+        mPathsChanged = true;
     }
 
-    private void calculateLocalPaths() {
+    /**
+     * Builds the paths to draw, if the points, the maximum or the size changed since the last
+     * time. Several changes in a row only build the paths once, before the next draw.
+     */
+    private void updatePaths() {
+        if (!mPathsChanged || getWidth() == 0) {
+            return;
+        }
+        mPathsChanged = false;
         calculateLocalPaths(mPaths, mLocalPaths);
         calculateLocalPaths(mProjectedPaths, mLocalProjectedPaths);
+        buildLinePath(mLinePath, mLocalPaths);
+        buildFilledPath(mFillPath, mLocalPaths);
+        buildLinePath(mProjectedLinePath, mLocalProjectedPaths);
     }
 
     @VisibleForTesting
     void calculateLocalPaths(SparseIntArray paths, SparseIntArray localPaths) {
-        final long startTime = System.currentTimeMillis();
         if (getWidth() == 0) {
             return;
         }
@@ -214,7 +221,6 @@ public class UsageGraph extends View {
                 localPaths.put(lx, ly);
             }
         }
-        BatteryUtils.logRuntime(LOG_TAG, "calculateLocalPaths", startTime);
     }
 
     private boolean hasDiff(int x1, int x2) {
@@ -241,7 +247,6 @@ public class UsageGraph extends View {
 
     @Override
     protected void onDraw(Canvas canvas) {
-        final long startTime = System.currentTimeMillis();
         // Draw lines across the top, middle, and bottom.
         if (mMiddleDividerLoc != 0) {
             drawDivider(0, canvas, mTopDividerTint);
@@ -252,6 +257,7 @@ public class UsageGraph extends View {
                 mMiddleDividerTint);
         drawDivider(canvas.getHeight() - mDividerSize, canvas, -1);
 
+        updatePaths();
         if (mLocalPaths.size() == 0 && mLocalProjectedPaths.size() == 0) {
             return;
         }
@@ -261,57 +267,54 @@ public class UsageGraph extends View {
             // Flip the canvas along the y-axis of the center of itself before drawing paths.
             canvas.scale(-1, 1, canvas.getWidth() * 0.5f, 0);
         }
-        drawLinePath(canvas, mLocalProjectedPaths, mDottedPaint);
-        drawFilledPath(canvas, mLocalPaths, mFillPaint);
-        drawLinePath(canvas, mLocalPaths, mLinePaint);
+        canvas.drawPath(mProjectedLinePath, mDottedPaint);
+        canvas.drawPath(mFillPath, mFillPaint);
+        canvas.drawPath(mLinePath, mLinePaint);
         canvas.restore();
-        BatteryUtils.logRuntime(LOG_TAG, "onDraw", startTime);
     }
 
-    private void drawLinePath(Canvas canvas, SparseIntArray localPaths, Paint paint) {
+    private void buildLinePath(Path path, SparseIntArray localPaths) {
+        path.reset();
         if (localPaths.size() == 0) {
             return;
         }
-        mPath.reset();
-        mPath.moveTo(localPaths.keyAt(0), localPaths.valueAt(0));
+        path.moveTo(localPaths.keyAt(0), localPaths.valueAt(0));
         for (int i = 1; i < localPaths.size(); i++) {
             int x = localPaths.keyAt(i);
             int y = localPaths.valueAt(i);
             if (y == PATH_DELIM) {
                 if (++i < localPaths.size()) {
-                    mPath.moveTo(localPaths.keyAt(i), localPaths.valueAt(i));
+                    path.moveTo(localPaths.keyAt(i), localPaths.valueAt(i));
                 }
             } else {
-                mPath.lineTo(x, y);
+                path.lineTo(x, y);
             }
         }
-        canvas.drawPath(mPath, paint);
     }
 
     @VisibleForTesting
-    void drawFilledPath(Canvas canvas, SparseIntArray localPaths, Paint paint) {
+    void buildFilledPath(Path path, SparseIntArray localPaths) {
+        path.reset();
         if (localPaths.size() == 0) {
             return;
         }
-        mPath.reset();
         float lastStartX = localPaths.keyAt(0);
-        mPath.moveTo(localPaths.keyAt(0), localPaths.valueAt(0));
+        path.moveTo(localPaths.keyAt(0), localPaths.valueAt(0));
         for (int i = 1; i < localPaths.size(); i++) {
             int x = localPaths.keyAt(i);
             int y = localPaths.valueAt(i);
             if (y == PATH_DELIM) {
-                mPath.lineTo(localPaths.keyAt(i - 1), getHeight());
-                mPath.lineTo(lastStartX, getHeight());
-                mPath.close();
+                path.lineTo(localPaths.keyAt(i - 1), getHeight());
+                path.lineTo(lastStartX, getHeight());
+                path.close();
                 if (++i < localPaths.size()) {
                     lastStartX = localPaths.keyAt(i);
-                    mPath.moveTo(localPaths.keyAt(i), localPaths.valueAt(i));
+                    path.moveTo(localPaths.keyAt(i), localPaths.valueAt(i));
                 }
             } else {
-                mPath.lineTo(x, y);
+                path.lineTo(x, y);
             }
         }
-        canvas.drawPath(mPath, paint);
     }
 
     private void drawDivider(int y, Canvas canvas, int tintColor) {
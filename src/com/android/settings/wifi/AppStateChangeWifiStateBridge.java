@@ -56,8 +56,12 @@ public class AppStateChangeWifiStateBridge extends AppStateAppOpsBridge {
 
     @Override
     protected void loadAllExtraInfo() {
-        final List<AppEntry> allApps = mAppSession.getAllApps();
-        for (AppEntry entry : allApps) {
+        loadChangedExtraInfo(mAppSession.getAllApps());
+    }
+
+    @Override
+    protected void loadChangedExtraInfo(List<AppEntry> changedApps) {
+        for (AppEntry entry : changedApps) {
             updateExtraInfo(entry, entry.info.packageName, entry.info.uid);
         }
     }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.ActivityManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.ServiceInfo;
+import android.os.Process;
+
+import com.android.settings.R;
+import com.android.settings.benchmark.Benchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class RunningStateBenchmark {
+
+    private static final int SERVICE_COUNT = RunningState.MAX_SERVICES;
+
+    @Test
+    public void updateUnchangedServices() throws Exception {
+        // Measures the service part of a contents update in which no service changed, as on most
+        // of the periodic updates. Every other service is bound by a client with a label.
+        Benchmark.named("RunningState.updateUnchangedServices").run(
+                Tick::new,
+                tick -> {
+                    boolean changed = false;
+                    for (ActivityManager.RunningServiceInfo service : tick.mServices) {
+                        changed |= tick.mProcess.updateService(tick.mContext, service);
+                    }
+                    assertThat(changed).isFalse();
+                    return tick.mProcess.mServices.size();
+                });
+    }
+
+    private static final class Tick {
+        final Context mContext = RuntimeEnvironment.application;
+        final RunningState.ProcessItem mProcess =
+                new RunningState.ProcessItem(mContext, Process.myUid(), mContext.getPackageName());
+        // The services as reported by the next update, equal to but not the same as the last.
+        final List<ActivityManager.RunningServiceInfo> mServices = new ArrayList<>();
+
+        Tick() {
+            for (int i = 0; i < SERVICE_COUNT; i++) {
+                final ActivityManager.RunningServiceInfo service = createService(i);
+                // Services are normally added with their info from the package manager.
+                final RunningState.ServiceItem item = new RunningState.ServiceItem(0 /* userId */);
+                item.mRunningService = service;
+                item.mServiceInfo = new ServiceInfo();
+                mProcess.mServices.put(service.service, item);
+                mProcess.updateService(mContext, service);
+                mServices.add(createService(i));
+            }
+        }
+
+        private ActivityManager.RunningServiceInfo createService(int index) {
+            final ActivityManager.RunningServiceInfo service =
+                    new ActivityManager.RunningServiceInfo();
+            service.service = new ComponentName(mContext.getPackageName(), "Service" + index);
+            service.uid = Process.myUid();
+            service.pid = Process.myPid();
+            service.process = mContext.getPackageName();
+            service.activeSince = index;
+            service.started = true;
+            if (index % 2 == 0) {
+                service.clientPackage = mContext.getPackageName();
+                service.clientLabel = R.string.settings_label;
+            }
+            return service;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import com.android.settings.benchmark.Benchmark;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+public class ManageApplicationsSearchBenchmark {
+
+    private static final int APP_COUNT = 400;
+    // Queries as typed one character at a time.
+    private static final String[] QUERIES = {"c", "ca", "cal", "calc", "calcu"};
+
+    @Test
+    public void filterByLabel() throws Exception {
+        // Measures a whole search: building the index once, then one filter per keystroke.
+        Benchmark.named("ManageApplications.filterByLabel").run(
+                ManageApplicationsSearchBenchmark::createEntries,
+                entries -> {
+                    final AppLabelIndex index = new AppLabelIndex(entries, Locale.US);
+                    List<AppEntry> result = null;
+                    for (String query : QUERIES) {
+                        result = index.filter(query);
+                    }
+                    assertThat(result).isNotNull();
+                    return result;
+                });
+    }
+
+    private static ArrayList<AppEntry> createEntries() {
+        final Random random = new Random(0 /* seed */);
+        final ArrayList<AppEntry> entries = new ArrayList<>(APP_COUNT);
+        for (int i = 0; i < APP_COUNT; i++) {
+            final AppEntry entry = mock(AppEntry.class);
+            final StringBuilder label = new StringBuilder();
+            final int words = 1 + random.nextInt(3);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    label.append(' ');
+                }
+                label.append((char) ('A' + random.nextInt(26)));
+                final int length = 3 + random.nextInt(8);
+                for (int c = 0; c < length; c++) {
+                    label.append((char) ('a' + random.nextInt(26)));
+                }
+            }
+            entry.label = i % 50 == 0 ? "Calculator " + i : label.toString();
+            entries.add(entry);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Minimal microbenchmark harness for host tests.
+ *
+ * <p>A benchmark runs in {@code forks} independent rounds. Each round creates a fresh fixture,
+ * runs {@code warmup} unmeasured iterations, then times {@code iterations} calls of the body one
+ * by one. The statistics of every round and of all rounds together are written as JSON, see
+ * {@code tests/robobenchmarks/README.md}.
+ */
+public final class Benchmark {
+
+    private static final String PROPERTY_PREFIX = "settings.benchmark.";
+    private static final String OUTPUT_DIR = "settings_benchmarks";
+
+    /**
+     * Creates the state a benchmark body runs on. Not measured.
+     */
+    public interface Fixture<T> {
+        T create() throws Exception;
+    }
+
+    /**
+     * The measured code. Its result is consumed so that the work cannot be optimized away.
+     */
+    public interface Body<T> {
+        Object run(T fixture) throws Exception;
+    }
+
+    private static volatile int sSink;
+
+    private final String mName;
+    private int mForks = getIntProperty("forks", 3);
+    private int mWarmupIterations = getIntProperty("warmup", 20);
+    private int mIterations = getIntProperty("iterations", 50);
+
+    private Benchmark(String name) {
+        mName = name;
+    }
+
+    /**
+     * @param name unique name of the benchmark, also used as the result file name
+     */
+    public static Benchmark named(String name) {
+        return new Benchmark(name);
+    }
+
+    /**
+     * Overrides the default iteration count, for bodies which are too slow for the default.
+     * The {@code settings.benchmark.iterations} property still takes precedence.
+     */
+    public Benchmark setIterations(int iterations) {
+        mIterations = getIntProperty("iterations", iterations);
+        return this;
+    }
+
+    /**
+     * Runs the benchmark, writes its results and returns them.
+     */
+    public <T> JSONObject run(Fixture<T> fixture, Body<T> body) throws Exception {
+        final JSONArray rounds = new JSONArray();
+        final long[] allSamples = new long[mForks * mIterations];
+        for (int fork = 0; fork < mForks; fork++) {
+            final T state = fixture.create();
+            for (int i = 0; i < mWarmupIterations; i++) {
+                consume(body.run(state));
+            }
+            System.gc();
+            final long[] samples = new long[mIterations];
+            for (int i = 0; i < mIterations; i++) {
+                final long start = System.nanoTime();
+                final Object result = body.run(state);
+                samples[i] = System.nanoTime() - start;
+                consume(result);
+            }
+            System.arraycopy(samples, 0, allSamples, fork * mIterations, mIterations);
+            rounds.put(stats(samples));
+        }
+
+        final JSONObject result = new JSONObject();
+        result.put("name", mName);
+        result.put("jvm", System.getProperty("java.vm.name") + " "
+                + System.getProperty("java.version"));
+        result.put("forks", mForks);
+        result.put("warmup_iterations", mWarmupIterations);
+        result.put("iterations", mIterations);
+        result.put("unit", "ns");
+        result.put("rounds", rounds);
+        result.put("aggregate", stats(allSamples));
+        write(result);
+        return result;
+    }
+
+    private static void consume(Object result) {
+        sSink += result == null ? 0 : System.identityHashCode(result);
+    }
+
+    private static JSONObject stats(long[] samples) throws JSONException {
+        final long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        double sum = 0;
+        for (long sample : sorted) {
+            sum += sample;
+        }
+        final double mean = sum / sorted.length;
+        double squares = 0;
+        for (long sample : sorted) {
+            squares += (sample - mean) * (sample - mean);
+        }
+        final JSONObject obj = new JSONObject();
+        obj.put("min", sorted[0]);
+        obj.put("median", sorted[sorted.length / 2]);
+        obj.put("p90", sorted[(int) Math.min(sorted.length - 1, sorted.length * 0.9)]);
+        obj.put("mean", (long) mean);
+        obj.put("stddev", (long) Math.sqrt(squares / sorted.length));
+        return obj;
+    }
+
+    private void write(JSONObject result) throws IOException, JSONException {
+        final File dir = new File(System.getProperty(PROPERTY_PREFIX + "output_dir",
+                System.getProperty("java.io.tmpdir")), OUTPUT_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        final File file = new File(dir, mName + ".json");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(result.toString(2));
+        }
+        System.out.println("Benchmark " + mName + ": " + result.getJSONObject("aggregate")
+                + " -> " + file);
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        final String value = System.getProperty(PROPERTY_PREFIX + name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
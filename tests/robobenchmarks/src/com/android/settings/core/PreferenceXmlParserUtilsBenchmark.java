@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.android.settings.R;
+import com.android.settings.benchmark.Benchmark;
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreferenceXmlParserUtilsBenchmark {
+
+    // The flags requested when indexing a page for search.
+    private static final int FLAGS = MetadataFlag.FLAG_INCLUDE_PREF_SCREEN
+            | MetadataFlag.FLAG_NEED_KEY
+            | MetadataFlag.FLAG_NEED_PREF_TYPE
+            | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
+            | MetadataFlag.FLAG_NEED_PREF_TITLE
+            | MetadataFlag.FLAG_NEED_PREF_SUMMARY
+            | MetadataFlag.FLAG_NEED_KEYWORDS
+            | MetadataFlag.FLAG_NEED_SEARCHABLE;
+
+    @Test
+    public void parseMetadata() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+
+        Benchmark.named("PreferenceXmlParserUtils.parseMetadata").run(
+                () -> context,
+                c -> {
+                    final List<Bundle> metadata = PreferenceXmlParserUtils.parseMetadata(c,
+                            R.xml.display_settings, FLAGS);
+                    assertThat(metadata).isNotEmpty();
+                    return metadata;
+                });
+    }
+
+    @Test
+    public void extractMetadata() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+
+        Benchmark.named("PreferenceXmlParserUtils.extractMetadata").run(
+                () -> context,
+                c -> {
+                    final List<Bundle> metadata = PreferenceXmlParserUtils.extractMetadata(c,
+                            R.xml.display_settings, FLAGS);
+                    assertThat(metadata).isNotEmpty();
+                    return metadata;
+                });
+    }
+}
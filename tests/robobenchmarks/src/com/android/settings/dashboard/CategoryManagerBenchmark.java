@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.settings.dashboard;
+
+import android.content.Context;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
+import android.os.Bundle;
+
+import com.android.settings.benchmark.Benchmark;
+import com.android.settingslib.drawer.ActivityTile;
+import com.android.settingslib.drawer.CategoryKey;
+import com.android.settingslib.drawer.DashboardCategory;
+import com.android.settingslib.drawer.TileUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+@RunWith(RobolectricTestRunner.class)
+public class CategoryManagerBenchmark {
+
+    private static final String[] CATEGORIES = {
+            CategoryKey.CATEGORY_HOMEPAGE,
+            CategoryKey.CATEGORY_NETWORK,
+            CategoryKey.CATEGORY_CONNECT,
+            CategoryKey.CATEGORY_APPS,
+            CategoryKey.CATEGORY_BATTERY,
+            CategoryKey.CATEGORY_DISPLAY,
+            CategoryKey.CATEGORY_SOUND,
+            CategoryKey.CATEGORY_STORAGE,
+            CategoryKey.CATEGORY_SECURITY,
+            CategoryKey.CATEGORY_ACCOUNT,
+            CategoryKey.CATEGORY_SYSTEM,
+    };
+    private static final int PACKAGE_COUNT = 20;
+    private static final int TILES_PER_PACKAGE_AND_CATEGORY = 3;
+
+    @Test
+    public void sortAndFilterDuplicateTiles() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+        final CategoryManager categoryManager = new CategoryManager(context);
+
+        Benchmark.named("CategoryManager.sortAndFilterDuplicateTiles").run(
+                CategoryManagerBenchmark::createCategories,
+                categories -> {
+                    // Both steps mutate the categories, so work on a copy.
+                    final Map<String, DashboardCategory> copy = copy(categories);
+                    categoryManager.sortCategories(context, copy);
+                    categoryManager.filterDuplicateTiles(copy);
+                    return copy;
+                });
+    }
+
+    private static Map<String, DashboardCategory> createCategories() {
+        final Map<String, DashboardCategory> categories = new TreeMap<>();
+        for (String key : CATEGORIES) {
+            final DashboardCategory category = new DashboardCategory(key);
+            for (int p = PACKAGE_COUNT - 1; p >= 0; p--) {
+                for (int t = 0; t < TILES_PER_PACKAGE_AND_CATEGORY; t++) {
+                    // Every package injects one tile twice, to exercise the dedup.
+                    final String className = "Tile" + (t == 0 ? 1 : t);
+                    category.addTile(createTile(key, "com.example.package" + p, className,
+                            (p * 7 + t) % 10));
+                }
+            }
+            categories.put(key, category);
+        }
+        return categories;
+    }
+
+    private static ActivityTile createTile(String category, String packageName, String className,
+            int order) {
+        final ActivityInfo activityInfo = new ActivityInfo();
+        activityInfo.packageName = packageName;
+        activityInfo.name = className;
+        activityInfo.applicationInfo = new ApplicationInfo();
+        activityInfo.metaData = new Bundle();
+        activityInfo.metaData.putInt(TileUtils.META_DATA_KEY_ORDER, order);
+        return new ActivityTile(activityInfo, category);
+    }
+
+    private static Map<String, DashboardCategory> copy(Map<String, DashboardCategory> categories) {
+        final Map<String, DashboardCategory> copy = new TreeMap<>();
+        for (DashboardCategory category : categories.values()) {
+            final DashboardCategory categoryCopy = new DashboardCategory(category.key);
+            for (int i = 0; i < category.getTilesCount(); i++) {
+                categoryCopy.addTile(category.getTile(i));
+            }
+            copy.put(category.key, categoryCopy);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import android.content.Context;
+
+import com.android.settings.benchmark.Benchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConvertUtilsBenchmark {
+
+    // 12 two-hour slots, as shown by the battery usage chart.
+    private static final int TIME_SLOT_SIZE = 12;
+    private static final int APP_COUNT = 150;
+
+    @Test
+    public void getIndexedUsageMap() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+        final long[] batteryHistoryKeys = new long[TIME_SLOT_SIZE * 2 + 1];
+        for (int i = 0; i < batteryHistoryKeys.length; i++) {
+            batteryHistoryKeys[i] = 1000L + i * 3600 * 1000L;
+        }
+
+        Benchmark.named("ConvertUtils.getIndexedUsageMap").run(
+                () -> createBatteryHistoryMap(batteryHistoryKeys),
+                batteryHistoryMap -> {
+                    final Map<Integer, List<BatteryDiffEntry>> result =
+                            ConvertUtils.getIndexedUsageMap(context, TIME_SLOT_SIZE,
+                                    batteryHistoryKeys, batteryHistoryMap,
+                                    true /* purgeLowPercentageAndFakeData */);
+                    assertThat(result).isNotEmpty();
+                    return result;
+                });
+    }
+
+    private static Map<Long, Map<String, BatteryHistEntry>> createBatteryHistoryMap(
+            long[] batteryHistoryKeys) {
+        final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap = new HashMap<>();
+        for (int i = 0; i < batteryHistoryKeys.length; i++) {
+            final Map<String, BatteryHistEntry> entries = new HashMap<>();
+            for (int uid = 0; uid < APP_COUNT; uid++) {
+                // Cumulative usage, growing with time at a per-app rate.
+                final BatteryHistEntry entry = createBatteryHistEntry("package" + uid,
+                        "label" + uid, 0.5 * uid * i, 10000 + uid, 1000L * uid * i,
+                        500L * uid * i);
+                entries.put(entry.getKey(), entry);
+            }
+            batteryHistoryMap.put(batteryHistoryKeys[i], entries);
+        }
+        return batteryHistoryMap;
+    }
+
+    private static BatteryHistEntry createBatteryHistEntry(String packageName, String appLabel,
+            double consumePower, long uid, long foregroundUsageTimeInMs,
+            long backgroundUsageTimeInMs) {
+        final ContentValues values = new ContentValues();
+        values.put(BatteryHistEntry.KEY_PACKAGE_NAME, packageName);
+        values.put(BatteryHistEntry.KEY_APP_LABEL, appLabel);
+        values.put(BatteryHistEntry.KEY_UID, Long.valueOf(uid));
+        values.put(BatteryHistEntry.KEY_CONSUMER_TYPE,
+                Integer.valueOf(ConvertUtils.CONSUMER_TYPE_UID_BATTERY));
+        values.put(BatteryHistEntry.KEY_CONSUME_POWER, consumePower);
+        values.put(BatteryHistEntry.KEY_FOREGROUND_USAGE_TIME,
+                Long.valueOf(foregroundUsageTimeInMs));
+        values.put(BatteryHistEntry.KEY_BACKGROUND_USAGE_TIME,
+                Long.valueOf(backgroundUsageTimeInMs));
+        return new BatteryHistEntry(values);
+    }
+}
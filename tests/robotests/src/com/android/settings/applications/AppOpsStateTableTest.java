@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.AppOpsManager;
+import android.app.AppOpsManager.OpEntry;
+import android.app.AppOpsManager.PackageOps;
+import android.content.Context;
+import android.content.pm.IPackageManager;
+import android.os.UserHandle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppOpsStateTableTest {
+
+    private static final int OP = AppOpsManager.OP_SYSTEM_ALERT_WINDOW;
+    private static final int OTHER_OP = AppOpsManager.OP_WRITE_SETTINGS;
+    private static final String PKG = "pkg";
+    private static final int WORK_USER_ID = 10;
+
+    @Mock
+    private AppOpsManager mAppOpsManager;
+    @Mock
+    private IPackageManager mPackageManager;
+    private AppOpsStateTable mTable;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        final Context context = RuntimeEnvironment.application;
+        when(mAppOpsManager.getPackagesForOps(any(int[].class))).thenReturn(Arrays.asList(
+                new PackageOps(PKG, 10001, Collections.singletonList(
+                        new OpEntry(OP, AppOpsManager.MODE_ALLOWED, Collections.emptyMap()))),
+                new PackageOps(PKG, UserHandle.getUid(WORK_USER_ID, 10001),
+                        Collections.singletonList(new OpEntry(OP, AppOpsManager.MODE_IGNORED,
+                                Collections.emptyMap())))));
+        mTable = new AppOpsStateTable(context, mAppOpsManager, mPackageManager);
+    }
+
+    @Test
+    public void getModes_shouldReturnModeOfEachUser() {
+        final AppOpsStateTable.Modes modes = mTable.getModes(new int[] {OP});
+
+        assertThat(modes.get(0, PKG, AppOpsManager.MODE_DEFAULT))
+                .isEqualTo(AppOpsManager.MODE_ALLOWED);
+        assertThat(modes.get(WORK_USER_ID, PKG, AppOpsManager.MODE_DEFAULT))
+                .isEqualTo(AppOpsManager.MODE_IGNORED);
+        assertThat(modes.get(0, PKG + ".other", AppOpsManager.MODE_DEFAULT))
+                .isEqualTo(AppOpsManager.MODE_DEFAULT);
+    }
+
+    @Test
+    public void getModes_calledAgain_shouldOnlyQueryMissingOps() {
+        mTable.getModes(new int[] {OP});
+        mTable.getModes(new int[] {OP, OTHER_OP});
+        mTable.getModes(new int[] {OTHER_OP, OP});
+
+        verify(mAppOpsManager).getPackagesForOps(new int[] {OP});
+        verify(mAppOpsManager).getPackagesForOps(new int[] {OTHER_OP});
+        verify(mAppOpsManager, times(2)).getPackagesForOps(any(int[].class));
+    }
+
+    @Test
+    public void getModes_opChanged_shouldQueryAgain() {
+        final ArgumentCaptor<AppOpsManager.OnOpChangedListener> watcher =
+                ArgumentCaptor.forClass(AppOpsManager.OnOpChangedListener.class);
+        mTable.getModes(new int[] {OP});
+        verify(mAppOpsManager).startWatchingMode(eq(OP), isNull(), watcher.capture());
+
+        watcher.getValue().onOpChanged(AppOpsManager.OPSTR_SYSTEM_ALERT_WINDOW, PKG);
+        mTable.getModes(new int[] {OP});
+
+        verify(mAppOpsManager, times(2)).getPackagesForOps(new int[] {OP});
+    }
+
+    @Test
+    public void getAppOpPermissionPackages_calledTwice_shouldQueryOnce() throws Exception {
+        when(mPackageManager.getAppOpPermissionPackages(anyString()))
+                .thenReturn(new String[] {PKG});
+
+        mTable.getAppOpPermissionPackages("permission");
+        assertThat(mTable.getAppOpPermissionPackages("permission")).asList().containsExactly(PKG);
+
+        verify(mPackageManager).getAppOpPermissionPackages("permission");
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.pm.ApplicationInfo;
+import android.os.Looper;
+
+import com.android.settingslib.applications.ApplicationsState;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppStateBaseBridgeTest {
+
+    @Mock
+    private ApplicationsState.Session mSession;
+    @Mock
+    private ApplicationsState mState;
+    private ArrayList<AppEntry> mApps;
+    private TestBridge mBridge;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mState.newSession(any())).thenReturn(mSession);
+        when(mState.getBackgroundLooper()).thenReturn(mock(Looper.class));
+        mApps = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            mApps.add(getMockAppEntry("pkg" + i));
+        }
+        when(mSession.getAllApps()).thenAnswer(invocation -> new ArrayList<>(mApps));
+
+        mBridge = new TestBridge(mState);
+    }
+
+    @Test
+    public void loadChangedOrAllExtraInfo_nothingLoaded_shouldLoadAll() {
+        assertThat(mBridge.loadChangedOrAllExtraInfo()).isTrue();
+
+        assertThat(mBridge.mLoadAllCount).isEqualTo(1);
+        assertThat(mBridge.mUpdatedApps).isEmpty();
+    }
+
+    @Test
+    public void loadChangedOrAllExtraInfo_packageReplaced_shouldOnlyUpdateNewEntry() {
+        mBridge.loadChangedOrAllExtraInfo();
+        final AppEntry replaced = getMockAppEntry("pkg1");
+        mApps.set(1, replaced);
+
+        assertThat(mBridge.loadChangedOrAllExtraInfo()).isTrue();
+
+        assertThat(mBridge.mLoadAllCount).isEqualTo(1);
+        assertThat(mBridge.mUpdatedApps).containsExactly(replaced);
+    }
+
+    @Test
+    public void loadChangedOrAllExtraInfo_packageRemoved_shouldLoadNothing() {
+        mBridge.loadChangedOrAllExtraInfo();
+        mApps.remove(0);
+
+        assertThat(mBridge.loadChangedOrAllExtraInfo()).isFalse();
+
+        assertThat(mBridge.mLoadAllCount).isEqualTo(1);
+        assertThat(mBridge.mUpdatedApps).isEmpty();
+    }
+
+    @Test
+    public void loadChangedOrAllExtraInfo_mostPackagesChanged_shouldLoadAll() {
+        mBridge.loadChangedOrAllExtraInfo();
+        for (int i = 0; i < 3; i++) {
+            mApps.set(i, getMockAppEntry("pkg" + i));
+        }
+
+        assertThat(mBridge.loadChangedOrAllExtraInfo()).isTrue();
+
+        assertThat(mBridge.mLoadAllCount).isEqualTo(2);
+        assertThat(mBridge.mUpdatedApps).isEmpty();
+    }
+
+    @Test
+    public void onLoadEntriesCompleted_afterPackageAdded_shouldOnlyUpdateNewEntry() {
+        when(mState.getBackgroundLooper()).thenReturn(Looper.getMainLooper());
+        mBridge = new TestBridge(mState);
+        mBridge.onLoadEntriesCompleted();
+        shadowOf(Looper.getMainLooper()).idle();
+        final AppEntry added = getMockAppEntry("pkg4");
+
+        // The entry of the added package is only created after the package list changed.
+        mBridge.onPackageListChanged();
+        shadowOf(Looper.getMainLooper()).idle();
+        mApps.add(added);
+        mBridge.onLoadEntriesCompleted();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(mBridge.mLoadAllCount).isEqualTo(1);
+        assertThat(mBridge.mUpdatedApps).containsExactly(added);
+    }
+
+    private static AppEntry getMockAppEntry(String pkg) {
+        final AppEntry entry = mock(AppEntry.class);
+        entry.info = new ApplicationInfo();
+        entry.info.packageName = pkg;
+        return entry;
+    }
+
+    private static class TestBridge extends AppStateBaseBridge {
+        private final List<AppEntry> mUpdatedApps = new ArrayList<>();
+        private int mLoadAllCount;
+
+        TestBridge(ApplicationsState appState) {
+            super(appState, mock(Callback.class));
+        }
+
+        @Override
+        protected void loadAllExtraInfo() {
+            mLoadAllCount++;
+        }
+
+        @Override
+        protected void updateExtraInfo(AppEntry app, String pkg, int uid) {
+            mUpdatedApps.add(app);
+        }
+    }
+}
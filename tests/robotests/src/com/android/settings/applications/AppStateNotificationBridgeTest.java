@@ -39,6 +39,7 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -96,6 +97,7 @@ public class AppStateNotificationBridgeTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        NotificationUsageAggregate.clearAll();
         when(mState.newSession(any())).thenReturn(mSession);
         when(mState.getBackgroundLooper()).thenReturn(mock(Looper.class));
         when(mBackend.getNotificationsBanned(anyString(), anyInt())).thenReturn(true);
@@ -249,6 +251,27 @@ public class AppStateNotificationBridgeTest {
         assertThat(((NotificationsSentState) apps.get(0).extraInfo).blockable).isTrue();
     }
 
+    @Test
+    public void testLoadChangedExtraInfo_shouldUseAggregatedEvents() throws RemoteException {
+        List<Event> events = new ArrayList<>();
+        Event good = new Event();
+        good.mEventType = Event.NOTIFICATION_INTERRUPTION;
+        good.mPackage = PKG2;
+        good.mTimeStamp = 1;
+        events.add(good);
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
+                .thenReturn(getUsageEvents(events));
+        ArrayList<AppEntry> changedApps = new ArrayList<>();
+        changedApps.add(getMockAppEntry(PKG2));
+
+        mBridge.loadChangedExtraInfo(changedApps);
+
+        assertThat(((NotificationsSentState) changedApps.get(0).extraInfo).sentCount)
+                .isEqualTo(1);
+        verify(mUsageStats, never()).queryEventsForPackageForUser(
+                anyLong(), anyLong(), anyInt(), anyString(), anyString());
+    }
+
     @Test
     public void testLoadAllExtraInfo_multiplePkgs() throws RemoteException {
         List<Event> events = new ArrayList<>();
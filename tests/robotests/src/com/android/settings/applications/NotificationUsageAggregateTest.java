@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static android.text.format.DateUtils.DAY_IN_MILLIS;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.usage.IUsageStatsManager;
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageEvents.Event;
+import android.os.Parcel;
+import android.util.ArrayMap;
+
+import com.android.settings.applications.AppStateNotificationBridge.NotificationsSentState;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class NotificationUsageAggregateTest {
+
+    private static final String PKG1 = "pkg1";
+    private static final String PKG2 = "pkg2";
+    private static final String CALLING_PKG = "com.android.settings";
+    private static final long NOW = 100 * DAY_IN_MILLIS + DAY_IN_MILLIS / 2;
+
+    @Mock
+    private IUsageStatsManager mUsageStats;
+    private NotificationUsageAggregate mAggregate;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        NotificationUsageAggregate.clearAll();
+        mAggregate = NotificationUsageAggregate.getInstance(0 /* userId */);
+    }
+
+    @Test
+    public void collect_calledAgain_shouldOnlyScanEventsSinceLastCall() throws Exception {
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), eq(0), anyString()))
+                .thenReturn(getUsageEvents(PKG1, NOW - DAY_IN_MILLIS, NOW - 1));
+        collect(NOW);
+
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), eq(0), anyString()))
+                .thenReturn(getUsageEvents(PKG1, NOW + 5));
+        final Map<String, NotificationsSentState> states = collect(NOW + 10);
+
+        verify(mUsageStats).queryEventsForUser(NOW, NOW + 10, 0, CALLING_PKG);
+        final NotificationsSentState state = states.get(AppStateNotificationBridge.getKey(0, PKG1));
+        assertThat(state.sentCount).isEqualTo(3);
+        assertThat(state.lastSent).isEqualTo(NOW + 5);
+    }
+
+    @Test
+    public void collect_dayLeftWindow_shouldRollOffItsEvents() throws Exception {
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), eq(0), anyString()))
+                .thenReturn(getUsageEvents(PKG1, NOW - 6 * DAY_IN_MILLIS))
+                .thenReturn(getUsageEvents(PKG2, NOW + DAY_IN_MILLIS));
+        assertThat(collect(NOW)).containsKey(AppStateNotificationBridge.getKey(0, PKG1));
+
+        final Map<String, NotificationsSentState> states = collect(NOW + 2 * DAY_IN_MILLIS);
+
+        assertThat(states).doesNotContainKey(AppStateNotificationBridge.getKey(0, PKG1));
+        assertThat(states.get(AppStateNotificationBridge.getKey(0, PKG2)).sentCount).isEqualTo(1);
+    }
+
+    @Test
+    public void collect_eventLeftWindow_shouldRollOffExactlyAfterSevenDays() throws Exception {
+        final long hour = DAY_IN_MILLIS / 24;
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), eq(0), anyString()))
+                .thenReturn(getUsageEvents(PKG1, NOW - 7 * DAY_IN_MILLIS + hour, NOW - hour))
+                .thenReturn(getUsageEvents(PKG1));
+        assertThat(collect(NOW).get(AppStateNotificationBridge.getKey(0, PKG1)).sentCount)
+                .isEqualTo(2);
+
+        // The oldest event leaves the window within the same day.
+        final Map<String, NotificationsSentState> states = collect(NOW + 2 * hour);
+
+        final NotificationsSentState state = states.get(AppStateNotificationBridge.getKey(0, PKG1));
+        assertThat(state.sentCount).isEqualTo(1);
+        assertThat(state.lastSent).isEqualTo(NOW - hour);
+    }
+
+    @Test
+    public void collect_watermarkExpired_shouldScanWholeWindow() throws Exception {
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), eq(0), anyString()))
+                .thenReturn(getUsageEvents(PKG1, NOW - 1))
+                .thenReturn(getUsageEvents(PKG2, NOW + 9 * DAY_IN_MILLIS));
+        collect(NOW);
+
+        final long later = NOW + 10 * DAY_IN_MILLIS;
+        final Map<String, NotificationsSentState> states = collect(later);
+
+        verify(mUsageStats).queryEventsForUser(
+                later - 7 * DAY_IN_MILLIS, later, 0, CALLING_PKG);
+        assertThat(states.keySet()).containsExactly(AppStateNotificationBridge.getKey(0, PKG2));
+    }
+
+    private Map<String, NotificationsSentState> collect(long now) {
+        final Map<String, NotificationsSentState> states = new ArrayMap<>();
+        mAggregate.collect(mUsageStats, CALLING_PKG, now, states);
+        return states;
+    }
+
+    private static UsageEvents getUsageEvents(String pkg, long... timestamps) {
+        final List<Event> events = new ArrayList<>();
+        for (long timestamp : timestamps) {
+            final Event event = new Event();
+            event.mEventType = Event.NOTIFICATION_INTERRUPTION;
+            event.mPackage = pkg;
+            event.mTimeStamp = timestamp;
+            events.add(event);
+        }
+        final UsageEvents usageEvents = new UsageEvents(events, new String[] {PKG1, PKG2});
+        final Parcel parcel = Parcel.obtain();
+        parcel.setDataPosition(0);
+        usageEvents.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        return UsageEvents.CREATOR.createFromParcel(parcel);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.android.internal.app.procstats.ProcessStats;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProcStatsDataTest {
+
+    private static final long DURATION_3_HOURS = 3 * 60 * 60 * 1000;
+    private static final long DURATION_1_DAY = 24 * 60 * 60 * 1000;
+
+    private TestProcStatsData mData;
+
+    @Before
+    public void setUp() {
+        mData = new TestProcStatsData(RuntimeEnvironment.application);
+        mData.setDuration(DURATION_3_HOURS);
+        mData.setDuration(DURATION_1_DAY);
+    }
+
+    @Test
+    public void setDuration_recentlyShown_shouldRestoreTablesWithoutLoading() {
+        mData.setDuration(DURATION_3_HOURS);
+
+        assertThat(mData.getDuration()).isEqualTo(DURATION_3_HOURS);
+        assertThat(mData.mLoadCount).isEqualTo(2);
+        assertThat(mData.mAggregateCount).isEqualTo(2);
+    }
+
+    @Test
+    public void setDuration_tablesExpired_shouldLoadAgain() {
+        SystemClock.sleep(ProcStatsData.MAX_TABLES_AGE + 1);
+
+        mData.setDuration(DURATION_3_HOURS);
+
+        assertThat(mData.mLoadCount).isEqualTo(3);
+        assertThat(mData.mAggregateCount).isEqualTo(3);
+    }
+
+    @Test
+    public void refreshStats_forceLoad_shouldRebuildTablesOfOtherDurations() {
+        mData.refreshStats(true /* forceLoad */);
+        assertThat(mData.mLoadCount).isEqualTo(3);
+
+        mData.setDuration(DURATION_3_HOURS);
+
+        assertThat(mData.mLoadCount).isEqualTo(4);
+        assertThat(mData.mAggregateCount).isEqualTo(4);
+    }
+
+    @Test
+    public void refreshStats_recentTables_shouldRestoreThem() {
+        mData.refreshStats(false /* forceLoad */);
+
+        assertThat(mData.mLoadCount).isEqualTo(2);
+        assertThat(mData.mAggregateCount).isEqualTo(2);
+    }
+
+    @Test
+    public void setMemStates_shouldRebuildTablesOfOtherDurations() {
+        mData.setMemStates(ProcessStats.ALL_MEM_ADJ);
+        assertThat(mData.mAggregateCount).isEqualTo(3);
+
+        mData.setDuration(DURATION_3_HOURS);
+
+        assertThat(mData.mAggregateCount).isEqualTo(4);
+    }
+
+    private static class TestProcStatsData extends ProcStatsData {
+        private int mLoadCount;
+        private int mAggregateCount;
+
+        TestProcStatsData(Context context) {
+            super(context, false /* useXfer */);
+        }
+
+        @Override
+        void load() {
+            mLoadCount++;
+        }
+
+        @Override
+        void aggregateEntries() {
+            mAggregateCount++;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.android.settings.applications.RunningState.CONTENTS_UPDATE_DELAY;
+import static com.android.settings.applications.RunningState.MAX_CONTENTS_UPDATE_DELAY;
+import static com.android.settings.applications.RunningState.OnRefreshUiListener.REFRESH_DATA;
+import static com.android.settings.applications.RunningState.OnRefreshUiListener.REFRESH_STRUCTURE;
+import static com.android.settings.applications.RunningState.OnRefreshUiListener.REFRESH_TIME;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.ActivityManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.os.Process;
+
+import com.android.settings.R;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class RunningStateTest {
+
+    private static final String CLIENT_PACKAGE = "com.android.client";
+    private static final long MEMORY = 1000L * 1000 * 1000;
+
+    @Mock
+    private PackageManager mPackageManager;
+    private Context mContext;
+    private RunningState mState;
+
+    @Before
+    public void setUp() throws PackageManager.NameNotFoundException {
+        MockitoAnnotations.initMocks(this);
+        mContext = spy(RuntimeEnvironment.application);
+        doReturn(mPackageManager).when(mContext).getPackageManager();
+        when(mPackageManager.getResourcesForApplication(CLIENT_PACKAGE))
+                .thenReturn(mContext.getResources());
+        mState = RunningState.getInstance(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        mState.mBackgroundThread.quit();
+        RunningState.sInstance = null;
+    }
+
+    @Test
+    public void getRefresh_structureChanged_shouldRefreshStructure() {
+        assertThat(RunningState.getRefresh(true /* structureChanged */, true /* dataChanged */))
+                .isEqualTo(REFRESH_STRUCTURE);
+    }
+
+    @Test
+    public void getRefresh_onlyDataChanged_shouldRefreshData() {
+        assertThat(RunningState.getRefresh(false /* structureChanged */, true /* dataChanged */))
+                .isEqualTo(REFRESH_DATA);
+    }
+
+    @Test
+    public void getRefresh_nothingChanged_shouldOnlyRefreshTime() {
+        assertThat(RunningState.getRefresh(false /* structureChanged */, false /* dataChanged */))
+                .isEqualTo(REFRESH_TIME);
+    }
+
+    @Test
+    public void updateShownMemory_sameShownMemory_shouldReturnFalse() {
+        mState.mBackgroundProcessMemory = MEMORY;
+        assertThat(mState.updateShownMemory(mContext, MEMORY)).isTrue();
+
+        // Too small to change the shown sizes.
+        mState.mBackgroundProcessMemory = MEMORY + 1;
+
+        assertThat(mState.updateShownMemory(mContext, MEMORY + 1)).isFalse();
+    }
+
+    @Test
+    public void updateShownMemory_freeMemoryChanged_shouldReturnTrue() {
+        mState.updateShownMemory(mContext, MEMORY);
+
+        assertThat(mState.updateShownMemory(mContext, 2 * MEMORY)).isTrue();
+    }
+
+    @Test
+    public void updateShownMemory_processMemoryChanged_shouldReturnTrue() {
+        mState.updateShownMemory(mContext, MEMORY);
+        mState.mServiceProcessMemory = MEMORY;
+
+        assertThat(mState.updateShownMemory(mContext, MEMORY)).isTrue();
+    }
+
+    @Test
+    public void getNextUpdateDelay_unchangedPolls_shouldBackOffUpToMaxDelay() {
+        long delay = CONTENTS_UPDATE_DELAY;
+
+        delay = RunningState.getNextUpdateDelay(delay, REFRESH_TIME, true /* poll */);
+        assertThat(delay).isEqualTo(2 * CONTENTS_UPDATE_DELAY);
+
+        for (int i = 0; i < 10; i++) {
+            delay = RunningState.getNextUpdateDelay(delay, REFRESH_TIME, true /* poll */);
+        }
+        assertThat(delay).isEqualTo(MAX_CONTENTS_UPDATE_DELAY);
+    }
+
+    @Test
+    public void getNextUpdateDelay_changed_shouldReset() {
+        assertThat(RunningState.getNextUpdateDelay(MAX_CONTENTS_UPDATE_DELAY, REFRESH_DATA,
+                true /* poll */)).isEqualTo(CONTENTS_UPDATE_DELAY);
+        assertThat(RunningState.getNextUpdateDelay(MAX_CONTENTS_UPDATE_DELAY, REFRESH_STRUCTURE,
+                true /* poll */)).isEqualTo(CONTENTS_UPDATE_DELAY);
+    }
+
+    @Test
+    public void getNextUpdateDelay_notAPoll_shouldReset() {
+        assertThat(RunningState.getNextUpdateDelay(MAX_CONTENTS_UPDATE_DELAY, REFRESH_TIME,
+                false /* poll */)).isEqualTo(CONTENTS_UPDATE_DELAY);
+    }
+
+    @Test
+    public void updateService_sameClient_shouldReuseDescription() throws Exception {
+        final RunningState.ProcessItem process = createProcessWithService();
+        process.updateService(mContext, createService(R.string.settings_label));
+        final String description =
+                process.mServices.values().iterator().next().mDescription;
+
+        assertThat(process.updateService(mContext, createService(R.string.settings_label)))
+                .isFalse();
+
+        assertThat(process.mServices.values().iterator().next().mDescription)
+                .isSameInstanceAs(description);
+        verify(mPackageManager, times(1)).getResourcesForApplication(CLIENT_PACKAGE);
+    }
+
+    @Test
+    public void updateService_clientLabelChanged_shouldLoadDescriptionAgain() throws Exception {
+        final RunningState.ProcessItem process = createProcessWithService();
+        process.updateService(mContext, createService(R.string.settings_label));
+
+        process.updateService(mContext, createService(R.string.settings_label_launcher));
+
+        verify(mPackageManager, times(2)).getResourcesForApplication(CLIENT_PACKAGE);
+    }
+
+    private RunningState.ProcessItem createProcessWithService() {
+        final RunningState.ProcessItem process =
+                new RunningState.ProcessItem(mContext, Process.myUid(), mContext.getPackageName());
+        // Services are normally added with their info from the package manager.
+        final ActivityManager.RunningServiceInfo service = createService(0 /* clientLabel */);
+        final RunningState.ServiceItem item = new RunningState.ServiceItem(0 /* userId */);
+        item.mRunningService = service;
+        item.mServiceInfo = new ServiceInfo();
+        process.mServices.put(service.service, item);
+        return process;
+    }
+
+    private ActivityManager.RunningServiceInfo createService(int clientLabel) {
+        final ActivityManager.RunningServiceInfo service =
+                new ActivityManager.RunningServiceInfo();
+        service.service = new ComponentName(mContext.getPackageName(), "Service");
+        service.uid = Process.myUid();
+        service.pid = Process.myPid();
+        service.process = mContext.getPackageName();
+        service.started = true;
+        if (clientLabel != 0) {
+            service.clientPackage = CLIENT_PACKAGE;
+            service.clientLabel = clientLabel;
+        }
+        return service;
+    }
+}
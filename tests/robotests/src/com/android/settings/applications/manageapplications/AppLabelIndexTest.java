@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.applications.manageapplications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppLabelIndexTest {
+
+    private static final String[] LABELS =
+            {"Apricot", "Banana", "Cantaloupe", "Café", "Fig", "Mango", null};
+
+    private ArrayList<AppEntry> mEntries;
+    private AppLabelIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mEntries = new ArrayList<>();
+        for (String label : LABELS) {
+            final AppEntry entry = mock(AppEntry.class);
+            entry.label = label;
+            mEntries.add(entry);
+        }
+        mIndex = new AppLabelIndex(mEntries, Locale.US);
+    }
+
+    @Test
+    public void filter_emptyQuery_shouldReturnAllEntries() {
+        assertThat(mIndex.filter("")).isSameInstanceAs(mEntries);
+    }
+
+    @Test
+    public void filter_shortQuery_shouldMatchIgnoringCase() {
+        assertThat(labelsOf(mIndex.filter("AN"))).containsExactly("Banana", "Cantaloupe", "Mango")
+                .inOrder();
+    }
+
+    @Test
+    public void filter_longQuery_shouldMatchSubstring() {
+        assertThat(labelsOf(mIndex.filter("talou"))).containsExactly("Cantaloupe");
+        assertThat(mIndex.filter("orange")).isEmpty();
+    }
+
+    @Test
+    public void filter_queryWithoutAccent_shouldMatchAccentedLabel() {
+        assertThat(labelsOf(mIndex.filter("cafe"))).containsExactly("Café");
+    }
+
+    @Test
+    public void filter_typedQuery_shouldMatchSameAsFreshQuery() {
+        mIndex.filter("a");
+        mIndex.filter("an");
+        final List<AppEntry> narrowed = mIndex.filter("ana");
+
+        final AppLabelIndex freshIndex = new AppLabelIndex(mEntries, Locale.US);
+        assertThat(narrowed).containsExactlyElementsIn(freshIndex.filter("ana")).inOrder();
+        assertThat(labelsOf(narrowed)).containsExactly("Banana");
+    }
+
+    @Test
+    public void filter_queryShortened_shouldWidenResults() {
+        mIndex.filter("mango");
+
+        assertThat(labelsOf(mIndex.filter("an"))).containsExactly("Banana", "Cantaloupe", "Mango")
+                .inOrder();
+    }
+
+    private static List<String> labelsOf(List<AppEntry> entries) {
+        final List<String> labels = new ArrayList<>();
+        for (AppEntry entry : entries) {
+            labels.add(entry.label);
+        }
+        return labels;
+    }
+}
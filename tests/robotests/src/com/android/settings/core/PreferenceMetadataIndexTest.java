@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEYWORDS;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_PREF_TYPE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Bundle;
+
+import com.android.settings.R;
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreferenceMetadataIndexTest {
+
+    private static final int FLAGS = MetadataFlag.FLAG_NEED_KEY
+            | MetadataFlag.FLAG_NEED_PREF_TYPE
+            | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
+            | MetadataFlag.FLAG_NEED_PREF_TITLE
+            | MetadataFlag.FLAG_NEED_KEYWORDS;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = getApplicationContext();
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getMetadata_sameAsParsing() throws Exception {
+        final List<Bundle> expected = PreferenceXmlParserUtils.parseMetadata(mContext,
+                R.xml.location_settings, FLAGS);
+
+        final List<Bundle> metadata = new PreferenceMetadataIndex().getMetadata(mContext,
+                R.xml.location_settings, FLAGS);
+
+        assertThat(toStrings(metadata)).isEqualTo(toStrings(expected));
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getMetadata_withoutPrefScreenFlag_skipsScreen() throws Exception {
+        final List<Bundle> metadata = new PreferenceMetadataIndex().getMetadata(mContext,
+                R.xml.location_settings, MetadataFlag.FLAG_NEED_PREF_TYPE);
+
+        for (Bundle bundle : metadata) {
+            assertThat(bundle.getString(METADATA_PREF_TYPE))
+                    .isNotEqualTo(PreferenceXmlParserUtils.PREF_SCREEN_TAG);
+        }
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getMetadata_onlyContainsRequestedFlags() throws Exception {
+        final List<Bundle> metadata = new PreferenceMetadataIndex().getMetadata(mContext,
+                R.xml.location_settings, MetadataFlag.FLAG_NEED_KEY);
+
+        assertThat(metadata).isNotEmpty();
+        for (Bundle bundle : metadata) {
+            assertThat(bundle.keySet()).containsExactly(METADATA_KEY);
+        }
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getMetadata_newInstance_readsPersistedIndex() throws Exception {
+        final List<Bundle> expected = new PreferenceMetadataIndex().getMetadata(mContext,
+                R.xml.location_settings, FLAGS);
+        final File indexDir = new File(mContext.getCacheDir(), PreferenceMetadataIndex.INDEX_DIR);
+
+        final List<Bundle> metadata = new PreferenceMetadataIndex().getMetadata(mContext,
+                R.xml.location_settings, FLAGS);
+
+        assertThat(indexDir.exists()).isTrue();
+        assertThat(toStrings(metadata)).isEqualTo(toStrings(expected));
+    }
+
+    @Test
+    public void getResourceKey_windowChanged_shouldNotChange() {
+        final Configuration configuration = new Configuration();
+        configuration.setLocale(Locale.US);
+        final Configuration rotated = new Configuration(configuration);
+        rotated.orientation = Configuration.ORIENTATION_LANDSCAPE;
+        rotated.screenWidthDp = 800;
+        rotated.screenHeightDp = 400;
+
+        assertThat(PreferenceMetadataIndex.getResourceKey(rotated))
+                .isEqualTo(PreferenceMetadataIndex.getResourceKey(configuration));
+    }
+
+    @Test
+    public void getResourceKey_localeChanged_shouldChange() {
+        final Configuration configuration = new Configuration();
+        configuration.setLocale(Locale.US);
+        final Configuration french = new Configuration(configuration);
+        french.setLocale(Locale.FRANCE);
+
+        assertThat(PreferenceMetadataIndex.getResourceKey(french))
+                .isNotEqualTo(PreferenceMetadataIndex.getResourceKey(configuration));
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getMetadata_localeChanged_keepsOnlyNewIndex() throws Exception {
+        final PreferenceMetadataIndex index = new PreferenceMetadataIndex();
+        index.getMetadata(mContext, R.xml.location_settings, FLAGS);
+        final Configuration configuration =
+                new Configuration(mContext.getResources().getConfiguration());
+        configuration.setLocale(Locale.FRANCE);
+        final Context frenchContext = mContext.createConfigurationContext(configuration);
+
+        index.getMetadata(frenchContext, R.xml.location_settings, FLAGS);
+
+        final File[] versions =
+                new File(mContext.getCacheDir(), PreferenceMetadataIndex.INDEX_DIR).listFiles();
+        assertThat(versions).hasLength(1);
+        final String[] configurations = versions[0].list();
+        assertThat(configurations).asList().containsExactly(
+                PreferenceMetadataIndex.getResourceKey(
+                        frenchContext.getResources().getConfiguration()));
+    }
+
+    @Test
+    public void writeEntries_readEntries_keepsNullValues() throws Exception {
+        final Bundle entry = new Bundle();
+        entry.putString(METADATA_KEY, "key");
+        entry.putString(METADATA_TITLE, null);
+        final List<Bundle> entries = new ArrayList<>();
+        entries.add(entry);
+        final File file = new File(mContext.getCacheDir(), "entries");
+
+        PreferenceMetadataIndex.writeEntries(file, entries);
+        final List<Bundle> result = PreferenceMetadataIndex.readEntries(file);
+
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).getString(METADATA_KEY)).isEqualTo("key");
+        assertThat(result.get(0).getString(METADATA_TITLE)).isNull();
+    }
+
+    private static List<String> toStrings(List<Bundle> metadata) {
+        final List<String> result = new ArrayList<>();
+        for (Bundle bundle : metadata) {
+            result.add(bundle.getString(METADATA_KEY) + "|"
+                    + bundle.getString(METADATA_PREF_TYPE) + "|"
+                    + bundle.getString(METADATA_CONTROLLER) + "|"
+                    + bundle.getString(METADATA_TITLE) + "|"
+                    + bundle.getString(METADATA_KEYWORDS));
+        }
+        return result;
+    }
+}
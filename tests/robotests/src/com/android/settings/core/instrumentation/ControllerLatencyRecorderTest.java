@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.instrumentation;
+
+import static com.android.settings.core.instrumentation.ControllerLatencyRecorder.OP_IS_AVAILABLE;
+import static com.android.settings.core.instrumentation.ControllerLatencyRecorder.OP_UPDATE_STATE;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ControllerLatencyRecorderTest {
+
+    private ControllerLatencyRecorder mRecorder;
+
+    @Before
+    public void setUp() {
+        mRecorder = new ControllerLatencyRecorder();
+    }
+
+    @Test
+    public void toJson_noRecord_isEmpty() throws JSONException {
+        assertThat(mRecorder.toJson().length()).isEqualTo(0);
+    }
+
+    @Test
+    public void toJson_recorded_containsOnlyRecordedOperations() throws JSONException {
+        mRecorder.recordElapsed(String.class, OP_IS_AVAILABLE, 3_000_000L);
+
+        final JSONObject controller = mRecorder.toJson().getJSONObject(String.class.getName());
+
+        assertThat(controller.has("isAvailable")).isTrue();
+        assertThat(controller.has("updateState")).isFalse();
+    }
+
+    @Test
+    public void toJson_multipleRecords_aggregatesHistogram() throws JSONException {
+        mRecorder.recordElapsed(String.class, OP_UPDATE_STATE, 1_000_000L);
+        mRecorder.recordElapsed(String.class, OP_UPDATE_STATE, 5_000_000L);
+
+        final JSONObject histogram = mRecorder.toJson()
+                .getJSONObject(String.class.getName())
+                .getJSONObject("updateState");
+
+        assertThat(histogram.getLong("count")).isEqualTo(2);
+        assertThat(histogram.getLong("total_us")).isEqualTo(6000);
+        assertThat(histogram.getLong("max_us")).isEqualTo(5000);
+        assertThat(histogram.getJSONArray("buckets").length())
+                .isEqualTo(ControllerLatencyRecorder.BUCKET_COUNT);
+    }
+
+    @Test
+    public void toJson_percentiles_reportBucketUpperBound() throws JSONException {
+        for (int i = 0; i < 99; i++) {
+            mRecorder.recordElapsed(String.class, OP_UPDATE_STATE, 1_000L);
+        }
+        mRecorder.recordElapsed(String.class, OP_UPDATE_STATE, 100_000L);
+
+        final JSONObject histogram = mRecorder.toJson()
+                .getJSONObject(String.class.getName())
+                .getJSONObject("updateState");
+
+        assertThat(histogram.getLong("p50_us")).isEqualTo(2);
+        assertThat(histogram.getLong("p99_us")).isEqualTo(2);
+    }
+}
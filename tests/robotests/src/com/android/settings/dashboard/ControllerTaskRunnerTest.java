@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.dashboard;
+
+import static com.android.settingslib.core.instrumentation.Instrumentable.METRICS_CATEGORY_UNKNOWN;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import androidx.preference.Preference;
+import androidx.preference.PreferenceManager;
+import androidx.preference.PreferenceScreen;
+
+import com.android.settingslib.core.AbstractPreferenceController;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class ControllerTaskRunnerTest {
+    private static final long TIMEOUT_MS = 50;
+
+    private Context mContext;
+    private PreferenceScreen mScreen;
+    private ExecutorService mExecutor;
+    private ControllerTaskRunner mRunner;
+    private List<String> mUpdatedKeys;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        final PreferenceManager preferenceManager = new PreferenceManager(mContext);
+        mScreen = preferenceManager.createPreferenceScreen(mContext);
+        mExecutor = Executors.newFixedThreadPool(2);
+        mRunner = new ControllerTaskRunner(mExecutor, TIMEOUT_MS);
+        mUpdatedKeys = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void run_commitsInControllerOrder() {
+        final TestPreferenceController controller1 = createController("key1");
+        final TestPreferenceController controller2 = createController("key2");
+        final TestPreferenceController controller3 = createController("key3");
+
+        mRunner.run(Arrays.asList(createTask(controller1), createTask(controller2),
+                createTask(controller3)));
+
+        assertThat(mUpdatedKeys).containsExactly("key1", "key2", "key3").inOrder();
+    }
+
+    @Test
+    public void run_controllerNotAvailable_skipsUpdateState() {
+        final TestPreferenceController controller = createController("key1");
+        controller.mAvailable = false;
+
+        mRunner.run(Arrays.asList(createTask(controller)));
+
+        assertThat(mUpdatedKeys).isEmpty();
+    }
+
+    @Test
+    public void run_controllerLate_usesLastKnownState() {
+        final TestPreferenceController controller = createController("key1");
+        mRunner.run(Arrays.asList(createTask(controller)));
+        mUpdatedKeys.clear();
+
+        controller.mBlocker = new CountDownLatch(1);
+        mRunner.run(Arrays.asList(createTask(controller)));
+
+        assertThat(mUpdatedKeys).containsExactly("key1");
+    }
+
+    @Test
+    public void run_controllerLateWithoutLastKnownState_skipsUpdateState() {
+        final TestPreferenceController controller = createController("key1");
+        controller.mBlocker = new CountDownLatch(1);
+
+        mRunner.run(Arrays.asList(createTask(controller)));
+
+        assertThat(mUpdatedKeys).isEmpty();
+    }
+
+    @Test
+    public void run_controllerLate_commitsOnceFinished() throws Exception {
+        final TestPreferenceController controller = createController("key1");
+        controller.mBlocker = new CountDownLatch(1);
+        mRunner.run(Arrays.asList(createTask(controller)));
+
+        controller.mBlocker.countDown();
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(1, TimeUnit.SECONDS);
+
+        assertThat(mUpdatedKeys).containsExactly("key1");
+    }
+
+    @Test
+    public void cancelLateCommits_controllerLate_dropsResult() throws Exception {
+        final TestPreferenceController controller = createController("key1");
+        controller.mBlocker = new CountDownLatch(1);
+        mRunner.run(Arrays.asList(createTask(controller)));
+
+        mRunner.cancelLateCommits();
+        controller.mBlocker.countDown();
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(1, TimeUnit.SECONDS);
+
+        assertThat(mUpdatedKeys).isEmpty();
+    }
+
+    private TestPreferenceController createController(String key) {
+        final Preference preference = new Preference(mContext);
+        preference.setKey(key);
+        mScreen.addPreference(preference);
+        return new TestPreferenceController(mContext, key);
+    }
+
+    private ControllerTask createTask(AbstractPreferenceController controller) {
+        return new ControllerTask(controller, mScreen, null /* metricsFeature */,
+                METRICS_CATEGORY_UNKNOWN);
+    }
+
+    private class TestPreferenceController extends AbstractPreferenceController {
+        private final String mKey;
+        private boolean mAvailable = true;
+        private CountDownLatch mBlocker;
+
+        TestPreferenceController(Context context, String key) {
+            super(context);
+            mKey = key;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            if (mBlocker != null) {
+                try {
+                    mBlocker.await();
+                } catch (InterruptedException e) {
+                    // Ignored, the test is over.
+                }
+            }
+            return mAvailable;
+        }
+
+        @Override
+        public String getPreferenceKey() {
+            return mKey;
+        }
+
+        @Override
+        public void updateState(Preference preference) {
+            mUpdatedKeys.add(preference.getKey());
+        }
+    }
+}
@@ -222,6 +222,38 @@ public class DashboardFragmentTest {
         verify(mTestFragment.getContentResolver()).unregisterContentObserver(observer);
     }
 
+    @Test
+    public void onStop_shouldCancelLateControllerCommits() {
+        final ControllerTaskRunner runner = mock(ControllerTaskRunner.class);
+        mTestFragment.mControllerTaskRunner = runner;
+
+        mTestFragment.onStop();
+
+        verify(runner).cancelLateCommits();
+    }
+
+    @Test
+    public void onResume_paralleledControllers_shouldUpdateStatesThroughRunner() {
+        final ControllerTaskRunner runner = mock(ControllerTaskRunner.class);
+        mTestFragment.mControllerTaskRunner = runner;
+        mTestFragment.setUsingControllerEnhancement(true);
+
+        mTestFragment.onResume();
+
+        verify(runner).run(any());
+    }
+
+    @Test
+    public void onResume_notParalleledControllers_shouldNotUseRunner() {
+        final ControllerTaskRunner runner = mock(ControllerTaskRunner.class);
+        mTestFragment.mControllerTaskRunner = runner;
+        mTestFragment.setUsingControllerEnhancement(false);
+
+        mTestFragment.onResume();
+
+        verify(runner, never()).run(any());
+    }
+
     @Test
     public void updateState_skipUnavailablePrefs() {
         final List<AbstractPreferenceController> preferenceControllers = mTestFragment.mControllers;
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.dashboard;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Bundle;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.provider.Settings;
+
+import com.android.settingslib.drawer.ActivityTile;
+import com.android.settingslib.drawer.CategoryKey;
+import com.android.settingslib.drawer.DashboardCategory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowBuild;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class TileSnapshotTest {
+    private static final String TILE_PACKAGE = "com.android.tile";
+    private static final String OTHER_PACKAGE = "com.android.other";
+    private static final String OPERATOR_ACTION =
+            "com.android.settings.OPERATOR_APPLICATION_SETTING";
+
+    @Mock
+    private PackageManager mPackageManager;
+    @Mock
+    private UserManager mUserManager;
+    private Context mContext;
+
+    @Before
+    public void setUp() throws PackageManager.NameNotFoundException {
+        MockitoAnnotations.initMocks(this);
+        mContext = spy(RuntimeEnvironment.application);
+        doReturn(mPackageManager).when(mContext).getPackageManager();
+        doReturn(mUserManager).when(mContext).getSystemService(Context.USER_SERVICE);
+        when(mUserManager.getUserProfiles()).thenReturn(Arrays.asList(UserHandle.of(0)));
+        when(mPackageManager.getPackageInfo(eq(mContext.getPackageName()), anyInt()))
+                .thenReturn(new PackageInfo());
+        when(mPackageManager.getChangedPackages(anyInt())).thenReturn(
+                new ChangedPackages(10, Collections.emptyList()));
+        when(mPackageManager.queryIntentActivities(any(Intent.class), anyInt()))
+                .thenReturn(new ArrayList<>());
+        when(mPackageManager.queryIntentContentProviders(any(Intent.class), anyInt()))
+                .thenReturn(new ArrayList<>());
+        Settings.Global.putInt(mContext.getContentResolver(), Settings.Global.BOOT_COUNT, 1);
+        new File(mContext.getCacheDir(), TileSnapshot.FILE_NAME).delete();
+    }
+
+    @Test
+    public void read_noSnapshot_shouldReturnNull() {
+        assertThat(TileSnapshot.read(mContext)).isNull();
+    }
+
+    @Test
+    public void write_thenRead_shouldRestoreCategories() {
+        createSnapshot().write(mContext);
+
+        final TileSnapshot snapshot = TileSnapshot.read(mContext);
+
+        assertThat(snapshot).isNotNull();
+        assertThat(snapshot.getCategories()).hasSize(1);
+        final DashboardCategory category = snapshot.getCategories().get(0);
+        assertThat(category.key).isEqualTo(CategoryKey.CATEGORY_HOMEPAGE);
+        assertThat(category.getTilesCount()).isEqualTo(1);
+        assertThat(category.getTile(0).getPackageName()).isEqualTo(TILE_PACKAGE);
+        assertThat(snapshot.getCompatCategories()).isEmpty();
+    }
+
+    @Test
+    public void read_afterReboot_shouldReturnNull() {
+        createSnapshot().write(mContext);
+        Settings.Global.putInt(mContext.getContentResolver(), Settings.Global.BOOT_COUNT, 2);
+
+        assertThat(TileSnapshot.read(mContext)).isNull();
+    }
+
+    @Test
+    public void isUpToDate_noPackageChanged_shouldReturnTrue() {
+        final TileSnapshot snapshot = createSnapshot();
+        when(mPackageManager.getChangedPackages(10)).thenReturn(null);
+
+        assertThat(snapshot.isUpToDate(mContext)).isTrue();
+    }
+
+    @Test
+    public void isUpToDate_unrelatedPackageChanged_shouldReturnTrueAndSkipItNextTime() {
+        final TileSnapshot snapshot = createSnapshot();
+        when(mPackageManager.getChangedPackages(10)).thenReturn(
+                new ChangedPackages(11, Arrays.asList(OTHER_PACKAGE)));
+        when(mPackageManager.getChangedPackages(11)).thenReturn(null);
+
+        assertThat(snapshot.isUpToDate(mContext)).isTrue();
+        assertThat(snapshot.isUpToDate(mContext)).isTrue();
+    }
+
+    @Test
+    public void isUpToDate_tilePackageChanged_shouldReturnFalse() {
+        final TileSnapshot snapshot = createSnapshot();
+        when(mPackageManager.getChangedPackages(10)).thenReturn(
+                new ChangedPackages(11, Arrays.asList(TILE_PACKAGE)));
+
+        assertThat(snapshot.isUpToDate(mContext)).isFalse();
+    }
+
+    @Test
+    public void isUpToDate_newPackageInjectsTiles_shouldReturnFalse() {
+        final TileSnapshot snapshot = createSnapshot();
+        when(mPackageManager.getChangedPackages(10)).thenReturn(
+                new ChangedPackages(11, Arrays.asList(OTHER_PACKAGE)));
+        final List<ResolveInfo> resolveInfos = new ArrayList<>();
+        resolveInfos.add(new ResolveInfo());
+        when(mPackageManager.queryIntentActivities(any(Intent.class), anyInt()))
+                .thenReturn(resolveInfos);
+
+        assertThat(snapshot.isUpToDate(mContext)).isFalse();
+    }
+
+    @Test
+    public void isUpToDate_newPackageInjectsOperatorTiles_shouldReturnFalse() {
+        final TileSnapshot snapshot = createSnapshot();
+        when(mPackageManager.getChangedPackages(10)).thenReturn(
+                new ChangedPackages(11, Arrays.asList(OTHER_PACKAGE)));
+        final List<ResolveInfo> resolveInfos = new ArrayList<>();
+        resolveInfos.add(new ResolveInfo());
+        when(mPackageManager.queryIntentActivities(argThat(intent -> OPERATOR_ACTION.equals(
+                intent.getAction())), anyInt())).thenReturn(resolveInfos);
+
+        assertThat(snapshot.isUpToDate(mContext)).isFalse();
+    }
+
+    @Test
+    public void isUpToDate_deviceProvisioned_shouldReturnFalse() {
+        Settings.Global.putInt(mContext.getContentResolver(),
+                Settings.Global.DEVICE_PROVISIONED, 0);
+        final TileSnapshot snapshot = createSnapshot();
+        when(mPackageManager.getChangedPackages(10)).thenReturn(null);
+        Settings.Global.putInt(mContext.getContentResolver(),
+                Settings.Global.DEVICE_PROVISIONED, 1);
+
+        assertThat(snapshot.isUpToDate(mContext)).isFalse();
+    }
+
+    @Test
+    public void write_thenRead_shouldRestoreProvisionedState() {
+        Settings.Global.putInt(mContext.getContentResolver(),
+                Settings.Global.DEVICE_PROVISIONED, 0);
+        createSnapshot().write(mContext);
+        when(mPackageManager.getChangedPackages(10)).thenReturn(null);
+
+        assertThat(TileSnapshot.read(mContext).isUpToDate(mContext)).isTrue();
+        Settings.Global.putInt(mContext.getContentResolver(),
+                Settings.Global.DEVICE_PROVISIONED, 1);
+        assertThat(TileSnapshot.read(mContext).isUpToDate(mContext)).isFalse();
+    }
+
+    @Test
+    public void read_otherBuild_shouldReturnNull() {
+        createSnapshot().write(mContext);
+        ShadowBuild.setFingerprint("other/build");
+
+        assertThat(TileSnapshot.read(mContext)).isNull();
+    }
+
+    @Test
+    public void isUpToDate_profileAdded_shouldReturnFalse() {
+        final TileSnapshot snapshot = createSnapshot();
+        when(mPackageManager.getChangedPackages(10)).thenReturn(null);
+        when(mUserManager.getUserProfiles()).thenReturn(
+                Arrays.asList(UserHandle.of(0), UserHandle.of(10)));
+
+        assertThat(snapshot.isUpToDate(mContext)).isFalse();
+    }
+
+    @Test
+    public void isUpToDate_profileQuietModeChanged_shouldReturnFalse() {
+        final UserHandle profile = UserHandle.of(10);
+        when(mUserManager.getUserProfiles()).thenReturn(Arrays.asList(UserHandle.of(0), profile));
+        final TileSnapshot snapshot = createSnapshot();
+        when(mPackageManager.getChangedPackages(10)).thenReturn(null);
+        when(mUserManager.isQuietModeEnabled(profile)).thenReturn(true);
+
+        assertThat(snapshot.isUpToDate(mContext)).isFalse();
+    }
+
+    @Test
+    public void capture_withPrevious_shouldOnlyQueryChangesSinceIt() {
+        final TileSnapshot previous = createSnapshot();
+        when(mPackageManager.getChangedPackages(10)).thenReturn(null);
+
+        final TileSnapshot snapshot = TileSnapshot.capture(mContext, previous);
+        snapshot.setCategories(new ArrayList<>(), new ArrayList<>());
+
+        verify(mPackageManager).getChangedPackages(0);
+        assertThat(snapshot.isUpToDate(mContext)).isTrue();
+    }
+
+    private TileSnapshot createSnapshot() {
+        final ActivityInfo activityInfo = new ActivityInfo();
+        activityInfo.packageName = TILE_PACKAGE;
+        activityInfo.name = "class";
+        activityInfo.metaData = new Bundle();
+        final DashboardCategory category = new DashboardCategory(CategoryKey.CATEGORY_HOMEPAGE);
+        category.addTile(new ActivityTile(activityInfo, CategoryKey.CATEGORY_HOMEPAGE));
+
+        final TileSnapshot snapshot = TileSnapshot.capture(mContext, null /* previous */);
+        snapshot.setCategories(Arrays.asList(category), new ArrayList<>());
+        return snapshot;
+    }
+}
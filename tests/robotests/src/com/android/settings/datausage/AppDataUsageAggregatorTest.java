@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static android.net.TrafficStats.UID_REMOVED;
+import static android.net.TrafficStats.UID_TETHERING;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.pm.UserInfo;
+import android.os.Process;
+import android.os.UserHandle;
+import android.os.UserManager;
+
+import com.android.settingslib.AppItem;
+import com.android.settingslib.net.UidDetailProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppDataUsageAggregatorTest {
+
+    private static final int CURRENT_USER = 0;
+    private static final int PROFILE_USER = 10;
+    private static final int OTHER_USER = 11;
+    private static final int REMOVED_USER = 12;
+    private static final int APP_ID = Process.FIRST_APPLICATION_UID + 5;
+
+    @Mock
+    private UserManager mUserManager;
+
+    private AppDataUsageAggregator mAggregator;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mUserManager.getUserInfo(OTHER_USER))
+                .thenReturn(new UserInfo(OTHER_USER, "other", 0 /* flags */));
+        mAggregator = new AppDataUsageAggregator(CURRENT_USER,
+                Arrays.asList(UserHandle.of(CURRENT_USER), UserHandle.of(PROFILE_USER)),
+                mUserManager);
+    }
+
+    @Test
+    public void build_appOfCurrentUser_shouldSumUpBuckets() {
+        final int uid = UserHandle.getUid(CURRENT_USER, APP_ID);
+        mAggregator.add(uid, 100);
+        mAggregator.add(uid, 50);
+
+        final List<AppItem> items = mAggregator.build(new int[0]);
+
+        assertThat(items).hasSize(1);
+        assertThat(items.get(0).key).isEqualTo(uid);
+        assertThat(items.get(0).category).isEqualTo(AppItem.CATEGORY_APP);
+        assertThat(items.get(0).total).isEqualTo(150);
+    }
+
+    @Test
+    public void build_appOfProfile_shouldBeListedWithProfileItem() {
+        final int uid = UserHandle.getUid(PROFILE_USER, APP_ID);
+        mAggregator.add(uid, 100);
+
+        final List<AppItem> items = mAggregator.build(new int[0]);
+
+        assertThat(items).hasSize(2);
+        final AppItem app = find(items, uid);
+        final AppItem profile = find(items, UidDetailProvider.buildKeyForUser(PROFILE_USER));
+        assertThat(app.total).isEqualTo(100);
+        assertThat(profile.category).isEqualTo(AppItem.CATEGORY_USER);
+        assertThat(profile.total).isEqualTo(100);
+        assertThat(profile.uids.get(uid)).isTrue();
+    }
+
+    @Test
+    public void build_appsOfOtherAndRemovedUsers_shouldBeCollapsed() {
+        mAggregator.add(UserHandle.getUid(OTHER_USER, APP_ID), 10);
+        mAggregator.add(UserHandle.getUid(OTHER_USER, APP_ID + 1), 20);
+        mAggregator.add(UserHandle.getUid(REMOVED_USER, APP_ID), 40);
+        mAggregator.add(UID_REMOVED, 80);
+
+        final List<AppItem> items = mAggregator.build(new int[0]);
+
+        assertThat(items).hasSize(2);
+        assertThat(find(items, UidDetailProvider.buildKeyForUser(OTHER_USER)).total)
+                .isEqualTo(30);
+        assertThat(find(items, UID_REMOVED).total).isEqualTo(120);
+        // The user is only looked up once.
+        verify(mUserManager).getUserInfo(OTHER_USER);
+    }
+
+    @Test
+    public void build_systemUids_shouldBeCollapsedIntoSystem() {
+        mAggregator.add(Process.ROOT_UID, 10);
+        mAggregator.add(Process.SYSTEM_UID, 20);
+        mAggregator.add(UID_TETHERING, 40);
+
+        final List<AppItem> items = mAggregator.build(new int[0]);
+
+        assertThat(items).hasSize(2);
+        assertThat(find(items, Process.SYSTEM_UID).total).isEqualTo(30);
+        assertThat(find(items, UID_TETHERING).total).isEqualTo(40);
+    }
+
+    @Test
+    public void build_restrictedUids_shouldOnlyMarkAppsOfProfiles() {
+        final int usedUid = UserHandle.getUid(CURRENT_USER, APP_ID);
+        final int unusedUid = UserHandle.getUid(CURRENT_USER, APP_ID + 1);
+        final int otherUserUid = UserHandle.getUid(OTHER_USER, APP_ID);
+        mAggregator.add(usedUid, 100);
+
+        final List<AppItem> items =
+                mAggregator.build(new int[] {usedUid, unusedUid, otherUserUid});
+
+        assertThat(items).hasSize(2);
+        assertThat(find(items, usedUid).restricted).isTrue();
+        assertThat(find(items, usedUid).total).isEqualTo(100);
+        assertThat(find(items, unusedUid).restricted).isTrue();
+        assertThat(find(items, unusedUid).total).isEqualTo(-1);
+    }
+
+    @Test
+    public void build_shouldSortByUsage() {
+        mAggregator.add(UserHandle.getUid(CURRENT_USER, APP_ID), 10);
+        mAggregator.add(UserHandle.getUid(CURRENT_USER, APP_ID + 1), 30);
+        mAggregator.add(UserHandle.getUid(CURRENT_USER, APP_ID + 2), 20);
+
+        final List<AppItem> items = mAggregator.build(new int[0]);
+
+        assertThat(items.get(0).total).isEqualTo(30);
+        assertThat(items.get(1).total).isEqualTo(20);
+        assertThat(items.get(2).total).isEqualTo(10);
+    }
+
+    private static AppItem find(List<AppItem> items, int key) {
+        for (AppItem item : items) {
+            if (item.key == key) {
+                return item;
+            }
+        }
+        throw new AssertionError("No item " + key);
+    }
+}
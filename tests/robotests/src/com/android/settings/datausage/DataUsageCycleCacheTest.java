@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.NetworkTemplate;
+import android.net.Uri;
+import android.os.Looper;
+import android.util.SparseLongArray;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class DataUsageCycleCacheTest {
+
+    private static final long START = 1000L;
+    private static final long END = 2000L;
+    private static final int UID = 10005;
+    private static final long CLOSED = END + DataUsageCycleCache.CLOSED_CYCLE_DELAY;
+
+    private NetworkTemplate mTemplate;
+    private SparseLongArray mUidBytes;
+    private DataUsageCycleCache mCache;
+
+    @Before
+    public void setUp() {
+        mTemplate = NetworkTemplate.buildTemplateWifiWildcard();
+        mUidBytes = new SparseLongArray();
+        mUidBytes.put(UID, 100L);
+        mCache = new DataUsageCycleCache();
+    }
+
+    @Test
+    public void getUidBytes_closedCycle_shouldNeverExpire() {
+        mCache.putUidBytes(mTemplate, START, END, mUidBytes, CLOSED /* now */);
+
+        final SparseLongArray cached =
+                mCache.getUidBytes(mTemplate, START, END, END + 365L * 24 * 60 * 60 * 1000);
+
+        assertThat(cached.get(UID)).isEqualTo(100L);
+    }
+
+    @Test
+    public void getUidBytes_cycleJustEnded_shouldExpire() {
+        mCache.putUidBytes(mTemplate, START, END, mUidBytes, END /* now */);
+
+        assertThat(mCache.getUidBytes(mTemplate, START, END,
+                END + DataUsageCycleCache.OPEN_CYCLE_MAX_AGE)).isNull();
+    }
+
+    @Test
+    public void packageRemoved_shouldDropClosedCycles() {
+        final Context context = RuntimeEnvironment.application;
+        mCache.registerReceiver(context);
+        mCache.putUidBytes(mTemplate, START, END, mUidBytes, CLOSED /* now */);
+
+        context.sendBroadcast(new Intent(Intent.ACTION_PACKAGE_REMOVED,
+                Uri.fromParts("package", "com.example.app", null /* fragment */)));
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(mCache.getUidBytes(mTemplate, START, END, CLOSED)).isNull();
+    }
+
+    @Test
+    public void packageReplaced_shouldKeepClosedCycles() {
+        final Context context = RuntimeEnvironment.application;
+        mCache.registerReceiver(context);
+        mCache.putUidBytes(mTemplate, START, END, mUidBytes, CLOSED /* now */);
+
+        context.sendBroadcast(new Intent(Intent.ACTION_PACKAGE_REMOVED,
+                Uri.fromParts("package", "com.example.app", null /* fragment */))
+                .putExtra(Intent.EXTRA_REPLACING, true));
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(mCache.getUidBytes(mTemplate, START, END, CLOSED)).isNotNull();
+    }
+
+    @Test
+    public void getUidBytes_openCycle_shouldExpire() {
+        final long now = START + 1;
+        mCache.putUidBytes(mTemplate, START, END, mUidBytes, now);
+
+        assertThat(mCache.getUidBytes(mTemplate, START, END, now + 1)).isNotNull();
+        assertThat(mCache.getUidBytes(mTemplate, START, END,
+                now + DataUsageCycleCache.OPEN_CYCLE_MAX_AGE)).isNull();
+    }
+
+    @Test
+    public void getUidBytes_otherTemplateOrCycle_shouldReturnNull() {
+        mCache.putUidBytes(mTemplate, START, END, mUidBytes, CLOSED /* now */);
+
+        assertThat(mCache.getUidBytes(NetworkTemplate.buildTemplateMobileAll("imsi"), START, END,
+                CLOSED)).isNull();
+        assertThat(mCache.getUidBytes(mTemplate, START, END + 1, CLOSED)).isNull();
+    }
+
+    @Test
+    public void getUidBytes_shouldNotShareArrays() {
+        mCache.putUidBytes(mTemplate, START, END, mUidBytes, CLOSED /* now */);
+        mUidBytes.put(UID, 200L);
+
+        final SparseLongArray cached = mCache.getUidBytes(mTemplate, START, END, CLOSED);
+        cached.put(UID, 300L);
+
+        assertThat(mCache.getUidBytes(mTemplate, START, END, CLOSED).get(UID)).isEqualTo(100L);
+    }
+}
@@ -100,6 +100,13 @@ public class BatteryEntryTest {
                 consumer, false, APP_UID, packages, packageName);
     }
 
+    private BatteryEntry createBatteryEntryForUid(int uid) {
+        UidBatteryConsumer consumer = mock(UidBatteryConsumer.class);
+        when(consumer.getUid()).thenReturn(uid);
+        return new BatteryEntry(mMockContext, mockHandler, mockUserManager,
+                consumer, false, uid, new String[] {APP_DEFAULT_PACKAGE_NAME}, null);
+    }
+
     private BatteryEntry createAggregateBatteryEntry(int powerComponentId) {
         return new BatteryEntry(mMockContext, powerComponentId, 200, 100, 1000);
     }
@@ -209,6 +216,33 @@ public class BatteryEntryTest {
         assertThat(entry.getTimeInBackgroundMs()).isEqualTo(0);
     }
 
+    @Test
+    public void prioritizeRequest_shouldMoveRequestsOfUidToFront() {
+        BatteryEntry.stopRequestQueue();
+        BatteryEntry.sRequestQueue.clear();
+        final BatteryEntry otherEntry = createBatteryEntryForUid(APP_UID + 1);
+        final BatteryEntry appEntry = createBatteryEntryForUid(APP_UID);
+        assertThat(BatteryEntry.sRequestQueue).containsExactly(otherEntry, appEntry).inOrder();
+
+        BatteryEntry.prioritizeRequest(APP_UID);
+
+        assertThat(BatteryEntry.sRequestQueue).containsExactly(appEntry, otherEntry).inOrder();
+        BatteryEntry.sRequestQueue.clear();
+    }
+
+    @Test
+    public void testUidCache_exceedMaxSize_shouldEvictLeastRecentlyUsed() {
+        BatteryEntry.clearUidCache();
+        for (int i = 0; i < 300; i++) {
+            BatteryEntry.sUidCache.put(Integer.toString(i), new BatteryEntry.UidToDetail());
+        }
+
+        assertThat(BatteryEntry.sUidCache.size()).isLessThan(300);
+        assertThat(BatteryEntry.sUidCache).doesNotContainKey("0");
+        assertThat(BatteryEntry.sUidCache).containsKey("299");
+        BatteryEntry.clearUidCache();
+    }
+
     @Test
     public void testUidCache_switchLocale_shouldCleanCache() {
         BatteryEntry.stopRequestQueue();
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryHistoryTableTest {
+
+    @Test
+    public void testCreate_internsKeysAndFillsColumns() {
+        final long[] timestamps = new long[] {101L, 102L, 103L};
+        final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap = new HashMap<>();
+        final BatteryHistEntry entry1 = createBatteryHistEntry(1L, 5.0, 10L, 20L);
+        final BatteryHistEntry entry2 = createBatteryHistEntry(2L, 7.0, 30L, 40L);
+        Map<String, BatteryHistEntry> entryMap = new HashMap<>();
+        entryMap.put(entry1.getKey(), entry1);
+        batteryHistoryMap.put(timestamps[0], entryMap);
+        entryMap = new HashMap<>();
+        entryMap.put(entry2.getKey(), entry2);
+        batteryHistoryMap.put(timestamps[2], entryMap);
+
+        final BatteryHistoryTable table =
+            BatteryHistoryTable.create(timestamps, batteryHistoryMap);
+
+        assertThat(table.getTimestampCount()).isEqualTo(3);
+        assertThat(table.getKeyCount()).isEqualTo(2);
+        assertThat(table.getKey(0)).isEqualTo(entry1.getKey());
+        assertThat(table.getKey(1)).isEqualTo(entry2.getKey());
+        assertThat(table.hasData(0)).isTrue();
+        assertThat(table.hasData(1)).isFalse();
+        assertThat(table.hasData(2)).isTrue();
+        assertThat(table.getEntry(0, 0)).isSameInstanceAs(entry1);
+        assertThat(table.getEntry(0, 1)).isNull();
+        assertThat(table.getForegroundUsageTimeInMs(2, 1)).isEqualTo(30L);
+        assertThat(table.getBackgroundUsageTimeInMs(2, 1)).isEqualTo(40L);
+        assertThat(table.getConsumePower(2, 1)).isEqualTo(7.0);
+        assertThat(table.getConsumePower(2, 0)).isEqualTo(0.0);
+    }
+
+    private static BatteryHistEntry createBatteryHistEntry(
+            long uid, double consumePower,
+            long foregroundUsageTimeInMs, long backgroundUsageTimeInMs) {
+        final ContentValues values = new ContentValues();
+        values.put(BatteryHistEntry.KEY_UID, Long.valueOf(uid));
+        values.put(BatteryHistEntry.KEY_CONSUMER_TYPE,
+            Integer.valueOf(ConvertUtils.CONSUMER_TYPE_UID_BATTERY));
+        values.put(BatteryHistEntry.KEY_CONSUME_POWER, consumePower);
+        values.put(BatteryHistEntry.KEY_FOREGROUND_USAGE_TIME,
+            Long.valueOf(foregroundUsageTimeInMs));
+        values.put(BatteryHistEntry.KEY_BACKGROUND_USAGE_TIME,
+            Long.valueOf(backgroundUsageTimeInMs));
+        return new BatteryHistEntry(values);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryUsageSlotCacheTest {
+    private static final int TIME_SLOT_SIZE = 2;
+    private static final long[] BATTERY_HISTORY_KEYS = new long[] {101L, 102L, 103L, 104L, 105L};
+
+    private Context mContext;
+    private BatteryUsageSlotCache mCache;
+    private Map<Long, Map<String, BatteryHistEntry>> mBatteryHistoryMap;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mCache = new BatteryUsageSlotCache();
+        mBatteryHistoryMap = new HashMap<>();
+        for (int index = 0; index < BATTERY_HISTORY_KEYS.length; index++) {
+            putEntry(BATTERY_HISTORY_KEYS[index], /*uid=*/ 1L, 10.0 * index, 100L * index);
+        }
+    }
+
+    @Test
+    public void getIndexedUsageMap_sameHistory_reusesAllPairs() {
+        final Map<Integer, List<BatteryDiffEntry>> expectedMap = getIndexedUsageMap();
+        assertThat(mCache.mComputedPairCount).isEqualTo(BATTERY_HISTORY_KEYS.length - 1);
+
+        final Map<Integer, List<BatteryDiffEntry>> resultMap = getIndexedUsageMap();
+
+        assertThat(mCache.mComputedPairCount).isEqualTo(0);
+        assertSameUsage(resultMap, expectedMap);
+    }
+
+    @Test
+    public void getIndexedUsageMap_latestTimestampChanged_computesLastPairOnly() {
+        getIndexedUsageMap();
+        putEntry(BATTERY_HISTORY_KEYS[4], /*uid=*/ 2L, 20.0, 50L);
+
+        final Map<Integer, List<BatteryDiffEntry>> resultMap = getIndexedUsageMap();
+
+        assertThat(mCache.mComputedPairCount).isEqualTo(1);
+        assertSameUsage(resultMap, ConvertUtils.getIndexedUsageMap(
+            mContext, TIME_SLOT_SIZE, BATTERY_HISTORY_KEYS, mBatteryHistoryMap,
+            /*purgeLowPercentageAndFakeData=*/ false));
+    }
+
+    @Test
+    public void getIndexedUsageMap_historyShiftedByOneTimestamp_computesNewestPairOnly() {
+        getIndexedUsageMap();
+        final long[] shiftedKeys = new long[] {102L, 103L, 104L, 105L, 106L};
+        putEntry(106L, /*uid=*/ 1L, 50.0, 500L);
+        putEntry(106L, /*uid=*/ 2L, 5.0, 50L);
+        mBatteryHistoryMap.remove(101L);
+
+        final Map<Integer, List<BatteryDiffEntry>> resultMap = getIndexedUsageMap(shiftedKeys);
+
+        assertThat(mCache.mComputedPairCount).isEqualTo(1);
+        assertSameUsage(resultMap, ConvertUtils.getIndexedUsageMap(
+            mContext, TIME_SLOT_SIZE, shiftedKeys, mBatteryHistoryMap,
+            /*purgeLowPercentageAndFakeData=*/ false));
+    }
+
+    @Test
+    public void getIndexedUsageMap_valuesSwappedBetweenKeys_computesChangedPairs() {
+        putEntry(BATTERY_HISTORY_KEYS[4], /*uid=*/ 2L, 20.0, 100L);
+        putEntry(BATTERY_HISTORY_KEYS[4], /*uid=*/ 3L, 20.0, 200L);
+        getIndexedUsageMap();
+        // Same sum of values at the timestamp, only their keys changed.
+        putEntry(BATTERY_HISTORY_KEYS[4], /*uid=*/ 2L, 20.0, 200L);
+        putEntry(BATTERY_HISTORY_KEYS[4], /*uid=*/ 3L, 20.0, 100L);
+
+        final Map<Integer, List<BatteryDiffEntry>> resultMap = getIndexedUsageMap();
+
+        assertThat(mCache.mComputedPairCount).isEqualTo(1);
+        assertSameUsage(resultMap, ConvertUtils.getIndexedUsageMap(
+            mContext, TIME_SLOT_SIZE, BATTERY_HISTORY_KEYS, mBatteryHistoryMap,
+            /*purgeLowPercentageAndFakeData=*/ false));
+    }
+
+    private Map<Integer, List<BatteryDiffEntry>> getIndexedUsageMap() {
+        return getIndexedUsageMap(BATTERY_HISTORY_KEYS);
+    }
+
+    private Map<Integer, List<BatteryDiffEntry>> getIndexedUsageMap(long[] batteryHistoryKeys) {
+        return mCache.getIndexedUsageMap(
+            mContext, TIME_SLOT_SIZE, batteryHistoryKeys, mBatteryHistoryMap,
+            /*purgeLowPercentageAndFakeData=*/ false);
+    }
+
+    private void putEntry(long timestamp, long uid, double consumePower, long usageTimeInMs) {
+        final ContentValues values = new ContentValues();
+        values.put(BatteryHistEntry.KEY_UID, Long.valueOf(uid));
+        values.put(BatteryHistEntry.KEY_CONSUMER_TYPE,
+            Integer.valueOf(ConvertUtils.CONSUMER_TYPE_UID_BATTERY));
+        values.put(BatteryHistEntry.KEY_CONSUME_POWER, consumePower);
+        values.put(BatteryHistEntry.KEY_FOREGROUND_USAGE_TIME, Long.valueOf(usageTimeInMs));
+        final BatteryHistEntry entry = new BatteryHistEntry(values);
+        mBatteryHistoryMap.computeIfAbsent(timestamp, key -> new HashMap<>())
+            .put(entry.getKey(), entry);
+    }
+
+    private static void assertSameUsage(
+            Map<Integer, List<BatteryDiffEntry>> resultMap,
+            Map<Integer, List<BatteryDiffEntry>> expectedMap) {
+        assertThat(resultMap.keySet()).isEqualTo(expectedMap.keySet());
+        for (Integer index : expectedMap.keySet()) {
+            final List<BatteryDiffEntry> results = resultMap.get(index);
+            final List<BatteryDiffEntry> expected = expectedMap.get(index);
+            assertThat(results).hasSize(expected.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(results.get(i).mBatteryHistEntry.getKey())
+                    .isEqualTo(expected.get(i).mBatteryHistEntry.getKey());
+                assertThat(results.get(i).mConsumePower)
+                    .isEqualTo(expected.get(i).mConsumePower);
+                assertThat(results.get(i).getPercentOfTotal())
+                    .isEqualTo(expected.get(i).getPercentOfTotal());
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.homepage.contextualcards;
+
+import static android.app.slice.Slice.HINT_ERROR;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.net.Uri;
+
+import androidx.slice.Slice;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+@RunWith(RobolectricTestRunner.class)
+public class CardEligibilityCacheTest {
+
+    private static final Uri TEST_SLICE_URI = Uri.parse("content://test/test");
+    private static final long TTL_MS = 60000;
+
+    private final List<Uri> mPinnedUris = new ArrayList<>();
+    private CardEligibilityCache mCache;
+    private Slice mSlice;
+    private int mBindCount;
+    private Function<Uri, Slice> mBind;
+
+    @Before
+    public void setUp() {
+        mCache = createCache(TTL_MS);
+        mSlice = mock(Slice.class);
+        mBind = uri -> {
+            mBindCount++;
+            return mSlice;
+        };
+    }
+
+    @Test
+    public void getSlice_calledTwice_shouldBindOnce() {
+        assertThat(mCache.getSlice(TEST_SLICE_URI, mBind)).isSameInstanceAs(mSlice);
+        assertThat(mCache.getSlice(TEST_SLICE_URI, mBind)).isSameInstanceAs(mSlice);
+
+        assertThat(mBindCount).isEqualTo(1);
+    }
+
+    @Test
+    public void getSlice_expired_shouldBindAgain() {
+        mCache = createCache(0 /* ttlMs */);
+        mCache.getSlice(TEST_SLICE_URI, mBind);
+
+        mCache.getSlice(TEST_SLICE_URI, mBind);
+
+        assertThat(mBindCount).isEqualTo(2);
+    }
+
+    @Test
+    public void getSlice_sliceUriNotified_shouldBindAgain() {
+        mCache.getSlice(TEST_SLICE_URI, mBind);
+
+        RuntimeEnvironment.application.getContentResolver().notifyChange(TEST_SLICE_URI,
+                null /* observer */);
+        mCache.getSlice(TEST_SLICE_URI, mBind);
+
+        assertThat(mBindCount).isEqualTo(2);
+    }
+
+    @Test
+    public void getSlice_bindFailed_shouldBindAgain() {
+        mCache.getSlice(TEST_SLICE_URI, uri -> {
+            mBindCount++;
+            return null;
+        });
+
+        mCache.getSlice(TEST_SLICE_URI, mBind);
+
+        assertThat(mBindCount).isEqualTo(2);
+    }
+
+    @Test
+    public void getSlice_errorSlice_shouldBindAgain() {
+        when(mSlice.hasHint(HINT_ERROR)).thenReturn(true);
+        mCache.getSlice(TEST_SLICE_URI, mBind);
+
+        mCache.getSlice(TEST_SLICE_URI, mBind);
+
+        assertThat(mBindCount).isEqualTo(2);
+        assertThat(mPinnedUris).isEmpty();
+    }
+
+    @Test
+    public void getSlice_cached_shouldKeepSlicePinnedUntilNotified() {
+        mCache.getSlice(TEST_SLICE_URI, mBind);
+
+        assertThat(mPinnedUris).containsExactly(TEST_SLICE_URI);
+
+        RuntimeEnvironment.application.getContentResolver().notifyChange(TEST_SLICE_URI,
+                null /* observer */);
+
+        assertThat(mPinnedUris).isEmpty();
+    }
+
+    @Test
+    public void clear_shouldUnpinAndStopObservingSlices() {
+        mCache.getSlice(TEST_SLICE_URI, mBind);
+
+        mCache.clear();
+
+        assertThat(mPinnedUris).isEmpty();
+        assertThat(shadowOf(RuntimeEnvironment.application.getContentResolver())
+                .getContentObservers(TEST_SLICE_URI)).isEmpty();
+        mCache.getSlice(TEST_SLICE_URI, mBind);
+        assertThat(mBindCount).isEqualTo(2);
+    }
+
+    private CardEligibilityCache createCache(long ttlMs) {
+        return new CardEligibilityCache(RuntimeEnvironment.application, ttlMs,
+                new CardEligibilityCache.SlicePinner() {
+                    @Override
+                    public void pin(Uri uri) {
+                        mPinnedUris.add(uri);
+                    }
+
+                    @Override
+                    public void unpin(Uri uri) {
+                        mPinnedUris.remove(uri);
+                    }
+                });
+    }
+}
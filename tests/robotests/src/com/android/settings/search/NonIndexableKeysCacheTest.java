@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.net.Uri;
+import android.provider.Settings;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class NonIndexableKeysCacheTest {
+
+    private static final Uri URI = Settings.Secure.getUriFor("test_setting");
+
+    private Context mContext;
+    private NonIndexableKeysCache mCache;
+    private int mComputeCount;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mCache = new NonIndexableKeysCache();
+    }
+
+    @Test
+    public void get_noInvalidation_alwaysComputes() {
+        final BaseSearchIndexProvider provider = new BaseSearchIndexProvider();
+
+        get(provider);
+        get(provider);
+
+        assertThat(mComputeCount).isEqualTo(2);
+        assertThat(mCache.isCached(provider)).isFalse();
+    }
+
+    @Test
+    public void get_noInvalidation_queriesDeclarationOnce() {
+        final AtomicInteger declarationCount = new AtomicInteger();
+        final BaseSearchIndexProvider provider = new BaseSearchIndexProvider() {
+            @Override
+            public NonIndexableKeysInvalidation getNonIndexableKeysInvalidation(Context context) {
+                declarationCount.incrementAndGet();
+                return null;
+            }
+        };
+
+        get(provider);
+        get(provider);
+
+        assertThat(declarationCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_computing_doesNotHoldLock() throws Exception {
+        final BaseSearchIndexProvider provider = createProvider();
+        final BaseSearchIndexProvider otherProvider = new BaseSearchIndexProvider();
+        final AtomicBoolean otherQueried = new AtomicBoolean();
+
+        mCache.get(mContext, otherProvider, () -> {
+            // Another thread must be able to use the cache meanwhile.
+            final Thread thread = new Thread(() -> {
+                get(provider);
+                otherQueried.set(true);
+            });
+            thread.start();
+            try {
+                thread.join(1000 /* millis */);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+
+        assertThat(otherQueried.get()).isTrue();
+    }
+
+    @Test
+    public void get_withInvalidation_computesOnce() {
+        final BaseSearchIndexProvider provider = createProvider();
+
+        get(provider);
+        final List<String> keys = get(provider);
+
+        assertThat(mComputeCount).isEqualTo(1);
+        assertThat(keys).containsExactly("key");
+    }
+
+    @Test
+    public void get_cachedKeysModifiedByCaller_cacheUnchanged() {
+        final BaseSearchIndexProvider provider = createProvider();
+
+        get(provider).clear();
+
+        assertThat(get(provider)).containsExactly("key");
+    }
+
+    @Test
+    public void get_declaredUriChanged_recomputesOnlyThatProvider() {
+        final BaseSearchIndexProvider provider = createProvider();
+        final BaseSearchIndexProvider otherProvider = new BaseSearchIndexProvider() {
+            @Override
+            public NonIndexableKeysInvalidation getNonIndexableKeysInvalidation(Context context) {
+                return new NonIndexableKeysInvalidation.Builder()
+                        .setOnCarrierConfigChange(true)
+                        .build();
+            }
+        };
+        get(provider);
+        get(otherProvider);
+
+        mCache.invalidateUri(URI);
+
+        assertThat(mCache.isCached(provider)).isFalse();
+        assertThat(mCache.isCached(otherProvider)).isTrue();
+        get(provider);
+        assertThat(mComputeCount).isEqualTo(3);
+    }
+
+    @Test
+    public void get_packageChanged_recomputes() {
+        final BaseSearchIndexProvider provider = createProvider();
+        get(provider);
+
+        mCache.invalidatePackages();
+        get(provider);
+
+        assertThat(mComputeCount).isEqualTo(2);
+    }
+
+    @Test
+    public void get_undeclaredSourceChanged_staysCached() {
+        final BaseSearchIndexProvider provider = createProvider();
+        get(provider);
+
+        mCache.invalidateUsers();
+        mCache.invalidateCarrierConfig();
+
+        assertThat(mCache.isCached(provider)).isTrue();
+    }
+
+    private List<String> get(BaseSearchIndexProvider provider) {
+        return mCache.get(mContext, provider, () -> {
+            mComputeCount++;
+            return new ArrayList<>(Collections.singletonList("key"));
+        });
+    }
+
+    private static BaseSearchIndexProvider createProvider() {
+        return new BaseSearchIndexProvider() {
+            @Override
+            public NonIndexableKeysInvalidation getNonIndexableKeysInvalidation(Context context) {
+                return new NonIndexableKeysInvalidation.Builder()
+                        .addUri(URI)
+                        .setOnPackageChange(true)
+                        .build();
+            }
+        };
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import com.android.settings.core.instrumentation.ControllerLatencyRecorder;
+import com.android.settingslib.search.SearchIndexableData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class SearchIndexProviderRunnerTest {
+
+    private Context mContext;
+    private ExecutorService mExecutor;
+    private SearchIndexProviderRunner mRunner;
+    private List<SearchIndexableData> mBundles;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mExecutor = Executors.newFixedThreadPool(3);
+        mRunner = new SearchIndexProviderRunner(mExecutor, 100 /* timeoutMs */);
+        mBundles = Arrays.asList(
+                new SearchIndexableData(String.class, new BaseSearchIndexProvider()),
+                new SearchIndexableData(Integer.class, new BaseSearchIndexProvider()),
+                new SearchIndexableData(Long.class, new BaseSearchIndexProvider()));
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void run_parallel_mergesInProviderOrder() {
+        final CountDownLatch firstBlocked = new CountDownLatch(1);
+
+        final List<String> results = mRunner.run(mContext, mBundles,
+                ControllerLatencyRecorder.OP_SEARCH_NON_INDEXABLE_KEYS, bundle -> {
+                    if (bundle.getTargetClass() == String.class) {
+                        // Let the other providers finish first.
+                        try {
+                            firstBlocked.await();
+                        } catch (InterruptedException e) {
+                            return null;
+                        }
+                    } else if (bundle.getTargetClass() == Long.class) {
+                        firstBlocked.countDown();
+                    }
+                    return Collections.singletonList(bundle.getTargetClass().getSimpleName());
+                });
+
+        assertThat(results).containsExactly("String", "Integer", "Long").inOrder();
+    }
+
+    @Test
+    public void run_parallel_skipsNullResults() {
+        final List<String> results = mRunner.run(mContext, mBundles,
+                ControllerLatencyRecorder.OP_SEARCH_NON_INDEXABLE_KEYS,
+                bundle -> bundle.getTargetClass() == Integer.class ? null
+                        : Collections.singletonList(bundle.getTargetClass().getSimpleName()));
+
+        assertThat(results).containsExactly("String", "Long").inOrder();
+    }
+
+    @Test
+    public void run_parallel_skipsLateProvider() {
+        final CountDownLatch never = new CountDownLatch(1);
+
+        final List<String> results = mRunner.run(mContext, mBundles,
+                ControllerLatencyRecorder.OP_SEARCH_NON_INDEXABLE_KEYS, bundle -> {
+                    if (bundle.getTargetClass() == Integer.class) {
+                        try {
+                            never.await();
+                        } catch (InterruptedException e) {
+                            return null;
+                        }
+                    }
+                    return Collections.singletonList(bundle.getTargetClass().getSimpleName());
+                });
+
+        assertThat(results).containsExactly("String", "Long").inOrder();
+    }
+
+    @Test
+    public void runToCompletion_lateProvider_shouldQueryAgain() {
+        final CountDownLatch never = new CountDownLatch(1);
+        final AtomicInteger integerQueries = new AtomicInteger();
+
+        final List<String> results = mRunner.runToCompletion(mContext, mBundles,
+                ControllerLatencyRecorder.OP_SEARCH_NON_INDEXABLE_KEYS, bundle -> {
+                    if (bundle.getTargetClass() == Integer.class
+                            && integerQueries.getAndIncrement() == 0) {
+                        try {
+                            never.await();
+                        } catch (InterruptedException e) {
+                            return null;
+                        }
+                    }
+                    return Collections.singletonList(bundle.getTargetClass().getSimpleName());
+                });
+
+        assertThat(results).containsExactly("String", "Integer", "Long").inOrder();
+    }
+
+    @Test
+    public void run_interrupted_shouldQueryRemainingProvidersSerially() {
+        Thread.currentThread().interrupt();
+
+        final List<String> results = mRunner.run(mContext, mBundles,
+                ControllerLatencyRecorder.OP_SEARCH_RAW_DATA,
+                bundle -> Collections.singletonList(bundle.getTargetClass().getSimpleName()));
+
+        // Clears the restored interrupt for the next tests.
+        assertThat(Thread.interrupted()).isTrue();
+        assertThat(results).containsExactly("String", "Integer", "Long").inOrder();
+    }
+
+    @Test
+    public void run_serial_mergesInProviderOrder() {
+        final List<String> results = new SearchIndexProviderRunner().run(mContext, mBundles,
+                ControllerLatencyRecorder.OP_SEARCH_NON_INDEXABLE_KEYS,
+                bundle -> Collections.singletonList(bundle.getTargetClass().getSimpleName()));
+
+        assertThat(results).containsExactly("String", "Integer", "Long").inOrder();
+    }
+}
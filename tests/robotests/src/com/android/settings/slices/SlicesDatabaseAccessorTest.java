@@ -124,6 +124,32 @@ public class SlicesDatabaseAccessorTest {
         assertThat(data.getPreferenceController()).isEqualTo(SliceTestUtils.FAKE_CONTROLLER_NAME);
     }
 
+    @Test
+    public void getSliceDataFromKey_calledTwice_shouldServeSecondFromCache() {
+        final String key = "key";
+        SliceTestUtils.insertSliceToDb(mContext, key);
+        final SliceDataCache cache =
+                SlicesDatabaseHelper.getInstance(mContext).getSliceDataCache();
+
+        final SliceData data = mAccessor.getSliceDataFromKey(key);
+        final SliceData cachedData = mAccessor.getSliceDataFromKey(key);
+
+        assertThat(cachedData).isSameInstanceAs(data);
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(cache.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void getSliceDataFromKey_afterInvalidate_shouldQueryDatabase() {
+        final String key = "key";
+        SliceTestUtils.insertSliceToDb(mContext, key);
+        final SliceData data = mAccessor.getSliceDataFromKey(key);
+
+        SlicesDatabaseHelper.getInstance(mContext).getSliceDataCache().invalidate();
+
+        assertThat(mAccessor.getSliceDataFromKey(key)).isNotSameInstanceAs(data);
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testGetSliceDataFromKey_invalidKey_errorThrown() {
         String key = "key";
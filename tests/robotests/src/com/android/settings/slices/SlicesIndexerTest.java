@@ -194,6 +194,69 @@ public class SlicesIndexerTest {
         }
     }
 
+    @Test
+    public void reindex_changedData_shouldOnlyWriteDifferences() {
+        final List<SliceData> sliceData = getMockIndexableData(false);
+        doReturn(sliceData).when(mManager).getSliceData();
+        mManager.run();
+
+        final SliceData.Builder builder = new SliceData.Builder()
+                .setSummary(SUMMARY)
+                .setScreenTitle(SCREEN_TITLE)
+                .setKeywords(KEYWORDS)
+                .setFragmentName(FRAGMENT_NAME)
+                .setIcon(ICON)
+                .setUri(URI)
+                .setPreferenceControllerClassName(PREF_CONTROLLER)
+                .setSliceType(SLICE_TYPE)
+                .setUnavailableSliceSubtitle(UNAVAILABLE_SLICE_SUBTITLE);
+        final List<SliceData> newSliceData = new ArrayList<>();
+        newSliceData.add(builder.setKey(KEYS[0]).setTitle("new title").build());
+        newSliceData.add(builder.setKey(KEYS[1]).setTitle(TITLES[1]).build());
+        newSliceData.add(builder.setKey("key4").setTitle("title4").build());
+        doReturn(newSliceData).when(mManager).getSliceData();
+        SlicesDatabaseHelper.getInstance(mContext).clearIndexedState();
+
+        mManager.run();
+
+        final SlicesIndexer.IndexStats stats = mManager.getLastIndexStats();
+        assertThat(stats.mInserted).isEqualTo(1);
+        assertThat(stats.mUpdated).isEqualTo(1);
+        assertThat(stats.mDeleted).isEqualTo(1);
+        assertThat(stats.mUnchanged).isEqualTo(1);
+        final SQLiteDatabase db = SlicesDatabaseHelper.getInstance(mContext).getWritableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT key, title FROM slices_index ORDER BY key",
+                null)) {
+            assertThat(cursor.getCount()).isEqualTo(3);
+            cursor.moveToFirst();
+            assertThat(cursor.getString(0)).isEqualTo(KEYS[0]);
+            assertThat(cursor.getString(1)).isEqualTo("new title");
+            cursor.moveToNext();
+            assertThat(cursor.getString(0)).isEqualTo(KEYS[1]);
+            assertThat(cursor.getString(1)).isEqualTo(TITLES[1]);
+            cursor.moveToNext();
+            assertThat(cursor.getString(0)).isEqualTo("key4");
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void reindex_sameData_shouldNotWrite() {
+        final List<SliceData> sliceData = getMockIndexableData(true);
+        doReturn(sliceData).when(mManager).getSliceData();
+        mManager.run();
+        SlicesDatabaseHelper.getInstance(mContext).clearIndexedState();
+
+        mManager.run();
+
+        final SlicesIndexer.IndexStats stats = mManager.getLastIndexStats();
+        assertThat(stats.mInserted).isEqualTo(0);
+        assertThat(stats.mUpdated).isEqualTo(0);
+        assertThat(stats.mDeleted).isEqualTo(0);
+        assertThat(stats.mUnchanged).isEqualTo(sliceData.size());
+    }
+
     private void insertSpecialCase(String key, String title) {
         final ContentValues values = new ContentValues();
         values.put(IndexColumns.KEY, key);
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.graphics.drawable.Drawable;
+import android.os.UserHandle;
+
+import com.android.settings.testutils.shadow.ShadowThreadUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppIconCacheTest {
+
+    private static final int MAX_ICON_BYTES = 1024 * 1024;
+    private static final int MANAGED_PROFILE_USER_ID = 10;
+
+    private Context mContext;
+    private ApplicationInfo mAppInfo;
+    private AppIconCache mCache;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mAppInfo = mContext.getApplicationInfo();
+        mCache = new AppIconCache(mContext, MAX_ICON_BYTES);
+    }
+
+    @Test
+    public void getBadgedIcon_calledTwice_shouldCacheOnceAndReturnNewDrawables() {
+        final Drawable first = mCache.getBadgedIcon(mContext, mAppInfo, 0 /* userId */);
+        final Drawable second = mCache.getBadgedIcon(mContext, mAppInfo, 0 /* userId */);
+
+        assertThat(first).isNotNull();
+        assertThat(second).isNotNull();
+        assertThat(second).isNotSameInstanceAs(first);
+        assertThat(mCache.mIcons.size()).isGreaterThan(0);
+        assertThat(mCache.mIcons.putCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidate_shouldDropIconsOfPackage() {
+        mCache.getBadgedIcon(mContext, mAppInfo, 0 /* userId */);
+
+        mCache.invalidate(mAppInfo.packageName);
+
+        assertThat(mCache.mIcons.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void invalidate_otherPackage_shouldKeepIcons() {
+        mCache.getBadgedIcon(mContext, mAppInfo, 0 /* userId */);
+
+        mCache.invalidate(mAppInfo.packageName + ".other");
+
+        assertThat(mCache.mIcons.size()).isGreaterThan(0);
+    }
+
+    @Test
+    public void getBadgedIcon_alphaChanged_shouldNotAffectOtherCallers() {
+        final Drawable first = mCache.getBadgedIcon(mContext, mAppInfo, 0 /* userId */);
+        final int alpha = first.getAlpha();
+
+        first.setAlpha(alpha / 2);
+
+        assertThat(mCache.getBadgedIcon(mContext, mAppInfo, 0 /* userId */).getAlpha())
+                .isEqualTo(alpha);
+    }
+
+    @Test
+    @Config(shadows = ShadowThreadUtils.class)
+    public void loadBadgedIcon_shouldDeliverCachedIcon() {
+        final List<Drawable> icons = new ArrayList<>();
+
+        mCache.loadBadgedIcon(mContext, mAppInfo, 0 /* userId */, icons::add);
+        mCache.loadBadgedIcon(mContext, mAppInfo, 0 /* userId */, icons::add);
+
+        assertThat(icons).hasSize(2);
+        assertThat(icons.get(1)).isNotSameInstanceAs(icons.get(0));
+        assertThat(mCache.mIcons.putCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void getIcon_managedProfileUid_shouldNotReturnBadgedIcon() {
+        final ApplicationInfo appInfo = new ApplicationInfo(mAppInfo);
+        appInfo.uid = UserHandle.getUid(MANAGED_PROFILE_USER_ID, mAppInfo.uid);
+        mCache.getBadgedIcon(mContext, appInfo, MANAGED_PROFILE_USER_ID);
+
+        final Drawable icon = mCache.getIcon(mContext, appInfo);
+        final Drawable unbadgedIcon = appInfo.loadIcon(mContext.getPackageManager());
+
+        // The badged icon of the profile is cached apart, and not handed out as the plain icon.
+        assertThat(mCache.mIcons.putCount()).isEqualTo(2);
+        assertThat(icon.getIntrinsicWidth()).isEqualTo(unbadgedIcon.getIntrinsicWidth());
+        assertThat(icon.getIntrinsicHeight()).isEqualTo(unbadgedIcon.getIntrinsicHeight());
+        assertThat(mCache.getIcon(mContext, appInfo)).isNotSameInstanceAs(icon);
+        assertThat(mCache.mIcons.putCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void getLabel_calledTwice_shouldReturnSameLabel() {
+        final CharSequence label = mCache.getLabel(mContext, mAppInfo);
+
+        assertThat(mCache.getLabel(mContext, mAppInfo)).isSameInstanceAs(label);
+    }
+}
@@ -22,6 +22,7 @@ import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_KEYH
 
 import static com.google.common.truth.Truth.assertThat;
 
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.pm.ActivityInfo;
 import android.content.pm.ApplicationInfo;
@@ -42,7 +43,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RunWith(AndroidJUnit4.class)
@@ -315,6 +319,76 @@ public class CategoryManagerTest {
         assertThat(category.getTilesCount()).isEqualTo(1);
     }
 
+    @Test
+    public void updateCategoryFromDenylist_shouldPublishNewCategoriesAndKeepPrevious() {
+        final CategoryManager manager = new CategoryManager(mContext);
+        final DashboardCategory category = new DashboardCategory(CATEGORY_HOMEPAGE);
+        final Tile tile1 = createActivityTile(category.key, "pkg", "class1", 100);
+        final Tile tile2 = createActivityTile(category.key, "pkg", "class2", 50);
+        category.addTile(tile1);
+        category.addTile(tile2);
+        manager.setCategories(Arrays.asList(category));
+        final List<DashboardCategory> previousCategories = manager.getCategories(mContext);
+        final Map<ComponentName, Tile> previousTiles = manager.getTileByComponentMap();
+
+        manager.updateCategoryFromDenylist(
+                Collections.singleton(new ComponentName("pkg", "class1")));
+
+        // The published category is left as is for readers which still hold it.
+        assertThat(manager.getCategories(mContext)).isNotSameInstanceAs(previousCategories);
+        assertThat(previousCategories.get(0)).isSameInstanceAs(category);
+        assertThat(category.getTilesCount()).isEqualTo(2);
+        assertThat(previousTiles).hasSize(2);
+        final DashboardCategory filtered = manager.getTilesByCategory(mContext, CATEGORY_HOMEPAGE);
+        assertThat(filtered).isNotSameInstanceAs(category);
+        assertThat(filtered.getTilesCount()).isEqualTo(1);
+        assertThat(filtered.getTile(0)).isSameInstanceAs(tile2);
+        assertThat(manager.getTileByComponentMap()).containsExactly(
+                new ComponentName("pkg", "class2"), tile2);
+    }
+
+    @Test
+    public void updateCategoryFromDenylist_noTileDenylisted_shouldKeepCategories() {
+        final CategoryManager manager = new CategoryManager(mContext);
+        final DashboardCategory category = new DashboardCategory(CATEGORY_HOMEPAGE);
+        category.addTile(createActivityTile(category.key, "pkg", "class1", 100));
+        manager.setCategories(Arrays.asList(category));
+        final List<DashboardCategory> previousCategories = manager.getCategories(mContext);
+
+        manager.updateCategoryFromDenylist(
+                Collections.singleton(new ComponentName("pkg", "other")));
+
+        assertThat(manager.getCategories(mContext)).isSameInstanceAs(previousCategories);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getTileByComponentMap_shouldBeUnmodifiable() {
+        final CategoryManager manager = new CategoryManager(mContext);
+        final DashboardCategory category = new DashboardCategory(CATEGORY_HOMEPAGE);
+        category.addTile(createActivityTile(category.key, "pkg", "class1", 100));
+        manager.setCategories(Arrays.asList(category));
+
+        manager.getTileByComponentMap().remove(new ComponentName("pkg", "class1"));
+    }
+
+    @Test
+    public void reloadAllCategories_shouldReplaceTileMapAtOnce() {
+        final CategoryManager manager = new CategoryManager(mContext);
+        final DashboardCategory category = new DashboardCategory(CATEGORY_HOMEPAGE);
+        final Tile tile = createActivityTile(category.key, "pkg", "class1", 100);
+        category.addTile(tile);
+        manager.setCategories(Arrays.asList(category));
+        final Map<ComponentName, Tile> previousTiles = manager.getTileByComponentMap();
+
+        manager.reloadAllCategories(mContext);
+
+        // Readers holding the previous map still see it whole, the reload publishes a new one.
+        assertThat(previousTiles).containsExactly(new ComponentName("pkg", "class1"), tile);
+        assertThat(manager.getTileByComponentMap()).isNotSameInstanceAs(previousTiles);
+        assertThat(manager.getTileByComponentMap())
+                .doesNotContainKey(new ComponentName("pkg", "class1"));
+    }
+
     private Tile createActivityTile(String categoryKey, String packageName, String className,
             int order) {
         final ActivityInfo activityInfo = new ActivityInfo();
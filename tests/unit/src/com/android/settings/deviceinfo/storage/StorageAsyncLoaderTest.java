@@ -208,6 +208,41 @@ public class StorageAsyncLoaderTest {
         assertThat(result.get(PRIMARY_USER_ID).allAppsExceptGamesSize).isEqualTo(33L);
     }
 
+    @Test
+    public void testDuplicateCodeIsCountedForLaterUsers() throws Exception {
+        addPackage(PACKAGE_NAME_1, 0, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
+        addPackage(PACKAGE_NAME_2, 0, 100, 1000, ApplicationInfo.CATEGORY_GAME);
+        UserInfo info = new UserInfo();
+        info.id = SECONDARY_USER_ID;
+        mUsers.add(info);
+
+        SparseArray<StorageAsyncLoader.StorageResult> result = mLoader.loadInBackground();
+
+        assertThat(result.size()).isEqualTo(2);
+        assertThat(result.get(PRIMARY_USER_ID).duplicateCodeSize).isEqualTo(0L);
+        assertThat(result.get(SECONDARY_USER_ID).duplicateCodeSize).isEqualTo(101L);
+        assertThat(result.get(SECONDARY_USER_ID).gamesSize).isEqualTo(1100L);
+    }
+
+    @Test
+    public void testParallelLoadingMatchesSerialLoading() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            addPackage(PACKAGE_NAME_1 + i, i, 1, 10 * i, i % 3 == 0
+                    ? ApplicationInfo.CATEGORY_GAME : ApplicationInfo.CATEGORY_UNDEFINED);
+        }
+
+        mLoader.mThreadCount = 4;
+        SparseArray<StorageAsyncLoader.StorageResult> parallel = mLoader.loadInBackground();
+        mLoader.mThreadCount = 1;
+        SparseArray<StorageAsyncLoader.StorageResult> serial = mLoader.loadInBackground();
+
+        assertThat(parallel.get(PRIMARY_USER_ID).gamesSize)
+                .isEqualTo(serial.get(PRIMARY_USER_ID).gamesSize);
+        assertThat(parallel.get(PRIMARY_USER_ID).allAppsExceptGamesSize)
+                .isEqualTo(serial.get(PRIMARY_USER_ID).allAppsExceptGamesSize);
+        assertThat(serial.get(PRIMARY_USER_ID).gamesSize).isGreaterThan(0L);
+    }
+
     private ApplicationInfo addPackage(String packageName, long cacheSize, long codeSize,
             long dataSize, int category) throws Exception {
         StorageStatsSource.AppStorageStats storageStats =